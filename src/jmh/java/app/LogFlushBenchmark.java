@@ -0,0 +1,95 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// ログ行を UI に届けるまでの時間を、1 行ごとに UI スレッドへ投げる方式 (旧 Platform.runLater) と
+// LogSink のリングに溜めて 1 回でまとめて追記する方式で比べる。
+// FX ツールキット無しで動かすため、UI スレッドは単一スレッドの実行器、TextArea は StringBuilder で置き換える
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogFlushBenchmark {
+
+    // ssh -vvv の接続 1 回で出るくらいの行数
+    @Param({"1000", "5000"})
+    public int lines;
+
+    // 同時に書き込む接続数
+    @Param({"4"})
+    public int producers;
+
+    private ExecutorService ui;
+    private ExecutorService workers;
+    private StringBuilder area;
+    private LogSink.Ring ring;
+    private String[] text;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ui = Executors.newSingleThreadExecutor();
+        workers = Executors.newFixedThreadPool(producers);
+        ring = new LogSink.Ring(1 << 13);
+        text = new String[lines];
+        for (int i = 0; i < lines; i++) text[i] = "[ssh #" + (i % producers) + "] debug1: channel " + i + ": new [client-session]";
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() throws Exception {
+        ui.submit(() -> area = new StringBuilder(lines * 64)).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ui.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Benchmark
+    public int perLinePost() throws Exception {
+        produce(line -> ui.execute(() -> area.append(line).append(System.lineSeparator())));
+        return ui.submit(() -> area.length()).get();
+    }
+
+    @Benchmark
+    public int batchedFlush() throws Exception {
+        produce(line -> {
+            while (!ring.offer(line)) Thread.onSpinWait();
+        });
+        // LogSink.flush と同じく、溜まった分を 1 つの文字列にして 1 回で追記する
+        return ui.submit(() -> {
+            StringBuilder chunk = new StringBuilder();
+            String line;
+            while ((line = ring.poll()) != null) chunk.append(line).append(System.lineSeparator());
+            area.append(chunk);
+            return area.length();
+        }).get();
+    }
+
+    private void produce(Consumer<String> publish) throws Exception {
+        List<Future<?>> done = new ArrayList<>(producers);
+        for (int p = 0; p < producers; p++) {
+            int from = p;
+            done.add(workers.submit(() -> {
+                for (int i = from; i < lines; i += producers) publish.accept(text[i]);
+            }));
+        }
+        for (Future<?> f : done) f.get();
+    }
+}
@@ -0,0 +1,61 @@
+package app;
+
+import javafx.geometry.Rectangle2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// モニター選択ダイアログを開くときの画面構成の取得を、キャッシュに当たる場合と取り直す場合
+// (同じスレッドで即答するスタブ / 仮想スレッドで即答するスタブ) で比較する。mstsc /l 自体の時間 (最大 2.5 秒) は含まない
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MonitorTopologyBenchmark {
+
+    private List<Rectangle2D> screens;
+    private MonitorTopologyService direct;
+    private MonitorTopologyService virtual;
+
+    @Setup
+    public void setup() throws Exception {
+        screens = List.of(new Rectangle2D(0, 0, 1920, 1080), new Rectangle2D(1920, 0, 2560, 1440),
+                new Rectangle2D(-1280, 0, 1280, 1024));
+        MonitorProbe stub = new MonitorProbe() {
+            @Override public String name() { return "stub"; }
+            @Override public List<String> monitorIds(int expectedCount) {
+                List<String> ids = new ArrayList<>(expectedCount);
+                for (int i = 0; i < expectedCount; i++) ids.add(String.valueOf(i));
+                return ids;
+            }
+        };
+        direct = new MonitorTopologyService(stub, Runnable::run, line -> { });
+        virtual = new MonitorTopologyService(stub, line -> { });
+        direct.monitors(screens).get();
+    }
+
+    @Benchmark
+    public List<MonitorSelectionSupport.MonitorOption> cached() throws InterruptedException, ExecutionException {
+        return direct.monitors(screens).get();
+    }
+
+    @Benchmark
+    public List<MonitorSelectionSupport.MonitorOption> reprobeDirect() throws InterruptedException, ExecutionException {
+        direct.invalidate();
+        return direct.monitors(screens).get();
+    }
+
+    @Benchmark
+    public List<MonitorSelectionSupport.MonitorOption> reprobeVirtualThread() throws InterruptedException, ExecutionException {
+        virtual.invalidate();
+        return virtual.monitors(screens).get();
+    }
+}
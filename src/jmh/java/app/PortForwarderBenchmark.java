@@ -0,0 +1,120 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.net.StandardSocketOptions;
+import java.util.concurrent.TimeUnit;
+
+// ループバックのエコーサーバーに対して、直接接続 (direct) とアプリ内転送 (forwarder) を比べる。
+// - roundTrip: RDP の入力イベント程度の小さな往復の遅延
+// - bulk: 画面更新程度の塊を流したときの転送量 (往復分。ops/s x chunkKb x 2 が転送バイト)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PortForwarderBenchmark {
+
+    @Param({"direct", "forwarder"})
+    public String path;
+
+    @Param({"64"})
+    public int chunkKb;
+
+    private ServerSocket echo;
+    private PortForwarder forwarder;
+    private SocketChannel ch;
+    private ByteBuffer small;
+    private ByteBuffer chunk;
+    private ByteBuffer sink;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        echo = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(this::acceptLoop);
+
+        int port = echo.getLocalPort();
+        if ("forwarder".equals(path)) {
+            forwarder = new PortForwarder("127.0.0.1", 0, PortForwarder.direct("127.0.0.1", port));
+            port = forwarder.port();
+        }
+        ch = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        small = ByteBuffer.allocateDirect(64);
+        chunk = ByteBuffer.allocateDirect(chunkKb * 1024);
+        sink = ByteBuffer.allocateDirect(chunkKb * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ch.close();
+        if (forwarder != null) forwarder.close();
+        echo.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public int roundTrip() throws IOException {
+        return exchange(small);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int bulk() throws IOException {
+        return exchange(chunk);
+    }
+
+    // 書いた分がエコーで戻ってくるまで読む。書き込みと読み込みは交互に進めて双方のバッファ詰まりを避ける
+    private int exchange(ByteBuffer out) throws IOException {
+        out.clear();
+        int expected = out.remaining(), got = 0;
+        while (out.hasRemaining() || got < expected) {
+            if (out.hasRemaining()) ch.write(out);
+            sink.clear().limit(Math.min(sink.capacity(), expected - got));
+            if (got < expected) {
+                int n = ch.read(sink);
+                if (n < 0) throw new IOException("echo closed");
+                got += n;
+            }
+        }
+        return got;
+    }
+
+    private void acceptLoop() {
+        while (!echo.isClosed()) {
+            try {
+                Socket s = echo.accept();
+                s.setTcpNoDelay(true);
+                Thread.ofVirtual().start(() -> echo(s));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void echo(Socket s) {
+        try (s; InputStream in = s.getInputStream(); OutputStream out = s.getOutputStream()) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+        } catch (IOException ignored) {
+        }
+    }
+}
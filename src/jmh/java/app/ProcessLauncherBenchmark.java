@@ -0,0 +1,55 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 何もしない実行ファイルを起動して終了を待つまでの時間を、起動方式 (direct / powershell) ごとに測る。
+// powershell は Windows でだけ動く
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProcessLauncherBenchmark {
+
+    static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    @Param({"direct", "powershell"})
+    public String engine;
+
+    // cmdkey の一括登録と同じくらいの件数
+    @Param({"4"})
+    public int batch;
+
+    private ProcessLauncher launcher;
+    private HiddenExec.Command stub;
+    private List<HiddenExec.Command> commands;
+
+    @Setup
+    public void setup() {
+        if ("powershell".equals(engine) && !WINDOWS) throw new IllegalStateException("powershell engine needs Windows");
+        launcher = "powershell".equals(engine) ? new PowerShellProcessLauncher() : new DirectProcessLauncher();
+        stub = WINDOWS
+                ? new HiddenExec.Command("cmd.exe", List.of("/c", "exit", "0"))
+                : new HiddenExec.Command("/bin/true", List.of());
+        commands = Collections.nCopies(batch, stub);
+    }
+
+    @Benchmark
+    public int runAndWait() throws Exception {
+        return launcher.runAndWait(stub.exe(), stub.args());
+    }
+
+    @Benchmark
+    public int[] runAllAndWait() throws Exception {
+        return launcher.runAllAndWait(commands);
+    }
+}
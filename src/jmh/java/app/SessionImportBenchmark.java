@@ -0,0 +1,72 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// エクスポートしたファイルの読み込み (解析だけ) と、空の sessions.db への取り込み (fsync 込み) を CSV / JSONL・10k / 100k 件で測る
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SessionImportBenchmark {
+
+    @Param({"10000", "100000"})
+    public int sessions;
+
+    @Param({"csv", "jsonl"})
+    public String format;
+
+    private Path dir;
+    private Path file;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("rdp-launcher-importbench-");
+        file = dir.resolve("sessions." + format);
+        SessionTransfer.exportFile(file, Sessions.generate(sessions));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public int parse() throws IOException {
+        int[] n = {0};
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (format.equals("csv")) SessionCsv.read(r, s -> n[0]++, e -> { });
+            else SessionJsonl.read(r, s -> n[0]++, e -> { });
+        }
+        return n[0];
+    }
+
+    // 毎回新しい sessions.db に取り込む (古いものは消す)
+    @Benchmark
+    public int importIntoRepository() throws IOException {
+        Path db = dir.resolve("sessions-" + next++ + ".db");
+        try (LogSessionRepository repo = LogSessionRepository.open(db, null)) {
+            return SessionTransfer.importFile(file, repo).rows();
+        } finally {
+            Files.deleteIfExists(db);
+        }
+    }
+}
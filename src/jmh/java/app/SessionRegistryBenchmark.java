@@ -0,0 +1,105 @@
+package app;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 保存 (既存の置き換え・新規追加と削除) と接続時の名前引きを、SessionRegistry と
+// 旧方式 (ObservableList を equalsIgnoreCase で線形走査し、変更のたびに FXCollections.sort) で比較する
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionRegistryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int sessions;
+
+    private List<Session> all;
+    private SessionRegistry registry;
+    private ObservableList<Session> list;
+    private int next;
+
+    @Setup
+    public void setup() {
+        all = Sessions.generate(sessions);
+        registry = new SessionRegistry();
+        registry.setAll(all);
+        list = FXCollections.observableArrayList(all);
+        FXCollections.sort(list, SessionRegistry.ORDER);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Session connectRegistry() {
+        return registry.find(pick().name());
+    }
+
+    @Benchmark
+    public Session connectLinear() {
+        int i = indexOfName(pick().name());
+        return i >= 0 ? list.get(i) : null;
+    }
+
+    @Benchmark
+    public int saveRegistry() {
+        Session s = pick();
+        return registry.put(changed(s));
+    }
+
+    @Benchmark
+    public int saveLinear() {
+        Session s = pick();
+        int i = indexOfName(s.name());
+        list.set(i, changed(s));
+        FXCollections.sort(list, SessionRegistry.ORDER);
+        return i;
+    }
+
+    // 新しい名前を追加してすぐ消す (一覧の途中への挿入と削除)
+    @Benchmark
+    public int addRemoveRegistry() {
+        Session s = renamed(pick());
+        int i = registry.put(s);
+        registry.remove(s.name());
+        return i;
+    }
+
+    @Benchmark
+    public int addRemoveLinear() {
+        Session s = renamed(pick());
+        list.add(s);
+        FXCollections.sort(list, SessionRegistry.ORDER);
+        int i = indexOfName(s.name());
+        list.remove(i);
+        return i;
+    }
+
+    private Session pick() {
+        return all.get(next++ % all.size());
+    }
+
+    private int indexOfName(String name) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).name().equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+
+    private Session changed(Session s) {
+        return Sessions.of(s.name(), s.rdpHost(), s.group(), s.tags() + " rev" + next);
+    }
+
+    private static Session renamed(Session s) {
+        return Sessions.of(s.name() + "-new", s.rdpHost(), s.group(), s.tags());
+    }
+}
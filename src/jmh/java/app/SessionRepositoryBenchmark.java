@@ -0,0 +1,89 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// sessions.db の読み込み (再生)・1 件保存 (fsync 込み)・名前引き・全件取得を 10k / 100k 件で測る
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionRepositoryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int sessions;
+
+    private Path dir;
+    private Path file;
+    private List<Session> all;
+    private LogSessionRepository repo;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("rdp-launcher-repobench-");
+        file = dir.resolve("sessions.db");
+        all = Sessions.generate(sessions);
+        try (LogSessionRepository r = LogSessionRepository.open(file, null)) {
+            r.upsertAll(all);
+        }
+        repo = LogSessionRepository.open(file, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repo.close();
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    // 起動時の読み込み。別ファイルとして開くので、保存ベンチマークで増えた分もそのまま再生する
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int openReplay() throws IOException {
+        try (LogSessionRepository r = LogSessionRepository.open(file, null)) {
+            return r.size();
+        }
+    }
+
+    // 詳細の保存 1 回分 (1 レコード追記 + fsync。無効レコードが溜まれば圧縮も走る)
+    @Benchmark
+    public int upsertOne() throws IOException {
+        Session s = all.get(next++ % all.size());
+        Session changed = new Session(s.name(), s.useBastion(), s.sshAlias(), s.jumpHosts(), s.sshOptions(),
+                s.useRdGateway(), s.rdGatewayHost(), s.rdGatewayUseCurrentUser(), s.rdGatewayShareCreds(),
+                s.rdpHost(), s.rdpPort(), s.username(), s.domain(), s.fullscreen(),
+                s.width(), s.height(), s.multimon(), s.span(),
+                s.selectedMonitors(), s.group(), s.tags() + " rev" + next);
+        repo.upsert(changed);
+        return repo.size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Optional<Session> find() {
+        return repo.find(all.get(next++ % all.size()).name());
+    }
+
+    @Benchmark
+    public int loadAll() {
+        return repo.loadAll().size();
+    }
+}
@@ -0,0 +1,95 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// ssh ログの書き込みと末尾読み取りのコスト。
+// 書き込みは -vvv 相当の 1 行をローテーション付きログ (RotatingLogFile) と素の追記に書いて比べ、
+// 末尾読み取りは数 MB のログから接続失敗時に表示する 80 行を LogTail と全行読み込みで取り出して比べる
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SshLogBenchmark {
+
+    private static final byte[] LINE = "debug3: receive packet: type 94 channel 0: rcvd adjust 32768 bytes\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"1", "16"})
+    public int logMb;
+
+    private Path dir;
+    private Path bigLog;
+    private RotatingLogFile rotating;
+    private FileChannel plain;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("rdp-launcher-logbench-");
+        bigLog = dir.resolve("ssh-big.err.log");
+        try (FileChannel ch = FileChannel.open(bigLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            long target = logMb * 1024L * 1024L;
+            for (long written = 0; written < target; ) {
+                buf.clear();
+                while (buf.remaining() >= LINE.length) buf.put(LINE);
+                buf.flip();
+                written += ch.write(buf);
+            }
+        }
+        rotating = RotatingLogFile.open(dir.resolve("ssh-rotating.err.log"), logMb * 1024L * 1024L);
+        plain = FileChannel.open(dir.resolve("ssh-plain.err.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rotating.close();
+        plain.close();
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public long writeRotating() throws IOException {
+        rotating.write(LINE, 0, LINE.length);
+        return rotating.size();
+    }
+
+    @Benchmark
+    public int writePlainAppend() throws IOException {
+        return plain.write(ByteBuffer.wrap(LINE));
+    }
+
+    @Benchmark
+    public String tailLastLines() {
+        return LogTail.lastLines(bigLog, 80);
+    }
+
+    @Benchmark
+    public String tailReadAllLines() throws IOException {
+        List<String> all = Files.readAllLines(bigLog, Charset.defaultCharset());
+        return String.join(System.lineSeparator(), all.subList(Math.max(0, all.size() - 80), all.size()));
+    }
+}
@@ -1,53 +1,102 @@
 package app;
 
-import javax.swing.*;
-import java.awt.*;
+import java.util.List;
+import java.util.Locale;
 
+// SSH_ASKPASS の入口。JavaFX (RdpLauncherApp) を経由せずに直接起動する軽量な main で、
+// 入力画面も既定では Windows 標準のダイアログ (NativeAskPassUi) を使い AWT / Swing を読み込まない。
+// 答えは stdout に書き、キャンセル / いいえは終了コード 1 で返す
 public final class AskPassMain {
+    // AppCDS の学習実行・起動ベンチマーク用。ダイアログは出さずに同じクラスを読み込んで終了する
+    static final boolean CDS_TRAINING = Boolean.getBoolean("rdp.launcher.cdsTraining");
+
+    // jlink イメージの lib に置く askpass 専用の AppCDS アーカイブ (build.gradle の cdsArchive が作る)
+    static final String CDS_ARCHIVE = "askpass-cds.jsa";
+
+    // askpass プロセスは数十 ms で終わるので、JIT は C1 まで・GC は Serial で十分。
+    // JVM の警告は stdout (ssh への応答) に混ぜない。build.gradle の askpassJvmArgs と合わせること
+    static final List<String> JVM_OPTIONS = List.of(
+            "--enable-native-access=app",
+            "-XX:TieredStopAtLevel=1",
+            "-XX:+UseSerialGC",
+            "-Xshare:auto",
+            "-Xlog:disable",
+            "-Xlog:all=warning:stderr");
+
     private AskPassMain() {}
 
     public static void main(String[] args) {
         // ssh.exe が渡す prompt をそのまま使う（なければ汎用）
-        String prompt = (args != null && args.length > 0) ? String.join(" ", args) : "Password:";
-        String pw = promptPassword(prompt);
-        if (pw == null) {
+        AskPassPrompt prompt = AskPassPrompt.of(args != null && args.length > 0 ? String.join(" ", args) : null,
+                System.getenv("SSH_ASKPASS_PROMPT"));
+        AskPassUi ui = selectUi(System.getProperty("rdp.launcher.askpassUi", ""));
+        if (CDS_TRAINING) {
+            ui.warmUp();
+            System.exit(0);
+            return;
+        }
+
+        String answer = ask(ui, prompt);
+        if (answer == null) {
             System.exit(1); // cancel
             return;
         }
         // ssh.exe は stdout から読む
-        System.out.print(pw);
+        System.out.print(answer);
         System.out.flush();
         System.exit(0);
     }
 
-    private static String promptPassword(String prompt) {
+    // アプリ内 (AskPassServer) で Prompter が無いときにも使う
+    static String ask(AskPassPrompt prompt) {
+        return ask(selectUi(System.getProperty("rdp.launcher.askpassUi", "")), prompt);
+    }
+
+    private static String ask(AskPassUi ui, AskPassPrompt prompt) {
         try {
-            // 最前面っぽくする
-            JDialog dummy = new JDialog((Frame) null, true);
-            dummy.setAlwaysOnTop(true);
-            dummy.setLocationRelativeTo(null);
-
-            JPasswordField pf = new JPasswordField(24);
-            JPanel p = new JPanel(new BorderLayout(8, 8));
-            p.add(new JLabel(prompt), BorderLayout.NORTH);
-            p.add(pf, BorderLayout.CENTER);
-
-            int r = JOptionPane.showConfirmDialog(
-                    dummy,
-                    p,
-                    "SSH Authentication",
-                    JOptionPane.OK_CANCEL_OPTION,
-                    JOptionPane.PLAIN_MESSAGE
-            );
-            dummy.dispose();
-
-            if (r != JOptionPane.OK_OPTION) return null;
-
-            char[] chars = pf.getPassword();
-            if (chars == null) return "";
-            return new String(chars);
+            return ui.ask(prompt);
         } catch (Exception e) {
+            // ネイティブのダイアログが出せなければ Swing で聞き直す
+            if ("native".equals(ui.name())) {
+                try {
+                    return new SwingAskPassUi().ask(prompt);
+                } catch (Exception ignored) {
+                }
+            }
             return null;
         }
     }
+
+    // -Drdp.launcher.askpassUi=native|swing|stdin。既定は Windows ならネイティブ、それ以外は Swing、表示環境が無ければ stdin
+    static AskPassUi selectUi(String name) {
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        String n = name.isBlank() ? (windows ? "native" : "swing") : name.toLowerCase();
+        switch (n) {
+            case "stdin":
+                return new ConsoleAskPassUi();
+            case "native":
+                try {
+                    return new NativeAskPassUi();
+                } catch (RuntimeException | LinkageError e) {
+                    return swingOrConsole();
+                }
+            default:
+                return swingOrConsole();
+        }
+    }
+
+    private static AskPassUi swingOrConsole() {
+        boolean headless = isHeadless(System.getProperty("java.awt.headless"), System.getProperty("os.name", ""),
+                System.getenv("DISPLAY"), System.getenv("WAYLAND_DISPLAY"));
+        return headless ? new ConsoleAskPassUi() : new SwingAskPassUi();
+    }
+
+    // GraphicsEnvironment.isHeadless() は AWT (java.desktop) を初期化するので使わず、同じ手がかりを直接見る。
+    // java.awt.headless の指定が最優先。Windows / macOS は常に表示環境があるものとし、それ以外は X11 / Wayland の接続先で判断する
+    static boolean isHeadless(String awtHeadless, String osName, String display, String waylandDisplay) {
+        if (awtHeadless != null && !awtHeadless.isBlank()) return Boolean.parseBoolean(awtHeadless.trim());
+        String os = osName.toLowerCase(Locale.ROOT);
+        if (os.startsWith("windows") || os.startsWith("mac")) return false;
+        return (display == null || display.isBlank()) && (waylandDisplay == null || waylandDisplay.isBlank());
+    }
 }
@@ -0,0 +1,65 @@
+package app;
+
+import java.util.Locale;
+
+// ssh が SSH_ASKPASS に渡すプロンプトの種類。
+// 種類は SSH_ASKPASS_PROMPT (OpenSSH 8.4 以降の confirm / none) と、プロンプト文から判定する
+public record AskPassPrompt(Kind kind, String text) {
+
+    public enum Kind {
+        PASSWORD,
+        PASSPHRASE,
+        OTP,
+        // "Are you sure you want to continue connecting (yes/no/[fingerprint])?" は "yes" を返すと続行
+        HOST_KEY,
+        // SSH_ASKPASS_PROMPT=confirm|none。終了コード (0 = はい) だけで答える
+        CONFIRM
+    }
+
+    public static AskPassPrompt of(String text, String askpassPromptEnv) {
+        String t = text == null || text.isBlank() ? "Password:" : text.trim();
+        return new AskPassPrompt(classify(t, askpassPromptEnv), t);
+    }
+
+    static Kind classify(String text, String askpassPromptEnv) {
+        if (askpassPromptEnv != null) {
+            String e = askpassPromptEnv.trim().toLowerCase(Locale.ROOT);
+            if (e.equals("confirm") || e.equals("none")) return Kind.CONFIRM;
+        }
+        String p = text.toLowerCase(Locale.ROOT);
+        if (p.contains("continue connecting") || p.contains("(yes/no")) return Kind.HOST_KEY;
+        if (p.contains("passphrase")) return Kind.PASSPHRASE;
+        if (p.contains("verification code") || p.contains("one-time") || p.contains("otp")
+                || p.contains("token") || p.contains("authenticator")) return Kind.OTP;
+        return Kind.PASSWORD;
+    }
+
+    // 入力欄を伏せ字にする種類 (はい / いいえで答えるもの以外)
+    public boolean secret() {
+        return kind != Kind.HOST_KEY && kind != Kind.CONFIRM;
+    }
+
+    // はい / いいえで答えた結果を ssh に返す文字列にする (null = いいえ)
+    public String confirmAnswer(boolean yes) {
+        if (!yes) return null;
+        return kind == Kind.HOST_KEY ? "yes" : "";
+    }
+
+    // ダイアログの補足表示 ("user@host's password:" なら "user@host")
+    public String subject() {
+        return switch (kind) {
+            case PASSWORD -> {
+                int i = text.indexOf("'s password");
+                yield i > 0 ? text.substring(0, i).trim() : "password";
+            }
+            case PASSPHRASE -> {
+                int a = text.indexOf('\'');
+                int b = a < 0 ? -1 : text.indexOf('\'', a + 1);
+                yield b > a + 1 ? text.substring(a + 1, b) : "key passphrase";
+            }
+            case OTP -> "one-time code";
+            case HOST_KEY -> "host key";
+            case CONFIRM -> "confirmation";
+        };
+    }
+}
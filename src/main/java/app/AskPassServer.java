@@ -0,0 +1,307 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 起動中のアプリ内で SSH_ASKPASS の問い合わせに答える。
+// ssh.exe -> 使い回しの .cmd -> curl.exe -> 127.0.0.1 の順で届くので、プロンプトごとに JVM を起動しない
+public final class AskPassServer implements AutoCloseable {
+
+    public interface Prompter {
+        // null = キャンセル / いいえ
+        String prompt(AskPassPrompt prompt) throws InterruptedException;
+    }
+
+    // roundTrip = リクエスト受信から応答送信まで (ユーザーの入力時間を含む)、dispatch = 受信から Prompter 呼び出しまで
+    public record Stats(long prompts, long answered, long cancelled, long rejected,
+                        long avgRoundTripMillis, long maxRoundTripMillis, long lastDispatchMicros) {
+        @Override
+        public String toString() {
+            return "prompts=" + prompts + " answered=" + answered + " cancelled=" + cancelled
+                    + " rejected=" + rejected + " roundTrip avg/max=" + avgRoundTripMillis + "/" + maxRoundTripMillis
+                    + "ms dispatch=" + lastDispatchMicros + "us";
+        }
+    }
+
+    private static final String PATH = "/askpass";
+    // ssh の環境変数に入れ、どの起動 (接続) のプロンプトかを shim から送らせる
+    public static final String TAG_ENV = "RDP_LAUNCHER_ASKPASS_TAG";
+    private static volatile AskPassServer shared;
+    private static volatile Prompter prompter;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String token;
+    private volatile Path shim;
+    private final Map<String, Set<Thread>> waiting = new ConcurrentHashMap<>();
+
+    private final AtomicLong prompts = new AtomicLong();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong roundTripTotal = new AtomicLong();
+    private final AtomicLong roundTripMax = new AtomicLong();
+    private final AtomicLong lastDispatch = new AtomicLong();
+
+    private AskPassServer() throws IOException {
+        byte[] b = new byte[24];
+        new SecureRandom().nextBytes(b);
+        this.token = HexFormat.of().formatHex(b);
+
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rdp-launcher-askpass-", 0).factory());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    // -Drdp.launcher.askpass=server|process (既定 server)。curl.exe が無ければ従来のプロセス起動に戻す
+    public static boolean enabled() {
+        if ("process".equalsIgnoreCase(System.getProperty("rdp.launcher.askpass", "server"))) return false;
+        return curlExe() != null;
+    }
+
+    public static AskPassServer shared() throws IOException {
+        AskPassServer s = shared;
+        if (s != null) return s;
+        synchronized (AskPassServer.class) {
+            if (shared == null) shared = new AskPassServer();
+            return shared;
+        }
+    }
+
+    public static void setPrompter(Prompter p) {
+        prompter = p;
+    }
+
+    public static void shutdown() {
+        AskPassServer s;
+        synchronized (AskPassServer.class) {
+            s = shared;
+            shared = null;
+        }
+        if (s != null) s.close();
+    }
+
+    public static Stats sharedStats() {
+        AskPassServer s = shared;
+        return s == null ? new Stats(0, 0, 0, 0, 0, 0, 0) : s.stats();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // 一度だけ書き出して使い回す。確認の種類は SSH_ASKPASS_PROMPT で渡される。
+    // プロンプト (%1) は cmd の構文解析を通すと " や改行で壊れる (コマンドとして解釈される) ので展開しない。
+    // 遅延展開の !CMDCMDLINE! は解析後に展開されるため、起動時のコマンドライン全体をそのまま一時ファイルに書き、
+    // curl にファイルから送らせてサーバー側で引数を取り出す
+    public Path clientShim() throws IOException {
+        Path p = shim;
+        if (p != null && Files.exists(p)) return p;
+        synchronized (this) {
+            if (shim != null && Files.exists(shim)) return shim;
+            Path cmd = Files.createTempFile("rdp-launcher-askpass-", ".cmd");
+            String url = "http://127.0.0.1:" + port() + PATH;
+            String content = "@echo off\r\n"
+                    + "setlocal DisableDelayedExpansion\r\n"
+                    + "set \"RDPL_ASKPASS_FILE=%TEMP%\\rdp-launcher-askpass-%RANDOM%%RANDOM%.txt\"\r\n"
+                    + "setlocal EnableDelayedExpansion\r\n"
+                    + "> \"!RDPL_ASKPASS_FILE!\" echo(!CMDCMDLINE!\r\n"
+                    + "endlocal\r\n"
+                    + "\"" + curlExe() + "\" -s -f --noproxy 127.0.0.1 -H \"X-Askpass-Token: " + token + "\""
+                    + " --data-urlencode \"cmdline@%RDPL_ASKPASS_FILE%\""
+                    + " --data-urlencode \"kind=%SSH_ASKPASS_PROMPT%\""
+                    + " --data-urlencode \"tag=%" + TAG_ENV + "%\" " + url + "\r\n"
+                    + "set \"RC=%ERRORLEVEL%\"\r\n"
+                    + "del \"%RDPL_ASKPASS_FILE%\" >NUL 2>&1\r\n"
+                    + "exit /b %RC%\r\n";
+            Files.writeString(cmd, content, Charset.forName("UTF-8"), StandardOpenOption.TRUNCATE_EXISTING);
+            cmd.toFile().deleteOnExit();
+            shim = cmd;
+            return cmd;
+        }
+    }
+
+    // tag 付きで待っているプロンプトを中断する (ssh の起動を諦めた / 接続を片付けたとき)。
+    // Prompter には InterruptedException が届くので、表示中のダイアログは Prompter 側で閉じる
+    public static void cancelPrompts(String tag) {
+        AskPassServer s = shared;
+        if (s == null || tag == null) return;
+        Set<Thread> threads = s.waiting.remove(tag);
+        if (threads != null) threads.forEach(Thread::interrupt);
+    }
+
+    public Stats stats() {
+        long n = answered.get() + cancelled.get();
+        return new Stats(prompts.get(), answered.get(), cancelled.get(), rejected.get(),
+                n == 0 ? 0 : roundTripTotal.get() / n, roundTripMax.get(), lastDispatch.get());
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        try (ex) {
+            String got = ex.getRequestHeaders().getFirst("X-Askpass-Token");
+            if (!"POST".equals(ex.getRequestMethod()) || got == null
+                    || !MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII), got.getBytes(StandardCharsets.US_ASCII))) {
+                rejected.incrementAndGet();
+                ex.sendResponseHeaders(403, -1);
+                return;
+            }
+            prompts.incrementAndGet();
+
+            Map<String, String> form = parseForm(ex.getRequestBody());
+            AskPassPrompt prompt = AskPassPrompt.of(promptText(form, shim), form.get("kind"));
+            String tag = form.get("tag");
+            Prompter p = prompter;
+            lastDispatch.set(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t0));
+
+            String answer;
+            Thread self = Thread.currentThread();
+            if (tag != null && !tag.isBlank()) waiting.computeIfAbsent(tag, k -> ConcurrentHashMap.newKeySet()).add(self);
+            try {
+                answer = p != null ? p.prompt(prompt) : AskPassMain.ask(prompt);
+            } catch (InterruptedException e) {
+                answer = null;
+            } finally {
+                if (tag != null && !tag.isBlank()) {
+                    waiting.computeIfPresent(tag, (k, v) -> {
+                        v.remove(self);
+                        return v.isEmpty() ? null : v;
+                    });
+                }
+                // cancelPrompts の割り込みを応答の送信まで持ち越さない
+                Thread.interrupted();
+            }
+
+            if (answer == null) {
+                cancelled.incrementAndGet();
+                ex.sendResponseHeaders(404, -1);
+            } else {
+                answered.incrementAndGet();
+                byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+            roundTripTotal.addAndGet(ms);
+            roundTripMax.accumulateAndGet(ms, Math::max);
+        }
+    }
+
+    private static Map<String, String> parseForm(InputStream in) throws IOException {
+        String body = new String(in.readNBytes(64 * 1024), StandardCharsets.US_ASCII);
+        Map<String, String> form = new HashMap<>();
+        for (String kv : body.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq <= 0) continue;
+            String name = kv.substring(0, eq);
+            // cmdline は cmd の echo が書いたバイト列なので、UTF-8 でなければ既定の文字コードで読む
+            Charset cs = name.equals("cmdline") ? cmdlineCharset(kv.substring(eq + 1)) : StandardCharsets.UTF_8;
+            form.put(name, URLDecoder.decode(kv.substring(eq + 1), cs));
+        }
+        return form;
+    }
+
+    // 旧形式 (prompt=) も受け付ける
+    static String promptText(Map<String, String> form, Path shim) {
+        String text = form.get("prompt");
+        if (text != null) return text;
+        String cmdline = form.get("cmdline");
+        if (cmdline == null) return null;
+        return promptFromCommandLine(cmdline, shim == null ? null : shim.getFileName().toString());
+    }
+
+    // cmd.exe /c ""C:\...\rdp-launcher-askpass-N.cmd" "user@host's password: "" から 1 番目の引数を取り出す。
+    // ssh (Win32-OpenSSH) は引数を MSVC の規則で引用する ("..." で囲み、" は \" にする)
+    static String promptFromCommandLine(String cmdline, String shimName) {
+        String s = cmdline.strip();
+        int i = shimName == null ? -1 : s.toLowerCase(Locale.ROOT).indexOf(shimName.toLowerCase(Locale.ROOT));
+        if (i < 0) return s;
+        i += shimName.length();
+        if (i < s.length() && s.charAt(i) == '"') i++;
+        while (i < s.length() && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) i++;
+
+        StringBuilder out = new StringBuilder();
+        boolean quoted = false;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                int n = 0;
+                while (i < s.length() && s.charAt(i) == '\\') { n++; i++; }
+                if (i < s.length() && s.charAt(i) == '"') {
+                    out.append("\\".repeat(n / 2));
+                    if (n % 2 == 1) { out.append('"'); i++; }
+                } else {
+                    out.append("\\".repeat(n));
+                }
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+                i++;
+                continue;
+            }
+            if (!quoted && (c == ' ' || c == '\t')) break;
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static Charset cmdlineCharset(String encoded) {
+        byte[] raw = URLDecoder.decode(encoded, StandardCharsets.ISO_8859_1).getBytes(StandardCharsets.ISO_8859_1);
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(raw));
+            return StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e) {
+            try {
+                return Charset.forName(System.getProperty("native.encoding", "UTF-8"));
+            } catch (RuntimeException unsupported) {
+                return Charset.defaultCharset();
+            }
+        }
+    }
+
+    private static String curlExe() {
+        String root = System.getenv("SystemRoot");
+        if (root == null || root.isBlank()) return null;
+        Path curl = Paths.get(root, "System32", "curl.exe");
+        return Files.isRegularFile(curl) ? curl.toString() : null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
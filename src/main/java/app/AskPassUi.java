@@ -0,0 +1,14 @@
+package app;
+
+// askpass の入力画面。AskPassMain が起動時に 1 つ選ぶ
+public interface AskPassUi {
+
+    String name();
+
+    // 入力された文字列、はい / いいえの種類は AskPassPrompt.confirmAnswer の結果。null = キャンセル / いいえ
+    String ask(AskPassPrompt prompt) throws Exception;
+
+    // AppCDS の学習実行用。表示はせずに、入力画面で使うクラスとネイティブ側を初期化する
+    default void warmUp() {
+    }
+}
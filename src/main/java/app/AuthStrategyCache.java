@@ -0,0 +1,70 @@
+package app;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 踏み台チェーンごとに前回成功した認証方式を覚えておき、次回は BatchMode の空振りを省く
+public final class AuthStrategyCache {
+
+    public enum Mode { BATCH, INTERACTIVE }
+
+    // method = ssh が最後に報告した認証方式 (publickey / password / keyboard-interactive など、不明なら null)
+    public record Strategy(Mode mode, String method) {}
+
+    public record Stats(long lookups, long hits, long invalidations, long savedHandshakes, int entries) {
+        public double hitRate() {
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + "/" + lookups + String.format(Locale.ROOT, " (%.0f%%)", hitRate() * 100)
+                    + " invalidations=" + invalidations + " savedHandshakes=" + savedHandshakes + " entries=" + entries;
+        }
+    }
+
+    // LogLevel=VERBOSE で出る: Authenticated to host ([1.2.3.4]:22) using "publickey".
+    private static final Pattern AUTHENTICATED = Pattern.compile("Authenticated to .* using \"([\\w@.-]+)\"");
+
+    private final Map<TunnelPool.ChainKey, Strategy> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+
+    public Strategy lookup(TunnelPool.ChainKey key) {
+        lookups.incrementAndGet();
+        Strategy s = entries.get(key);
+        if (s != null) hits.incrementAndGet();
+        return s;
+    }
+
+    public void remember(TunnelPool.ChainKey key, Mode mode, String method) {
+        entries.put(key, new Strategy(mode, method));
+    }
+
+    public void invalidate(TunnelPool.ChainKey key) {
+        if (entries.remove(key) != null) invalidations.incrementAndGet();
+    }
+
+    // キャッシュのおかげで BatchMode=yes の試行 (= 1 回分のハンドシェイク) を省けた
+    public void recordSavedHandshake() {
+        saved.incrementAndGet();
+    }
+
+    public Stats stats() {
+        return new Stats(lookups.get(), hits.get(), invalidations.get(), saved.get(), entries.size());
+    }
+
+    public static String authenticatedMethod(String errLogText) {
+        if (errLogText == null) return null;
+        String method = null;
+        Matcher m = AUTHENTICATED.matcher(errLogText);
+        while (m.find()) method = m.group(1);
+        return method;
+    }
+}
@@ -0,0 +1,54 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// cmdkey.exe を HiddenExec 経由で起動する従来方式。パスワードがコマンドラインに載る点に注意
+public final class CmdkeyCredentialStore implements CredentialStore {
+
+    @Override
+    public String name() {
+        return "cmdkey";
+    }
+
+    @Override
+    public CredentialManager.BatchResult addAll(Collection<String> hosts, String username, String password)
+            throws IOException, InterruptedException {
+        List<String> keys = CredentialManager.distinct(hosts);
+        List<HiddenExec.Command> cmds = new ArrayList<>();
+        for (String h : keys) {
+            cmds.add(new HiddenExec.Command("cmdkey.exe", List.of(
+                    "/generic:" + CredentialManager.target(h),
+                    "/user:" + username,
+                    "/pass:" + password
+            )));
+        }
+        return run(keys, cmds);
+    }
+
+    @Override
+    public CredentialManager.BatchResult deleteAll(Collection<String> hosts) throws IOException, InterruptedException {
+        List<String> keys = CredentialManager.distinct(hosts);
+        List<HiddenExec.Command> cmds = new ArrayList<>();
+        for (String h : keys) {
+            cmds.add(new HiddenExec.Command("cmdkey.exe", List.of("/delete:" + CredentialManager.target(h))));
+        }
+        return run(keys, cmds);
+    }
+
+    private static CredentialManager.BatchResult run(List<String> keys, List<HiddenExec.Command> cmds)
+            throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        int[] exits = HiddenExec.runHiddenBatchAndWait(cmds);
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            result.put(keys.get(i), i < exits.length ? exits[i] : -1);
+        }
+        return new CredentialManager.BatchResult(result, System.nanoTime() - t0);
+    }
+}
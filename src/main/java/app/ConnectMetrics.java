@@ -0,0 +1,213 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// セッション × 段ごとの接続レイテンシ分布と成功 / 失敗数。
+// 全セッション合算は session = "_all" として同時に記録する。
+public final class ConnectMetrics implements AutoCloseable {
+
+    public static final String ALL = "_all";
+
+    public record Row(String session, String stage, long ok, long failed, long sumMicros, LatencyHistogram.Snapshot latency) {}
+
+    private record Key(String session, String stage) {}
+
+    private static final class Cell {
+        final LatencyHistogram hist = new LatencyHistogram();
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+
+        void add(long nanos, boolean success) {
+            hist.recordNanos(nanos);
+            (success ? ok : failed).incrementAndGet();
+        }
+    }
+
+    private final Map<Key, Cell> cells = new ConcurrentHashMap<>();
+    private volatile HttpServer http;
+
+    // セッション名は利用者が付けたものなので、先頭の文字などで特別扱いはしない
+    public void record(String session, String stage, long nanos, boolean ok) {
+        cell(session == null || session.isBlank() ? "-" : session, stage).add(nanos, ok);
+        cell(ALL, stage).add(nanos, ok);
+    }
+
+    // "_startup" のようなアプリ自身の行。全セッション集計 (_all) には含めない
+    public void recordInternal(String name, String stage, long nanos, boolean ok) {
+        cell(name, stage).add(nanos, ok);
+    }
+
+    private Cell cell(String session, String stage) {
+        return cells.computeIfAbsent(new Key(session, stage), k -> new Cell());
+    }
+
+    public List<Row> snapshot() {
+        List<Row> rows = new ArrayList<>();
+        cells.forEach((k, c) -> rows.add(new Row(k.session(), k.stage(), c.ok.get(), c.failed.get(), c.hist.sumMicros(), c.hist.snapshot())));
+        rows.sort(Comparator.comparing((Row r) -> !r.session().equals(ALL))
+                .thenComparing(Row::session, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Row::stage));
+        return rows;
+    }
+
+    // ---- 表示・出力 ----
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-20s %-14s %6s %6s %9s %9s %9s %9s%n",
+                "session", "stage", "ok", "fail", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Row r : snapshot()) {
+            LatencyHistogram.Snapshot s = r.latency();
+            sb.append(String.format(Locale.ROOT, "%-20s %-14s %6d %6d %9.1f %9.1f %9.1f %9.1f%n",
+                    abbreviate(r.session(), 20), r.stage(), r.ok(), r.failed(),
+                    s.p50Micros() / 1000.0, s.p95Micros() / 1000.0, s.p99Micros() / 1000.0, s.maxMicros() / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"metrics\":[");
+        boolean first = true;
+        for (Row r : snapshot()) {
+            LatencyHistogram.Snapshot s = r.latency();
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"session\":").append(jsonString(r.session()))
+                    .append(",\"stage\":").append(jsonString(r.stage()))
+                    .append(",\"ok\":").append(r.ok())
+                    .append(",\"failed\":").append(r.failed())
+                    .append(",\"count\":").append(s.count())
+                    .append(",\"p50Micros\":").append(s.p50Micros())
+                    .append(",\"p95Micros\":").append(s.p95Micros())
+                    .append(",\"p99Micros\":").append(s.p99Micros())
+                    .append(",\"maxMicros\":").append(s.maxMicros())
+                    .append(",\"meanMicros\":").append(s.meanMicros())
+                    .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP rdp_launcher_stage_latency_seconds Connect pipeline stage latency.\n");
+        sb.append("# TYPE rdp_launcher_stage_latency_seconds summary\n");
+        List<Row> rows = snapshot();
+        for (Row r : rows) {
+            LatencyHistogram.Snapshot s = r.latency();
+            String l = "session=" + promString(r.session()) + ",stage=" + promString(r.stage());
+            quantile(sb, l, "0.5", s.p50Micros());
+            quantile(sb, l, "0.95", s.p95Micros());
+            quantile(sb, l, "0.99", s.p99Micros());
+            sb.append("rdp_launcher_stage_latency_seconds_sum{").append(l).append("} ")
+                    .append(seconds(r.sumMicros())).append('\n');
+            sb.append("rdp_launcher_stage_latency_seconds_count{").append(l).append("} ").append(s.count()).append('\n');
+        }
+        sb.append("# HELP rdp_launcher_stage_total Connect pipeline stage outcomes.\n");
+        sb.append("# TYPE rdp_launcher_stage_total counter\n");
+        for (Row r : rows) {
+            String l = "session=" + promString(r.session()) + ",stage=" + promString(r.stage());
+            sb.append("rdp_launcher_stage_total{").append(l).append(",result=\"ok\"} ").append(r.ok()).append('\n');
+            sb.append("rdp_launcher_stage_total{").append(l).append(",result=\"failed\"} ").append(r.failed()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // 途中まで書かれたファイルを読まれないよう、一時ファイルに書いてから置き換える
+    public Path exportTo(Path file) throws IOException {
+        String body = file.getFileName().toString().endsWith(".json") ? toJson() : toPrometheus();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, body, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    // -Drdp.launcher.metricsPort=<port> で 127.0.0.1 に /metrics (Prometheus) と /metrics.json を出す
+    public void startHttpIfConfigured() {
+        int port = Integer.getInteger("rdp.launcher.metricsPort", 0);
+        if (port <= 0 || http != null) return;
+        try {
+            HttpServer s = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            s.createContext("/metrics.json", ex -> respond(ex, "application/json", toJson()));
+            s.createContext("/metrics", ex -> respond(ex, "text/plain; version=0.0.4", toPrometheus()));
+            s.start();
+            http = s;
+        } catch (IOException ignored) {
+        }
+    }
+
+    public int httpPort() {
+        HttpServer s = http;
+        return s == null ? -1 : s.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        HttpServer s = http;
+        http = null;
+        if (s != null) s.stop(0);
+    }
+
+    private static void respond(HttpExchange ex, String type, String body) throws IOException {
+        try (ex) {
+            byte[] b = body.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+            ex.sendResponseHeaders(200, b.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(b);
+            }
+        }
+    }
+
+    private static void quantile(StringBuilder sb, String labels, String q, long micros) {
+        sb.append("rdp_launcher_stage_latency_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                .append(seconds(micros)).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+    }
+
+    private static String promString(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String abbreviate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max - 1) + "~";
+    }
+}
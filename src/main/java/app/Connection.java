@@ -5,11 +5,16 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class Connection {
 
@@ -24,27 +29,77 @@ public final class Connection {
     }
 
     private final String localBind;
-    private final String loopbackHostForRdp;
     private final String mstscExe;
     private final Path appDir;
     private final Path appKnownHosts;
 
-    private final ExecutorService exec = Executors.newFixedThreadPool(2, r -> {
-        Thread t = new Thread(r, "rdp-launcher-conn");
-        t.setDaemon(true);
-        return t;
-    });
-
-    private volatile int sshPid = -1;
-    private volatile Process mstscProc = null;
-    private volatile String lastTempCredKey = null;
+    // 接続ごとに mstsc の終了まで待つため仮想スレッドで実行する
+    private final TaskRunner runner = new TaskRunner("rdp-launcher-conn");
+
+    // ssh: 従来の接続ごとの ssh -L (既定) / socks: チェーンごとの ssh -D マスター + アプリ内転送 / stdio: 接続ごとの ssh -W + アプリ内転送。
+    // socks のマスターは SOCKS ポートを開いたままにするので、明示的に選んだときだけ使う
+    private static final String FORWARD_MODE = System.getProperty("rdp.launcher.forward", "ssh").toLowerCase();
+
+    private final TunnelPool tunnelPool;
+    // 実際に使う転送方式。socks はマスターを保持するための方式なので、保持しない (sshIdleTtlSeconds=0) なら ssh -L にする
+    private final String forwardMode;
+    private final ConnectMetrics metrics = new ConnectMetrics();
+    private final CredentialLeases credLeases = new CredentialLeases(metrics);
+    private final Map<Long, LiveConnection> live = new ConcurrentHashMap<>();
+    // 踏み台経由の接続ごとの待ち受けアドレス (= TERMSRV のキー)
+    private final LoopbackAddresses loopbacks = new LoopbackAddresses();
+    private final AtomicLong nextId = new AtomicLong();
+    private final EventJournal journal;
+
+    public Connection(String localBind, String mstscExe, Path appDir, Path appKnownHosts) {
+        this(localBind, mstscExe, appDir, appKnownHosts, FORWARD_MODE);
+    }
 
-    public Connection(String localBind, String loopbackHostForRdp, String mstscExe, Path appDir, Path appKnownHosts) {
+    // forwardMode は rdp.launcher.forward と同じ値 (テストで転送方式を固定するため)
+    Connection(String localBind, String mstscExe, Path appDir, Path appKnownHosts, String forwardMode) {
         this.localBind = localBind;
-        this.loopbackHostForRdp = loopbackHostForRdp;
         this.mstscExe = mstscExe;
         this.appDir = appDir;
         this.appKnownHosts = appKnownHosts;
+        this.tunnelPool = new TunnelPool(localBind, TunnelPool.configuredIdleTtl());
+        this.forwardMode = forwardMode.equals("socks") && !tunnelPool.enabled() ? "ssh" : forwardMode;
+        this.journal = new EventJournal(appDir.resolve("events.bin"));
+        this.metrics.startHttpIfConfigured();
+    }
+
+    public ConnectMetrics metrics() {
+        return metrics;
+    }
+
+    public int activeCount() {
+        return live.size();
+    }
+
+    public TaskRunner.Metrics executorMetrics() {
+        return runner.metrics();
+    }
+
+    public List<LiveConnection> liveConnections() {
+        return new ArrayList<>(live.values());
+    }
+
+    // events.bin に記録された接続要求から mstsc 起動までの時間 (sessionName が null なら全セッション)
+    public EventJournal.Percentiles timeToDesktop(String sessionName) throws IOException {
+        journal.flush();
+        return EventJournal.timeToDesktop(journal.file(), sessionName);
+    }
+
+    // 検索の並び順に使う、セッションごとの最終接続時刻
+    public Map<String, Long> lastConnected() throws IOException {
+        journal.flush();
+        return EventJournal.lastRequested(journal.file());
+    }
+
+    public boolean isConnected(String sessionName) {
+        for (LiveConnection c : live.values()) {
+            if (c.session().name().equalsIgnoreCase(sessionName)) return true;
+        }
+        return false;
     }
 
     public void connect(Session s0, String rawUser, String rawDomain, String rawPass, Ui ui) {
@@ -67,223 +122,368 @@ public final class Connection {
             return;
         }
 
+        LiveConnection conn = new LiveConnection(nextId.incrementAndGet(), s0);
+        live.put(conn.id(), conn);
+        journal.append(conn, ConnectionEvent.Type.CONNECT_REQUESTED, 0, s0.useBastion() ? forwardMode : "direct");
+
         ui.setInputsDisabled(true);
         ui.setConnected(true);
         ui.status("Connecting...");
-        ui.log("[INFO] Connect: " + s0.name()
+        ui.log("[INFO] Connect " + conn.label()
                 + " (Bastion=" + (s0.useBastion() ? s0.sshAlias() : "OFF")
                 + ", RDG=" + (s0.useRdGateway() ? s0.rdGatewayHost() : "OFF")
                 + ", RDP=" + s0.rdpHost() + ":" + s0.rdpPort() + ")");
 
-        exec.submit(() -> {
-            boolean tempCredUsed = false;
-            Path tempRdpFile = null;
-
-            String rdpHostToUse = s0.rdpHost();
-            int rdpPortToUse = s0.rdpPort();
+        Future<?> task = runner.submit(() -> {
+            boolean inputsReleased = false;
 
+            StageTimer timer = new StageTimer((stage, nanos, ok) -> metrics.record(s0.name(), stage, nanos, ok));
             try {
-                if (s0.useBastion()) {
-                    Files.createDirectories(appDir);
-
-                    int localPort = SshHelpers.findFreePort(localBind);
-                    ui.log("[INFO] Using local port: " + localPort);
-
-                    SshHelpers.SshStartResult ssh = SshHelpers.startSshTunnelSmart(
-                            appDir,
-                            appKnownHosts,
-                            localBind,
-                            localPort,
-                            s0.sshAlias(),
-                            s0.jumpHosts(),
-                            s0.sshOptions(),
-                            s0.rdpHost(),
-                            s0.rdpPort()
-                    );
-
-                    sshPid = ssh.pid();
-                    ui.log("[INFO] Bastion tunnel started. PID=" + sshPid);
-                    ui.log("[INFO] SSH logs: " + ssh.outLog() + " / " + ssh.errLog());
-
-                    if (!SshHelpers.waitLocalPortOpen(localBind, localPort, Duration.ofSeconds(120))) {
-                        String tail = SshHelpers.tailTextFile(ssh.errLog(), 120);
-                        throw new IllegalStateException("SSH tunnel did not open a local port: "
-                                + localBind + ":" + localPort + "\n" + tail);
+                // ローカルポートだけ先に確保し、トンネル確立・資格情報登録・.rdp 生成を並行に走らせる
+                Reservation res = timer.time("reserve", () -> reserveEndpoint(conn, s0));
+                Endpoint ep = res.endpoint();
+                journal.append(conn, ConnectionEvent.Type.PORT_RESERVED, ep.port(), ep.host());
+
+                Path rdp;
+                try (TaskRunner.Scope scope = runner.scope()) {
+                    scope.fork(() -> timer.time("tunnel", () -> {
+                        establishTunnel(conn, s0, res, ui);
+                        if (s0.useBastion()) journal.append(conn, ConnectionEvent.Type.TUNNEL_READY, 0, s0.sshAlias());
+                        return null;
+                    }));
+                    if (hasUser && hasPass) {
+                        scope.fork(() -> timer.time("credentials", () -> {
+                            installCredentials(conn, s0, ep, userForRdp, rawPass, ui);
+                            return null;
+                        }));
                     }
-
-                    rdpHostToUse = localBind;
-                    rdpPortToUse = localPort;
+                    Future<Path> rdpFile = scope.fork(() -> timer.time("rdp-file", () -> {
+                        Path p;
+                        if (hasUser && !hasPass) {
+                            p = createTempRdpFile(ep.host(), ep.port(), userForRdp, s0, true);
+                        } else if (s0.useRdGateway() || hasSelectedMonitors(s0)) {
+                            p = createTempRdpFile(ep.host(), ep.port(), hasUser ? userForRdp : null, s0, false);
+                        } else {
+                            p = null;
+                        }
+                        if (p != null) conn.tempRdpFile(p);
+                        return p;
+                    }));
+                    long joinStart = System.nanoTime();
+                    scope.join();
+                    timer.record("join-wait", System.nanoTime() - joinStart);
+                    rdp = rdpFile.get();
                 }
 
-                List<String> credKeys = new ArrayList<>();
-                if (hasUser && hasPass) {
-                    credKeys.add(rdpHostToUse);
+                ui.status("RDP running");
 
-                    if (s0.useBastion()
-                            && loopbackHostForRdp != null
-                            && !loopbackHostForRdp.isBlank()
-                            && !loopbackHostForRdp.equalsIgnoreCase(rdpHostToUse)) {
-                        credKeys.add(loopbackHostForRdp);
-                    }
+                Process mstsc = timer.time("mstsc-start", () -> rdp != null
+                        ? new ProcessBuilder(mstscExe, rdp.toAbsolutePath().toString()).start()
+                        : launchMstsc(mstscExe, ep.host(), ep.port(), s0));
+                conn.mstscProc(mstsc);
+                journal.append(conn, ConnectionEvent.Type.MSTSC_STARTED, mstsc.pid(), timer.summary());
+                metrics.record(s0.name(), "connect", timer.elapsedNanos(), true);
+                conn.logs(ui).followStream("[mstsc #" + conn.id() + "] ", mstsc.getInputStream());
+                conn.logs(ui).followStream("[mstsc #" + conn.id() + "] ", mstsc.getErrorStream());
+                ui.log("[INFO] " + conn.label() + ": Time to mstsc: " + timer.summary());
+                if (conn.closed()) conn.cleanup(ui, credLeases, true);
+                ui.runOnFx(ui::clearPassword);
 
-                    ui.log("[INFO] Cred keys (TERMSRV) = " + credKeys);
+                // mstsc が起動したら次の接続を受け付ける
+                ui.setInputsDisabled(false);
+                inputsReleased = true;
 
-                    List<String> added = new ArrayList<>();
-                    for (String k : credKeys) {
-                        try {
-                            CredentialManager.addTempCredential(k, userForRdp, rawPass);
-                            added.add(k);
-                            ui.log("[INFO] Temporary credentials set: TERMSRV/" + k);
-                        } catch (Exception e) {
-                            ui.log("[WARN] cmdkey failed for TERMSRV/" + k + ": " + e.getMessage());
-                        }
-                    }
+                int exitCode = mstsc.waitFor();
+                ui.log("[INFO] " + conn.label() + ": mstsc exited with code: " + exitCode);
+                journal.append(conn, ConnectionEvent.Type.MSTSC_EXITED, exitCode, null);
 
-                    if (!added.isEmpty()) {
-                        tempCredUsed = true;
-                        lastTempCredKey = String.join("\n", added);
-                    } else {
-                        ui.log("[WARN] No credentials were added (all cmdkey attempts failed).");
-                    }
+            } catch (Exception ex) {
+                if (!conn.closed()) {
+                    Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                    journal.append(conn, ConnectionEvent.Type.FAILED, 0, cause.getMessage());
+                    if (!inputsReleased) metrics.record(s0.name(), "connect", timer.elapsedNanos(), false);
+                    ui.log("[ERROR] " + cause.getMessage());
+                    ui.status("Error");
+                    ui.runOnFx(() -> ui.alert(cause.getMessage()));
                 }
+            } finally {
+                conn.cleanup(ui, credLeases, false);
+                loopbacks.release(conn.loopback());
+                live.remove(conn.id());
+                journal.append(conn, ConnectionEvent.Type.CLEANUP_DONE, 0, null);
 
-                ui.status("RDP running");
+                boolean anyLive = !live.isEmpty();
+                boolean releaseInputs = !inputsReleased;
+                ui.runOnFx(() -> {
+                    if (releaseInputs) ui.setInputsDisabled(false);
+                    ui.setConnected(anyLive);
+                });
 
-                if (hasUser && !hasPass) {
-                    tempRdpFile = createTempRdpFile(rdpHostToUse, rdpPortToUse, userForRdp, s0, true);
-                    mstscProc = new ProcessBuilder(mstscExe, tempRdpFile.toAbsolutePath().toString()).start();
-                } else if (s0.useRdGateway() || hasSelectedMonitors(s0)) {
-                    tempRdpFile = createTempRdpFile(rdpHostToUse, rdpPortToUse, hasUser ? userForRdp : null, s0, false);
-                    mstscProc = new ProcessBuilder(mstscExe, tempRdpFile.toAbsolutePath().toString()).start();
-                } else {
-                    mstscProc = launchMstsc(mstscExe, rdpHostToUse, rdpPortToUse, s0);
-                }
-                ui.runOnFx(ui::clearPassword);
+                ui.status(anyLive ? "RDP running (" + live.size() + ")" : "Ready");
+                ui.log("[INFO] Executor: " + runner.metrics());
+            }
+        });
+        conn.task(task);
+    }
 
-                int exitCode = mstscProc.waitFor();
-                ui.log("[INFO] mstsc exited with code: " + exitCode);
+    private record Endpoint(String host, int port) {}
 
-            } catch (Exception ex) {
-                ui.log("[ERROR] " + ex.getMessage());
-                ui.status("Error");
-                ui.runOnFx(() -> ui.alert(ex.getMessage()));
-            } finally {
-                mstscProc = null;
+    // upstream は socks モードでマスターの確立後に完了する
+    private record Reservation(Endpoint endpoint, CompletableFuture<PortForwarder.Upstream> upstream) {}
 
-                if (tempRdpFile != null) {
-                    try {
-                        Files.deleteIfExists(tempRdpFile);
-                    } catch (Exception ignored) {
-                    }
-                }
+    private Reservation reserveEndpoint(LiveConnection conn, Session s0) throws IOException {
+        if (!s0.useBastion()) return new Reservation(new Endpoint(s0.rdpHost(), s0.rdpPort()), null);
 
-                if (tempCredUsed) {
-                    String keys = lastTempCredKey;
-                    if (keys != null && !keys.isBlank()) {
-                        for (String k : keys.split("\\R")) {
-                            String kk = k.trim();
-                            if (kk.isEmpty()) continue;
-                            try {
-                                CredentialManager.deleteTempCredential(kk);
-                            } catch (Exception ignored) {
-                            }
-                        }
-                        ui.log("[INFO] Temporary credentials removed.");
-                    }
-                }
-                lastTempCredKey = null;
+        Files.createDirectories(appDir);
+        String host = loopbackFor(conn);
+
+        if (forwardMode.equals("socks") || forwardMode.equals("stdio")) {
+            CompletableFuture<PortForwarder.Upstream> upstream = new CompletableFuture<>();
+            PortForwarder f = new PortForwarder(host, 0, PortForwarder.deferred(upstream));
+            conn.forwarder(f);
+            return new Reservation(new Endpoint(host, f.port()), upstream);
+        }
+
+        return new Reservation(new Endpoint(host, SshHelpers.findFreePort(host)), null);
+    }
 
-                try {
-                    stopSshIfNeeded(ui);
-                } catch (Exception ignored) {
+    // 接続専用の 127.0.0.N。使い切った・待ち受けられない環境では共有の localBind に戻す
+    // (その場合 TERMSRV/<localBind> は同時に開いた接続で共有になる)
+    private String loopbackFor(LiveConnection conn) {
+        String host = loopbacks.acquire();
+        if (host == null) return localBind;
+        try {
+            SshHelpers.findFreePort(host);
+        } catch (IOException e) {
+            loopbacks.release(host);
+            return localBind;
+        }
+        conn.loopback(host);
+        return host;
+    }
+
+    private void establishTunnel(LiveConnection conn, Session s0, Reservation res, Ui ui)
+            throws IOException, InterruptedException {
+        if (!s0.useBastion()) return;
+
+        Endpoint ep = res.endpoint();
+        try {
+            if (forwardMode.equals("socks")) {
+                TunnelPool.ChainKey key = TunnelPool.ChainKey.of(s0.sshAlias(), s0.jumpHosts(), s0.sshOptions());
+                TunnelPool.Lease l = tunnelPool.acquire(key, socksPort -> timedSshStart(s0, () -> SshHelpers.startSshMasterSmart(
+                        appDir,
+                        appKnownHosts,
+                        localBind,
+                        socksPort,
+                        s0.sshAlias(),
+                        s0.jumpHosts(),
+                        s0.sshOptions()
+                )));
+                conn.lease(l);
+                res.upstream().complete(PortForwarder.socks(localBind, l.socksPort(), s0.rdpHost(), s0.rdpPort()));
+
+                TunnelPool.Stats st = tunnelPool.stats();
+                conn.logs(ui).followFile("[ssh #" + conn.id() + "] ", Path.of(l.errLog()), l.reused());
+                ui.log("[INFO] Bastion master " + (l.reused() ? "reused" : "started") + ": " + key
+                        + " PID=" + l.pid() + " SOCKS=" + localBind + ":" + l.socksPort());
+                ui.log("[INFO] Using local port: " + ep.port()
+                        + " (pool hits=" + st.hits() + " misses=" + st.misses() + " evictions=" + st.evictions() + ")");
+                logAuth(ui);
+                return;
+            }
+
+            if (forwardMode.equals("stdio")) {
+                String errLog = SshLogs.allocate("stdio-" + s0.sshAlias()).errLog();
+                // 接続中は RDP の TCP 接続ごとに ssh -W がこのログに追記する
+                SshLogs.owner(errLog, () -> live.containsKey(conn.id()));
+                res.upstream().complete(PortForwarder.sshStdio(
+                        SshHelpers.stdioForwardCommand(appKnownHosts, s0.sshAlias(), s0.jumpHosts(),
+                                s0.sshOptions(), s0.rdpHost(), s0.rdpPort()),
+                        SshHelpers.stdioForwardEnv(conn.askPassTag()),
+                        errLog));
+                conn.logs(ui).followFile("[ssh #" + conn.id() + "] ", Path.of(errLog), false);
+                ui.log("[INFO] Using local port: " + ep.port() + " (ssh -W per connection, log: " + errLog + ")");
+                return;
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            res.upstream().completeExceptionally(e);
+            throw e;
+        }
+
+        ui.log("[INFO] Using local port: " + ep.port());
+
+        SshHelpers.SshStartResult ssh = timedSshStart(s0, () -> SshHelpers.startSshTunnelSmart(
+                appDir,
+                appKnownHosts,
+                ep.host(),
+                ep.port(),
+                s0.sshAlias(),
+                s0.jumpHosts(),
+                s0.sshOptions(),
+                s0.rdpHost(),
+                s0.rdpPort()
+        ));
+
+        conn.sshPid(ssh.pid());
+        conn.logs(ui).followFile("[ssh #" + conn.id() + "] ", Path.of(ssh.errLog()), false);
+        ui.log("[INFO] Bastion tunnel started. PID=" + ssh.pid() + " (ready in " + ssh.readyMillis() + " ms)");
+        ui.log("[INFO] SSH logs: " + ssh.outLog() + " / " + ssh.errLog());
+        logAuth(ui);
+    }
+
+    // グループ内の踏み台チェーンごとに socks マスターを先に起動しておく。
+    // リースはすぐ返すので、マスターは sshIdleTtlSeconds の間だけ次の Connect を待つ
+    public void prewarm(List<Session> sessions, Ui ui) {
+        if (!forwardMode.equals("socks") || !tunnelPool.enabled()) {
+            ui.log("[WARN] Pre-warm needs rdp.launcher.forward=socks and sshIdleTtlSeconds > 0");
+            return;
+        }
+
+        Map<TunnelPool.ChainKey, Session> chains = new LinkedHashMap<>();
+        for (Session s : sessions) {
+            if (!s.useBastion() || s.sshAlias() == null || s.sshAlias().isBlank()) continue;
+            chains.putIfAbsent(TunnelPool.ChainKey.of(s.sshAlias(), s.jumpHosts(), s.sshOptions()), s);
+        }
+        ui.log("[INFO] Pre-warm: " + chains.size() + " SSH chain(s) for " + sessions.size() + " session(s)");
+
+        for (Map.Entry<TunnelPool.ChainKey, Session> e : chains.entrySet()) {
+            Session s0 = e.getValue();
+            runner.submit(() -> {
+                long t0 = System.nanoTime();
+                try (TunnelPool.Lease l = tunnelPool.acquire(e.getKey(), socksPort -> timedSshStart(s0, () -> SshHelpers.startSshMasterSmart(
+                        appDir,
+                        appKnownHosts,
+                        localBind,
+                        socksPort,
+                        s0.sshAlias(),
+                        s0.jumpHosts(),
+                        s0.sshOptions()
+                )))) {
+                    ui.log("[INFO] Pre-warm " + e.getKey() + ": " + (l.reused() ? "already running" : "started")
+                            + " PID=" + l.pid() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) + " ms");
+                } catch (Exception ex) {
+                    ui.log("[WARN] Pre-warm " + e.getKey() + " failed: " + ex.getMessage());
                 }
+                return null;
+            });
+        }
+    }
 
-                ui.runOnFx(() -> {
-                    ui.setInputsDisabled(false);
-                    ui.setConnected(false);
-                });
+    @FunctionalInterface
+    private interface SshStart {
+        SshHelpers.SshStartResult start() throws IOException, InterruptedException;
+    }
 
-                ui.status("Ready");
+    // ssh 起動全体 (認証の試行を含む) と、そのうちローカルポートが開くまでの待ちを分けて記録する
+    private SshHelpers.SshStartResult timedSshStart(Session s0, SshStart start) throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            SshHelpers.SshStartResult r = start.start();
+            ok = true;
+            if (r.readyMillis() >= 0) {
+                metrics.record(s0.name(), "ssh-ready", TimeUnit.MILLISECONDS.toNanos(r.readyMillis()), true);
             }
-        });
+            return r;
+        } finally {
+            metrics.record(s0.name(), "ssh-start", System.nanoTime() - t0, ok);
+        }
     }
 
-    public void disconnect(Ui ui) {
-        ui.log("[INFO] Disconnect requested");
+    private static void logAuth(Ui ui) {
+        ui.log("[INFO] SSH auth cache: " + SshHelpers.authStats());
+        AskPassServer.Stats st = AskPassServer.sharedStats();
+        if (st.prompts() > 0) ui.log("[INFO] Askpass: " + st);
+    }
+
+    private void installCredentials(LiveConnection conn, Session s0, Endpoint ep, String userForRdp, String rawPass, Ui ui)
+            throws InterruptedException {
+        // 踏み台経由なら接続専用の 127.0.0.N なので、他の接続とキーを共有しない
+        List<String> credKeys = List.of(ep.host());
+
+        ui.log("[INFO] Cred keys (TERMSRV) = " + credKeys);
+
+        // 書き込みの途中で中断・失敗しても cleanup が消せるよう、cmdkey を起動する前に接続へ記録しておく
+        for (String k : credLeases.acquire(credKeys, userForRdp)) {
+            ui.log("[WARN] TERMSRV/" + k + " was held by another connection with a different user and has been overwritten");
+        }
+        conn.addTempCredKeys(credKeys);
+
+        int added = 0;
+        long t0 = System.nanoTime();
+        try {
+            CredentialManager.BatchResult r = CredentialManager.addAll(credKeys, userForRdp, rawPass);
+            metrics.record(s0.name(), "cred-add", r.elapsedNanos(), r.failed().isEmpty());
+            added = r.succeeded().size();
+            for (String k : r.succeeded()) ui.log("[INFO] Temporary credentials set: TERMSRV/" + k);
+            for (String k : r.failed()) {
+                ui.log("[WARN] Credential add failed for TERMSRV/" + k + " (code=" + r.exitCodes().get(k) + ")");
+            }
+            ui.log("[INFO] Credential batch: " + r.exitCodes().size() + " key(s) in " + r.elapsedMillis() + " ms");
+        } catch (InterruptedException e) {
+            metrics.record(s0.name(), "cred-add", System.nanoTime() - t0, false);
+            throw e;
+        } catch (Exception e) {
+            metrics.record(s0.name(), "cred-add", System.nanoTime() - t0, false);
+            ui.log("[WARN] Credential add failed for " + credKeys + ": " + e.getMessage());
+        }
+
+        if (added > 0) {
+            journal.append(conn, ConnectionEvent.Type.CREDENTIALS_SET, added, CredentialManager.store().name());
+        } else {
+            ui.log("[WARN] No credentials were added (all credential writes failed).");
+        }
+    }
+
+    // sessionName が null なら全接続を切断する
+    public void disconnect(String sessionName, Ui ui) {
+        ui.log("[INFO] Disconnect requested" + (sessionName == null ? " (all)" : ": " + sessionName));
         ui.status("Disconnecting...");
         ui.setInputsDisabled(true);
 
-        exec.submit(() -> {
+        List<LiveConnection> targets = new ArrayList<>();
+        for (LiveConnection c : live.values()) {
+            if (sessionName == null || c.session().name().equalsIgnoreCase(sessionName)) targets.add(c);
+        }
+
+        runner.submit(() -> {
             try {
-                stopMstscIfNeeded(ui);
-
-                String keys = lastTempCredKey;
-                if (keys != null && !keys.isBlank()) {
-                    for (String k : keys.split("\\R")) {
-                        String kk = k.trim();
-                        if (kk.isEmpty()) continue;
-                        try {
-                            CredentialManager.deleteTempCredential(kk);
-                            ui.log("[INFO] Temporary credentials removed: TERMSRV/" + kk);
-                        } catch (Exception ignored) {
-                        }
-                    }
-                    lastTempCredKey = null;
+                for (LiveConnection c : targets) {
+                    c.cancelSetup();
+                    c.cleanup(ui, credLeases, true);
+                    live.remove(c.id());
+                    ui.log("[INFO] " + c.label() + ": Disconnect done.");
                 }
-
-                stopSshIfNeeded(ui);
             } catch (Exception ex) {
                 ui.log("[ERROR] " + ex.getMessage());
             } finally {
+                boolean anyLive = !live.isEmpty();
                 ui.runOnFx(() -> {
                     ui.setInputsDisabled(false);
-                    ui.setConnected(false);
+                    ui.setConnected(anyLive);
                 });
-                ui.status("Ready");
+                ui.status(anyLive ? "RDP running (" + live.size() + ")" : "Ready");
             }
         });
     }
 
-    public void shutdown() {
-        try {
-            Process p = mstscProc;
-            if (p != null) p.destroyForcibly();
-        } catch (Exception ignored) {
-        }
-        exec.shutdownNow();
-    }
-
-    private void stopSshIfNeeded(Ui ui) throws IOException, InterruptedException {
-        int pid = sshPid;
-        if (pid <= 0) return;
-        sshPid = -1;
-        SshHelpers.stopSshIfNeeded(pid);
-        ui.log("[INFO] Bastion tunnel stop requested. PID=" + pid);
+    public void disconnect(Ui ui) {
+        disconnect(null, ui);
     }
 
-    private void stopMstscIfNeeded(Ui ui) {
-        Process p = mstscProc;
-        if (p == null) return;
-        try {
-            ui.log("[INFO] Closing mstsc...");
-            if (p.isAlive()) {
-                long pid = -1;
-                try {
-                    pid = p.pid();
-                } catch (Throwable ignored) {
-                }
-
-                if (pid > 0) {
-                    HiddenExec.runHiddenAndWait("taskkill.exe", List.of("/PID", String.valueOf(pid), "/T", "/F"));
-                } else {
-                    p.destroyForcibly();
-                }
+    public void shutdown() {
+        for (LiveConnection c : live.values()) {
+            try {
+                Process p = c.mstscProc();
+                if (p != null) p.destroyForcibly();
+            } catch (Exception ignored) {
             }
-        } catch (Exception ignored) {
-        } finally {
-            mstscProc = null;
-            ui.log("[INFO] Disconnect done.");
         }
+        runner.shutdownNow();
+        tunnelPool.shutdown();
+        AskPassServer.shutdown();
+        journal.close();
+        metrics.close();
     }
 
     private static Process launchMstsc(String mstscExe, String host, int port, Session s) throws IOException {
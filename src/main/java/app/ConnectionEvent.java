@@ -0,0 +1,33 @@
+package app;
+
+// 接続ライフサイクルの 1 イベント。
+// runId はアプリ起動ごと、connectionId は起動内の連番 (LiveConnection.id)。
+// epochNanos は壁時計、sinceStartNanos は接続要求からの単調時計での経過時間。
+// value は種類ごとの数値 (ポート番号・PID・終了コード・資格情報の件数)
+public record ConnectionEvent(
+        long runId,
+        long connectionId,
+        Type type,
+        long epochNanos,
+        long sinceStartNanos,
+        long value,
+        String session,
+        String detail
+) {
+    public enum Type {
+        CONNECT_REQUESTED,
+        PORT_RESERVED,
+        TUNNEL_READY,
+        CREDENTIALS_SET,
+        MSTSC_STARTED,
+        MSTSC_EXITED,
+        FAILED,
+        CLEANUP_DONE;
+
+        private static final Type[] VALUES = values();
+
+        static Type of(int ordinal) {
+            return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+        }
+    }
+}
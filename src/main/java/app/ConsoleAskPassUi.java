@@ -0,0 +1,32 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// 表示環境の無いとき・テスト用。プロンプトは stderr に出し、答えを stdin から 1 行読む
+// (stdout は ssh への応答に使うので書かない)
+public final class ConsoleAskPassUi implements AskPassUi {
+
+    @Override
+    public String name() {
+        return "stdin";
+    }
+
+    @Override
+    public String ask(AskPassPrompt prompt) throws Exception {
+        PrintStream err = System.err;
+        err.print(prompt.text());
+        if (!prompt.secret()) err.print(" [yes/no] ");
+        else if (!prompt.text().endsWith(" ")) err.print(' ');
+        err.flush();
+
+        String line = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+        if (line == null) return null;
+        if (prompt.secret()) return line;
+        String a = line.trim().toLowerCase(Locale.ROOT);
+        return prompt.confirmAnswer(a.equals("y") || a.equals("yes"));
+    }
+}
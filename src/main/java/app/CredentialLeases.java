@@ -0,0 +1,55 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// TERMSRV/<host> は同じ RDP ホストへ直接つなぐ接続どうしで共有しうるため、参照数が 0 になった時だけ削除する。
+// 踏み台経由の接続は接続ごとに 127.0.0.N を使うので共有しない
+public final class CredentialLeases {
+
+    private record Holder(int refs, String user) {}
+
+    private final Map<String, Holder> refs = new ConcurrentHashMap<>();
+    private final ConnectMetrics metrics;
+
+    public CredentialLeases(ConnectMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // 別のユーザーで保持中だった (= 先の接続の資格情報を上書きした) host を返す
+    public List<String> acquire(List<String> hosts, String user) {
+        List<String> overwritten = new ArrayList<>();
+        for (String h : hosts) {
+            refs.compute(key(h), (k, prev) -> {
+                if (prev == null) return new Holder(1, user);
+                if (user != null && prev.user() != null && !prev.user().equalsIgnoreCase(user)) overwritten.add(h);
+                return new Holder(prev.refs() + 1, user);
+            });
+        }
+        return overwritten;
+    }
+
+    public void release(String session, List<String> hosts) {
+        List<String> unused = new ArrayList<>();
+        for (String h : hosts) {
+            Holder left = refs.computeIfPresent(key(h), (k, n) -> n.refs() <= 1 ? null : new Holder(n.refs() - 1, n.user()));
+            if (left == null) unused.add(h);
+        }
+        if (unused.isEmpty()) return;
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            ok = CredentialManager.deleteAll(unused).failed().isEmpty();
+        } catch (Exception ignored) {
+        } finally {
+            if (metrics != null) metrics.record(session, "cred-delete", System.nanoTime() - t0, ok);
+        }
+    }
+
+    private static String key(String host) {
+        return host.trim().toLowerCase(Locale.ROOT);
+    }
+}
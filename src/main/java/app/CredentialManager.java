@@ -1,28 +1,111 @@
 package app;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public final class CredentialManager {
     private CredentialManager() {}
 
-    private static String target(String host) {
+    // host ごとの結果コード (0 = 成功) と、バッチ全体の所要時間
+    public record BatchResult(Map<String, Integer> exitCodes, long elapsedNanos) {
+        public List<String> succeeded() {
+            List<String> ok = new ArrayList<>();
+            exitCodes.forEach((h, code) -> { if (code == 0) ok.add(h); });
+            return ok;
+        }
+
+        public List<String> failed() {
+            List<String> ng = new ArrayList<>();
+            exitCodes.forEach((h, code) -> { if (code != 0) ng.add(h); });
+            return ng;
+        }
+
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+    }
+
+    private static final CredentialStore CMDKEY = new CmdkeyCredentialStore();
+
+    // -Drdp.launcher.credStore=native|cmdkey|memory
+    private static volatile CredentialStore store = selectStore(System.getProperty("rdp.launcher.credStore", ""));
+
+    public static CredentialStore store() {
+        return store;
+    }
+
+    public static void setStore(CredentialStore s) {
+        store = s == null ? CMDKEY : s;
+    }
+
+    static String target(String host) {
         return "TERMSRV/" + host;
     }
 
     public static void addTempCredential(String host, String username, String password)
             throws IOException, InterruptedException {
-
-        int exit = HiddenExec.runHiddenAndWait("cmdkey.exe", List.of(
-                "/generic:" + target(host),
-                "/user:" + username,
-                "/pass:" + password
-        ));
-        if (exit != 0) throw new IOException("cmdkey add failed (exit=" + exit + ")");
+        BatchResult r = addAll(List.of(host), username, password);
+        int exit = r.exitCodes().getOrDefault(host, -1);
+        if (exit != 0) throw new IOException("credential add failed (" + store.name() + ", code=" + exit + ")");
     }
 
     public static void deleteTempCredential(String host) throws IOException, InterruptedException {
         if (host == null || host.isBlank()) return;
-        HiddenExec.runHiddenAndWait("cmdkey.exe", List.of("/delete:" + target(host)));
+        deleteAll(List.of(host));
+    }
+
+    public static BatchResult addAll(Collection<String> hosts, String username, String password)
+            throws IOException, InterruptedException {
+        CredentialStore s = store;
+        try {
+            return s.addAll(hosts, username, password);
+        } catch (RuntimeException | LinkageError e) {
+            if (s == CMDKEY) throw e;
+            store = CMDKEY;
+            return CMDKEY.addAll(hosts, username, password);
+        }
+    }
+
+    public static BatchResult deleteAll(Collection<String> hosts) throws IOException, InterruptedException {
+        CredentialStore s = store;
+        try {
+            return s.deleteAll(hosts);
+        } catch (RuntimeException | LinkageError e) {
+            if (s == CMDKEY) throw e;
+            store = CMDKEY;
+            return CMDKEY.deleteAll(hosts);
+        }
+    }
+
+    static List<String> distinct(Collection<String> hosts) {
+        List<String> out = new ArrayList<>();
+        if (hosts == null) return out;
+        for (String h : hosts) {
+            if (h == null || h.isBlank()) continue;
+            if (out.stream().noneMatch(h::equalsIgnoreCase)) out.add(h);
+        }
+        return out;
+    }
+
+    // 既定は Windows ならネイティブ API、それ以外 (開発・計測用) はメモリ上
+    private static CredentialStore selectStore(String name) {
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        String n = name.isBlank() ? (windows ? "native" : "memory") : name.toLowerCase();
+        switch (n) {
+            case "memory":
+                return new InMemoryCredentialStore();
+            case "native":
+                try {
+                    return new NativeCredentialStore();
+                } catch (RuntimeException | LinkageError e) {
+                    return CMDKEY;
+                }
+            default:
+                return CMDKEY;
+        }
     }
 }
@@ -0,0 +1,15 @@
+package app;
+
+import java.io.IOException;
+import java.util.Collection;
+
+// TERMSRV/<host> 一時資格情報の保存先。CredentialManager が起動時に 1 つ選ぶ
+public interface CredentialStore {
+
+    String name();
+
+    CredentialManager.BatchResult addAll(Collection<String> hosts, String username, String password)
+            throws IOException, InterruptedException;
+
+    CredentialManager.BatchResult deleteAll(Collection<String> hosts) throws IOException, InterruptedException;
+}
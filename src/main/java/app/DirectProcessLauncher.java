@@ -0,0 +1,85 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// ProcessBuilder で直接起動する。JDK は Windows の子プロセスを CREATE_NO_WINDOW で作るので、
+// powershell.exe を挟まなくてもコンソールは表示されない
+public final class DirectProcessLauncher implements ProcessLauncher {
+
+    private static final File NULL_FILE = new File(
+            System.getProperty("os.name", "").toLowerCase().startsWith("windows") ? "NUL" : "/dev/null");
+
+    @Override
+    public String name() {
+        return "direct";
+    }
+
+    @Override
+    public int runAndWait(String exe, List<String> args) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(command(exe, args))
+                .redirectInput(ProcessBuilder.Redirect.from(NULL_FILE))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        return pb.start().waitFor();
+    }
+
+    // 直接起動はプロセス生成が安いので、全コマンドを同時に起動してまとめて待つ
+    @Override
+    public int[] runAllAndWait(List<HiddenExec.Command> commands) throws IOException, InterruptedException {
+        List<Process> started = new ArrayList<>();
+        try {
+            for (HiddenExec.Command c : commands) {
+                started.add(new ProcessBuilder(command(c.exe(), c.args()))
+                        .redirectInput(ProcessBuilder.Redirect.from(NULL_FILE))
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start());
+            }
+            int[] exits = new int[started.size()];
+            for (int i = 0; i < exits.length; i++) {
+                exits[i] = started.get(i).waitFor();
+            }
+            return exits;
+        } catch (IOException | InterruptedException e) {
+            for (Process p : started) p.destroyForcibly();
+            throw e;
+        }
+    }
+
+    @Override
+    public HiddenExec.StartResult startWithLogs(
+            String exe,
+            List<String> args,
+            String outLog,
+            String errLog,
+            Map<String, String> extraEnv
+    ) throws IOException {
+        // ファイルへ直接リダイレクトせずパイプで受け、サイズ上限でローテーションしながら書く
+        ProcessBuilder pb = new ProcessBuilder(command(exe, args))
+                .redirectInput(ProcessBuilder.Redirect.from(NULL_FILE));
+        if (extraEnv != null && !extraEnv.isEmpty()) {
+            pb.environment().putAll(extraEnv);
+        }
+
+        Process p = pb.start();
+        try {
+            SshLogs.pump(p.getInputStream(), outLog);
+            SshLogs.pump(p.getErrorStream(), errLog);
+        } catch (IOException e) {
+            p.destroyForcibly();
+            throw e;
+        }
+        return new HiddenExec.StartResult(Math.toIntExact(p.pid()), outLog, errLog);
+    }
+
+    private static List<String> command(String exe, List<String> args) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(exe);
+        if (args != null) cmd.addAll(args);
+        return cmd;
+    }
+}
@@ -0,0 +1,316 @@
+package app;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// ConnectionEvent の追記専用バイナリジャーナル。
+// ファイル先頭に MAGIC、以降は [int 長さ][int CRC32][本体] のレコードが並ぶ。
+// 書きかけ・破損で終わった末尾のレコードは、書き込み用に開くときに切り詰める (そのままだと後ろに足した分まで読めなくなる)。
+// CRC の無い旧形式 (RDJ1) のファイルは、開いたときに読める分だけ新形式へ書き直す。
+// 同じファイルを複数のインスタンス (別プロセスを含む) が開いても壊さないよう、APPEND で開き、
+// 書き込みと末尾の切り詰めはファイルロックを取ってから行う。
+public final class EventJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x52444A32; // "RDJ2"
+    private static final int MAGIC_V1 = 0x52444A31; // "RDJ1": [int 長さ][本体]
+    private static final int FIXED = 1 + 8 + 8 + 8 + 8 + 8 + 2 + 2;
+    private static final int MAX_STRING = 1024;
+    private static final int BUFFER = 64 * 1024;
+    // FileLock はプロセス単位なので、同じ JVM 内のインスタンス同士はこちらで順番を取る
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    // ConnectMetrics (LatencyHistogram) と同じ p50 / p95 / p99 で出す
+    public record Percentiles(int count, long p50Millis, long p95Millis, long p99Millis, long maxMillis) {
+        @Override
+        public String toString() {
+            return "n=" + count + " p50=" + p50Millis + "ms p95=" + p95Millis + "ms p99=" + p99Millis
+                    + "ms max=" + maxMillis + "ms";
+        }
+    }
+
+    private final Path file;
+    private final long runId = System.currentTimeMillis();
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+    private final CRC32 crc = new CRC32();
+    private FileChannel ch;
+
+    public EventJournal(Path file) {
+        this.file = file;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public void append(LiveConnection conn, ConnectionEvent.Type type, long value, String detail) {
+        Instant now = Instant.now();
+        append(new ConnectionEvent(
+                runId,
+                conn.id(),
+                type,
+                TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano(),
+                System.nanoTime() - conn.startedNanos(),
+                value,
+                conn.session().name(),
+                detail
+        ));
+    }
+
+    // 書き込みはバッファに溜め、mstsc 起動・終了系のイベントとバッファ満杯時にだけファイルへ出す
+    public synchronized void append(ConnectionEvent e) {
+        byte[] session = utf8(e.session());
+        byte[] detail = utf8(e.detail());
+        int len = FIXED + session.length + detail.length;
+        try {
+            if (buf.remaining() < 8 + len) flush();
+
+            buf.putInt(len);
+            int sumAt = buf.position();
+            buf.putInt(0);
+            int start = buf.position();
+            buf.put((byte) e.type().ordinal());
+            buf.putLong(e.runId());
+            buf.putLong(e.connectionId());
+            buf.putLong(e.epochNanos());
+            buf.putLong(e.sinceStartNanos());
+            buf.putLong(e.value());
+            buf.putShort((short) session.length);
+            buf.put(session);
+            buf.putShort((short) detail.length);
+            buf.put(detail);
+            crc.reset();
+            crc.update(buf.slice(start, len));
+            buf.putInt(sumAt, (int) crc.getValue());
+
+            switch (e.type()) {
+                case MSTSC_STARTED, MSTSC_EXITED, FAILED, CLEANUP_DONE -> flush();
+                default -> { }
+            }
+        } catch (IOException ignored) {
+            buf.clear();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (buf.position() == 0) return;
+        if (ch == null) ch = open(file);
+        buf.flip();
+        synchronized (lockFor(file)) {
+            try (FileLock ignored = ch.lock()) {
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+        }
+        buf.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+            if (ch != null) ch.close();
+        } catch (IOException ignored) {
+        }
+        ch = null;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        int header = header(file);
+        if (header == MAGIC_V1) {
+            migrate(file);
+        } else if (header != MAGIC && header != 0) {
+            // ジャーナルではないファイルは退避して作り直す
+            Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        FileChannel c = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            // ロック中は他のインスタンスが書きかけのレコードを残していないので、壊れた末尾だけを切り詰められる
+            synchronized (lockFor(file)) {
+                try (FileLock ignored = c.lock()) {
+                    if (c.size() < 4) {
+                        c.truncate(0);
+                        ByteBuffer h = ByteBuffer.allocate(4).putInt(MAGIC).flip();
+                        while (h.hasRemaining()) c.write(h);
+                    } else {
+                        long good;
+                        // APPEND のチャネルでは読めないので、検証は別に開いて行う
+                        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                            good = scan(in, MAGIC, body -> { });
+                        }
+                        if (good < c.size()) {
+                            c.truncate(good);
+                            c.force(true);
+                        }
+                    }
+                }
+            }
+            return c;
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    private static Object lockFor(Path file) {
+        return LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), k -> new Object());
+    }
+
+    // 先頭 4 バイト。空・存在しない・短すぎる場合は 0
+    private static int header(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer h = ByteBuffer.allocate(4);
+            while (h.hasRemaining() && c.read(h) >= 0) { }
+            return h.hasRemaining() ? 0 : h.flip().getInt();
+        }
+    }
+
+    // 旧形式の読める分を新形式で書き直して置き換える
+    private static void migrate(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (EventJournal out = new EventJournal(tmp)) {
+            Files.deleteIfExists(tmp);
+            read(file, out::append);
+        }
+        if (!Files.exists(tmp)) {
+            // 中身が 1 件も無かった
+            Files.deleteIfExists(file);
+            return;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] utf8(String s) {
+        if (s == null) return new byte[0];
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return b.length <= MAX_STRING ? b : Arrays.copyOf(b, MAX_STRING);
+    }
+
+    // ---- reader ----
+
+    // 末尾の書きかけ・破損レコードの手前までを読む
+    public static void read(Path file, Consumer<ConnectionEvent> sink) throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+            int magic = header(file);
+            if (magic != MAGIC && magic != MAGIC_V1) throw new IOException("Not an event journal: " + file);
+            scan(c, magic, in -> {
+                ConnectionEvent.Type type = ConnectionEvent.Type.of(in.get());
+                long runId = in.getLong();
+                long connId = in.getLong();
+                long epochNanos = in.getLong();
+                long since = in.getLong();
+                long value = in.getLong();
+                String session = string(in);
+                String detail = string(in);
+                // 新しい種類が増えた場合も古いリーダーは読み飛ばせる
+                if (type != null) {
+                    sink.accept(new ConnectionEvent(runId, connId, type, epochNanos, since, value, session, detail));
+                }
+            });
+        }
+    }
+
+    // 先頭から検証しながらレコードを body に渡し、正しく読めた末尾の位置を返す。
+    // body には本体だけが見える (position から長さ分) バッファを渡す
+    private static long scan(FileChannel c, int magic, Consumer<ByteBuffer> body) throws IOException {
+        c.position(0);
+        ByteBuffer in = ByteBuffer.allocateDirect(BUFFER).limit(0);
+        if (!fill(c, in, 4) || in.getInt() != magic) throw new IOException("Not an event journal");
+        long good = 4;
+        int head = magic == MAGIC ? 8 : 4;
+        CRC32 crc = new CRC32();
+
+        while (fill(c, in, head)) {
+            int len = in.getInt();
+            int sum = magic == MAGIC ? in.getInt() : 0;
+            if (len < FIXED || len > FIXED + 2 * MAX_STRING) break;
+            if (!fill(c, in, len)) break;
+            ByteBuffer rec = in.slice(in.position(), len);
+            if (magic == MAGIC) {
+                crc.reset();
+                crc.update(rec.duplicate());
+                if ((int) crc.getValue() != sum) break;
+            }
+            try {
+                body.accept(rec);
+            } catch (BufferUnderflowException e) {
+                // 長さと中身の文字列長が食い違う
+                break;
+            }
+            in.position(in.position() + len);
+            good += head + len;
+        }
+        return good;
+    }
+
+    // 接続要求から mstsc 起動までの時間 (session が null なら全セッション)
+    public static Percentiles timeToDesktop(Path file, String session) throws IOException {
+        Map<ConnectKey, Long> perConnect = new HashMap<>();
+        read(file, e -> {
+            if (e.type() != ConnectionEvent.Type.MSTSC_STARTED) return;
+            if (session != null && !session.equalsIgnoreCase(e.session())) return;
+            perConnect.put(new ConnectKey(e.runId(), e.connectionId()), e.sinceStartNanos());
+        });
+
+        long[] v = perConnect.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        if (v.length == 0) return new Percentiles(0, 0, 0, 0, 0);
+        return new Percentiles(v.length, millis(v, 0.50), millis(v, 0.95), millis(v, 0.99),
+                TimeUnit.NANOSECONDS.toMillis(v[v.length - 1]));
+    }
+
+    // セッションごとの最終接続要求時刻 (epoch ms)。キーは SessionRegistry.key(name)
+    public static Map<String, Long> lastRequested(Path file) throws IOException {
+        Map<String, Long> last = new HashMap<>();
+        read(file, e -> {
+            if (e.type() != ConnectionEvent.Type.CONNECT_REQUESTED || e.session() == null) return;
+            last.merge(SessionRegistry.key(e.session()), TimeUnit.NANOSECONDS.toMillis(e.epochNanos()), Math::max);
+        });
+        return last;
+    }
+
+    private record ConnectKey(long runId, long connectionId) {}
+
+    private static long millis(long[] sorted, double q) {
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(i, sorted.length - 1))]);
+    }
+
+    private static String string(ByteBuffer in) {
+        int n = in.getShort() & 0xFFFF;
+        byte[] b = new byte[n];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // in に少なくとも n バイト読める状態にする。ファイル末尾で足りなければ false
+    private static boolean fill(FileChannel c, ByteBuffer in, int n) throws IOException {
+        if (in.remaining() >= n) return true;
+        in.compact();
+        while (in.position() < n) {
+            if (c.read(in) < 0) {
+                in.flip();
+                return false;
+            }
+        }
+        in.flip();
+        return true;
+    }
+}
@@ -1,9 +1,8 @@
 package app;
 
-import java.io.*;
-import java.nio.charset.Charset;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 public final class HiddenExec {
 
@@ -11,25 +10,41 @@ public final class HiddenExec {
 
     public record StartResult(int pid, String outLog, String errLog) {}
 
-    public static int runHiddenAndWait(String exe, List<String> args)
-            throws IOException, InterruptedException {
+    public record Command(String exe, List<String> args) {}
+
+    // -Drdp.launcher.exec=powershell で旧来の Start-Process 経由に戻せる
+    private static final ProcessLauncher FALLBACK = new PowerShellProcessLauncher();
+    private static volatile ProcessLauncher launcher = selectLauncher(System.getProperty("rdp.launcher.exec", "direct"));
 
-        String argList = toPsArgList(args);
+    public static ProcessLauncher launcher() {
+        return launcher;
+    }
+
+    public static void setLauncher(ProcessLauncher l) {
+        launcher = l == null ? new DirectProcessLauncher() : l;
+    }
 
-        String ps = ""
-                + "$p = Start-Process -FilePath '" + esc(exe) + "' "
-                + " -ArgumentList @(" + argList + ") "
-                + " -WindowStyle Hidden -Wait -PassThru; "
-                + "exit $p.ExitCode;";
+    public static int runHiddenAndWait(String exe, List<String> args)
+            throws IOException, InterruptedException {
+        ProcessLauncher l = launcher;
+        try {
+            return l.runAndWait(exe, args);
+        } catch (IOException e) {
+            if (l == FALLBACK) throw e;
+            return FALLBACK.runAndWait(exe, args);
+        }
+    }
 
-        ProcessBuilder pb = new ProcessBuilder(
-                "powershell.exe",
-                "-NoProfile",
-                "-ExecutionPolicy", "Bypass",
-                "-Command", ps
-        );
-        Process p = pb.start();
-        return p.waitFor();
+    public static int[] runHiddenBatchAndWait(List<Command> commands)
+            throws IOException, InterruptedException {
+        if (commands == null || commands.isEmpty()) return new int[0];
+        ProcessLauncher l = launcher;
+        try {
+            return l.runAllAndWait(commands);
+        } catch (IOException e) {
+            if (l == FALLBACK) throw e;
+            return FALLBACK.runAllAndWait(commands);
+        }
     }
 
     public static StartResult startHiddenWithLogs(
@@ -39,58 +54,17 @@ public final class HiddenExec {
             String errLog,
             Map<String, String> extraEnv // child に渡す環境変数
     ) throws IOException, InterruptedException {
-
-        String argList = toPsArgList(args);
-
-        String envLines = "";
-        if (extraEnv != null && !extraEnv.isEmpty()) {
-            StringBuilder sb = new StringBuilder();
-            for (var e : extraEnv.entrySet()) {
-                sb.append("$env:").append(e.getKey()).append("='").append(esc(e.getValue())).append("';");
-            }
-            envLines = sb.toString();
+        ProcessLauncher l = launcher;
+        try {
+            return l.startWithLogs(exe, args, outLog, errLog, extraEnv);
+        } catch (IOException e) {
+            if (l == FALLBACK) throw e;
+            return FALLBACK.startWithLogs(exe, args, outLog, errLog, extraEnv);
         }
-
-        String ps = ""
-                + envLines
-                + "$p = Start-Process -FilePath '" + esc(exe) + "' "
-                + " -ArgumentList @(" + argList + ") "
-                + " -WindowStyle Hidden -PassThru "
-                + " -RedirectStandardOutput '" + esc(outLog) + "' "
-                + " -RedirectStandardError '" + esc(errLog) + "'; "
-                + "Write-Output $p.Id;";
-
-        ProcessBuilder pb = new ProcessBuilder(
-                "powershell.exe",
-                "-NoProfile",
-                "-ExecutionPolicy", "Bypass",
-                "-Command", ps
-        );
-        pb.redirectErrorStream(true);
-
-        Process p = pb.start();
-
-        String pidLine;
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), Charset.defaultCharset()))) {
-            pidLine = br.readLine();
-        }
-        int exit = p.waitFor();
-        if (exit != 0 || pidLine == null || pidLine.isBlank()) {
-            throw new IOException("Failed to start hidden process. exe=" + exe + " exit=" + exit + " pidLine=" + pidLine);
-        }
-
-        int pid = Integer.parseInt(pidLine.trim());
-        return new StartResult(pid, outLog, errLog);
-    }
-
-    private static String toPsArgList(List<String> args) {
-        if (args == null) args = List.of();
-        return args.stream()
-                .map(a -> "'" + esc(a) + "'")
-                .collect(Collectors.joining(","));
     }
 
-    private static String esc(String s) {
-        return (s == null) ? "" : s.replace("'", "''");
+    private static ProcessLauncher selectLauncher(String name) {
+        if ("powershell".equalsIgnoreCase(name)) return FALLBACK;
+        return new DirectProcessLauncher();
     }
 }
@@ -0,0 +1,42 @@
+package app;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Windows 以外での動作確認・計測用。ターゲットとユーザー名だけを保持し、パスワードは保持しない
+public final class InMemoryCredentialStore implements CredentialStore {
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public CredentialManager.BatchResult addAll(Collection<String> hosts, String username, String password) {
+        long t0 = System.nanoTime();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String h : CredentialManager.distinct(hosts)) {
+            entries.put(CredentialManager.target(h), username == null ? "" : username);
+            result.put(h, 0);
+        }
+        return new CredentialManager.BatchResult(result, System.nanoTime() - t0);
+    }
+
+    @Override
+    public CredentialManager.BatchResult deleteAll(Collection<String> hosts) {
+        long t0 = System.nanoTime();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String h : CredentialManager.distinct(hosts)) {
+            result.put(h, entries.remove(CredentialManager.target(h)) != null ? 0 : 1);
+        }
+        return new CredentialManager.BatchResult(result, System.nanoTime() - t0);
+    }
+
+    public Map<String, String> snapshot() {
+        return Map.copyOf(entries);
+    }
+}
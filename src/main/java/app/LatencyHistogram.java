@@ -0,0 +1,80 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR 風の対数-線形バケットによるレイテンシ分布 (マイクロ秒)。
+// 2 の冪ごとに 16 分割するので誤差は 1/16 以内、記録はロックなしの O(1)。
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXP = 42; // 2^42 us ≒ 50 日
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+    public record Snapshot(long count, long p50Micros, long p95Micros, long p99Micros, long maxMicros, long meanMicros) {}
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(Math.max(0, nanos / 1000));
+    }
+
+    public void recordMicros(long v) {
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sumMicros() {
+        return sum.get();
+    }
+
+    public Snapshot snapshot() {
+        long n = count.get();
+        if (n == 0) return new Snapshot(0, 0, 0, 0, 0, 0);
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        long mx = max.get();
+        return new Snapshot(total, percentile(c, total, 0.50, mx), percentile(c, total, 0.95, mx),
+                percentile(c, total, 0.99, mx), mx, sum.get() / n);
+    }
+
+    private static long percentile(long[] c, long total, double q, long max) {
+        long target = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= target) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        if (e > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) ((v >>> (e - SUB_BITS)) & (SUB - 1));
+        return (e - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB) return index;
+        int e = index / SUB + SUB_BITS - 1;
+        long sub = index % SUB;
+        long lower = (SUB + sub) << (e - SUB_BITS);
+        return lower + (1L << (e - SUB_BITS)) - 1;
+    }
+}
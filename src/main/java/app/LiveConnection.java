@@ -0,0 +1,164 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 1 本の RDP 接続が持つトンネル・一時資格情報・.rdp ファイル・mstsc プロセス。
+// 片付けは接続ごとに独立しており、他の接続の状態には触れない。
+public final class LiveConnection {
+
+    private final long id;
+    private final Session session;
+    private final long startedNanos = System.nanoTime();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private volatile int sshPid = -1;
+    private volatile TunnelPool.Lease lease = null;
+    private volatile PortForwarder forwarder = null;
+    private volatile Process mstscProc = null;
+    private volatile Path tempRdpFile = null;
+    private volatile String loopback = null;
+    private volatile Future<?> task = null;
+    private LogFollower logs = null;
+    private final List<String> tempCredKeys = new ArrayList<>();
+
+    LiveConnection(long id, Session session) {
+        this.id = id;
+        this.session = session;
+    }
+
+    public long id() { return id; }
+    public Session session() { return session; }
+    public long startedNanos() { return startedNanos; }
+    public boolean closed() { return closed.get(); }
+
+    public String label() {
+        return "#" + id + " " + session.name();
+    }
+
+    void sshPid(int pid) { this.sshPid = pid; }
+    void lease(TunnelPool.Lease l) { this.lease = l; }
+    void forwarder(PortForwarder f) { this.forwarder = f; }
+    void mstscProc(Process p) { this.mstscProc = p; }
+    void tempRdpFile(Path p) { this.tempRdpFile = p; }
+    void loopback(String address) { this.loopback = address; }
+
+    void task(Future<?> f) { this.task = f; }
+
+    Process mstscProc() { return mstscProc; }
+    String askPassTag() { return "conn-" + id; }
+    String loopback() { return loopback; }
+
+    // ssh / mstsc の出力を接続のラベル付きでログ欄に流す
+    synchronized LogFollower logs(Connection.Ui ui) {
+        if (logs == null) logs = new LogFollower(ui::log);
+        return logs;
+    }
+
+    // mstsc 起動前 (トンネル確立・資格情報登録中) の切断では接続タスクごと中断する
+    void cancelSetup() {
+        closed.set(true);
+        Future<?> f = task;
+        if (f != null && mstscProc == null) f.cancel(true);
+    }
+
+    synchronized void addTempCredKeys(List<String> keys) {
+        tempCredKeys.addAll(keys);
+    }
+
+    // mstsc の終了待ちと Disconnect のどちらから呼ばれてもよい。
+    // 保持中のリソースだけを解放するので、接続準備中に切断されても後から呼び直せば残りを片付けられる
+    void cleanup(Connection.Ui ui, CredentialLeases creds, boolean killMstsc) {
+        closed.set(true);
+
+        if (killMstsc) stopMstsc(ui);
+        mstscProc = null;
+        // ssh -W が出した askpass のダイアログが残らないようにする
+        AskPassServer.cancelPrompts(askPassTag());
+
+        Path rdp = tempRdpFile;
+        tempRdpFile = null;
+        if (rdp != null) {
+            try {
+                Files.deleteIfExists(rdp);
+            } catch (Exception ignored) {
+            }
+        }
+
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(tempCredKeys);
+            tempCredKeys.clear();
+        }
+        if (!keys.isEmpty()) {
+            creds.release(session.name(), keys);
+            ui.log("[INFO] " + label() + ": Temporary credentials removed.");
+        }
+
+        try {
+            stopTunnel(ui);
+        } catch (Exception ignored) {
+        }
+
+        LogFollower f;
+        synchronized (this) {
+            f = logs;
+            logs = null;
+        }
+        if (f != null) {
+            f.close();
+            ui.log("[INFO] " + label() + ": Diagnostics: " + f.stats());
+        }
+    }
+
+    private void stopTunnel(Connection.Ui ui) throws IOException, InterruptedException {
+        PortForwarder f = forwarder;
+        forwarder = null;
+        if (f != null) {
+            f.close();
+            PortForwarder.Stats st = f.stats();
+            ui.log("[INFO] " + label() + ": Forwarder closed: connections=" + st.connections()
+                    + " up=" + st.bytesUp() + "B down=" + st.bytesDown() + "B setup=" + st.lastSetupMicros() + "us");
+        }
+
+        TunnelPool.Lease l = lease;
+        lease = null;
+        if (l != null) {
+            l.close();
+            ui.log("[INFO] " + label() + ": Bastion master released (kept for reuse). PID=" + l.pid());
+        }
+
+        int pid = sshPid;
+        if (pid <= 0) return;
+        sshPid = -1;
+        SshHelpers.stopSshIfNeeded(pid);
+        ui.log("[INFO] " + label() + ": Bastion tunnel stop requested. PID=" + pid);
+    }
+
+    private void stopMstsc(Connection.Ui ui) {
+        Process p = mstscProc;
+        if (p == null) return;
+        try {
+            ui.log("[INFO] " + label() + ": Closing mstsc...");
+            if (p.isAlive()) {
+                long pid = -1;
+                try {
+                    pid = p.pid();
+                } catch (Throwable ignored) {
+                }
+
+                if (pid > 0) {
+                    HiddenExec.runHiddenAndWait("taskkill.exe", List.of("/PID", String.valueOf(pid), "/T", "/F"));
+                } else {
+                    p.destroyForcibly();
+                }
+            }
+        } catch (Exception ignored) {
+        }
+    }
+}
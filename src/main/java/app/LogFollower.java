@@ -0,0 +1,142 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// 子プロセスの出力 (ログファイル / パイプ) を 1 行ずつ Ui.log に流す。
+// キューは固定長で、sink へは 1 秒あたりの上限を超えて渡さない。
+// ファイルは読み位置を止めて待てる (取りこぼしなし) が、パイプは止めると子プロセスが詰まるので溢れた分を捨てる。
+public final class LogFollower implements AutoCloseable {
+
+    public record Stats(long read, long delivered, long dropped, double linesPerSec) {
+        @Override
+        public String toString() {
+            return "lines=" + read + " delivered=" + delivered + " dropped=" + dropped
+                    + String.format(Locale.ROOT, " rate=%.1f/s", linesPerSec);
+        }
+    }
+
+    // -Drdp.launcher.logFollowQueue=1000 / -Drdp.launcher.logFollowRate=50 (行/秒)
+    private static final int CAPACITY = Integer.getInteger("rdp.launcher.logFollowQueue", 1000);
+    private static final int MAX_PER_SEC = Integer.getInteger("rdp.launcher.logFollowRate", 50);
+    private static final long TICK_MS = 100;
+    private static final long FILE_POLL_MS = 200;
+
+    private final Consumer<String> sink;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(Math.max(1, CAPACITY));
+    private final List<Thread> sources = new ArrayList<>();
+    private final Thread drainer;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed = false;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LogFollower(Consumer<String> sink) {
+        this.sink = sink;
+        this.drainer = Thread.ofVirtual().name("rdp-launcher-log-drain").start(this::drainLoop);
+    }
+
+    public synchronized void followFile(String tag, Path path, boolean fromEnd) {
+        if (closed || path == null) return;
+        LogTail.Follower f = new LogTail.Follower(path, fromEnd);
+        sources.add(Thread.ofVirtual().name("rdp-launcher-log-file").start(() -> fileLoop(tag, f)));
+    }
+
+    public synchronized void followStream(String tag, InputStream in) {
+        if (closed || in == null) return;
+        sources.add(Thread.ofVirtual().name("rdp-launcher-log-pipe").start(() -> streamLoop(tag, in)));
+    }
+
+    public Stats stats() {
+        double secs = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        return new Stats(read.get(), delivered.get(), dropped.get(), delivered.get() / secs);
+    }
+
+    private void fileLoop(String tag, LogTail.Follower f) {
+        try {
+            while (true) {
+                boolean last = closed;
+                int room = queue.remainingCapacity();
+                if (room > 0) {
+                    for (String line : f.poll(room)) {
+                        read.incrementAndGet();
+                        if (!queue.offer(tag + line)) dropped.incrementAndGet();
+                    }
+                }
+                if (last) return;
+                Thread.sleep(FILE_POLL_MS);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void streamLoop(String tag, InputStream in) {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                read.incrementAndGet();
+                if (!queue.offer(tag + line)) dropped.incrementAndGet();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void drainLoop() {
+        int perTick = Math.max(1, (int) (MAX_PER_SEC * TICK_MS / 1000));
+        List<String> batch = new ArrayList<>(perTick);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                String first = queue.poll(TICK_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, perTick - 1);
+                for (String line : batch) sink.accept(line);
+                delivered.addAndGet(batch.size());
+                batch.clear();
+                Thread.sleep(TICK_MS);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // 最後に 1 回だけファイルを読み直してから止める。流し切れなかった行は dropped に数える
+    @Override
+    public void close() {
+        List<Thread> ts;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            ts = new ArrayList<>(sources);
+        }
+        for (Thread t : ts) {
+            try {
+                t.join(FILE_POLL_MS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            t.interrupt();
+        }
+        try {
+            drainer.join(TICK_MS * 20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainer.interrupt();
+        dropped.addAndGet(queue.size());
+        queue.clear();
+    }
+}
@@ -0,0 +1,358 @@
+package app;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+// 追記型のセッションストア (sessions.db)。
+// 先頭に MAGIC、以降は [int 長さ][int CRC32][byte 種別][本体] のレコード。PUT は 1 件分の全項目、DEL は名前だけ。
+// 起動時に先頭から再生してメモリ上の索引を作り、途中で切れた・壊れた末尾はそこで切り詰める。
+// 上書き・削除で無効になったレコードが有効件数を超えたら、一時ファイルに書き直して置き換える。
+public final class LogSessionRepository implements SessionRepository {
+
+    private static final int MAGIC = 0x52445331; // "RDS1"
+    private static final byte PUT = 1;
+    private static final byte DEL = 2;
+    private static final byte SESSION_V1 = 1;
+    // v2: 末尾に group / tags を追加
+    private static final byte SESSION_V2 = 2;
+    private static final int MAX_RECORD = 1024 * 1024;
+    private static final int COMPACT_MIN_DEAD = 1000;
+
+    private final Path file;
+    private final Map<String, Session> index = new LinkedHashMap<>();
+    private FileChannel ch;
+    private long dead = 0;
+
+    private LogSessionRepository(Path file) {
+        this.file = file;
+    }
+
+    // sessions.db が無く旧 sessions.csv があれば取り込む (csv はそのまま残す)。
+    // 読めない行が 1 つでもあれば sessions.db を作らずに失敗させ、直して再起動すれば取り込み直せるようにする
+    public static LogSessionRepository open(Path file, Path legacyCsv) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        LogSessionRepository repo = new LogSessionRepository(file);
+        if (isNew(file) && legacyCsv != null && Files.exists(legacyCsv)) {
+            List<String> errors = new ArrayList<>();
+            List<Session> legacy = SessionCsv.readLegacy(legacyCsv, e -> errors.add("line " + e.line() + ": " + e.message()));
+            if (!errors.isEmpty()) {
+                throw new IOException(legacyCsv.getFileName() + ": " + errors.size() + " row(s) could not be migrated, "
+                        + file.getFileName() + " was not written: " + String.join("; ", errors));
+            }
+            for (Session s : legacy) repo.index.put(key(s.name()), s);
+            repo.rewrite();
+        }
+        repo.replay();
+        return repo;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public synchronized List<Session> loadAll() {
+        return new ArrayList<>(index.values());
+    }
+
+    @Override
+    public synchronized Optional<Session> find(String name) {
+        return Optional.ofNullable(index.get(key(name)));
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void upsert(Session s) throws IOException {
+        String k = key(s.name());
+        Session prev = index.get(k);
+        if (s.equals(prev)) return;
+
+        append(PUT, encode(s));
+        if (prev != null) {
+            dead++;
+            // 名前の大文字小文字だけ変わった場合も順序は保つ
+            index.replace(k, s);
+        } else {
+            index.put(k, s);
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void upsertAll(Collection<Session> sessions) throws IOException {
+        Map<String, Session> changed = new LinkedHashMap<>();
+        for (Session s : sessions) {
+            String k = key(s.name());
+            if (!s.equals(index.get(k))) changed.put(k, s);
+        }
+        if (changed.isEmpty()) return;
+
+        if (ch == null) ch = openForAppend();
+        writeSessions(ch, changed.values());
+        ch.force(false);
+        for (Map.Entry<String, Session> e : changed.entrySet()) {
+            if (index.containsKey(e.getKey())) {
+                dead++;
+                index.replace(e.getKey(), e.getValue());
+            } else {
+                index.put(e.getKey(), e.getValue());
+            }
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void delete(String name) throws IOException {
+        String k = key(name);
+        if (!index.containsKey(k)) return;
+
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        new DataOutputStream(bo).writeUTF(name);
+        append(DEL, bo.toByteArray());
+        index.remove(k);
+        dead += 2;
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void compact() throws IOException {
+        if (dead == 0) return;
+        rewrite();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (dead > 0) rewrite();
+        if (ch != null) ch.close();
+        ch = null;
+    }
+
+    // ---- 内部 ----
+
+    private void compactIfNeeded() throws IOException {
+        if (dead >= COMPACT_MIN_DEAD && dead > index.size()) rewrite();
+    }
+
+    // 1 レコード = 1 回の write + force。電源断でも直前までのレコードは残る
+    private void append(byte type, byte[] body) throws IOException {
+        if (ch == null) ch = openForAppend();
+        ch.write(frame(type, body));
+        ch.force(false);
+    }
+
+    private void replay() throws IOException {
+        index.clear();
+        dead = 0;
+        if (isNew(file)) return;
+        long good;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE - 8));
+            while (buf.hasRemaining() && in.read(buf) >= 0) { }
+            buf.flip();
+            if (buf.remaining() < 4 || buf.getInt() != MAGIC) throw new IOException("Not a session store: " + file);
+            good = buf.position();
+
+            CRC32 crc = new CRC32();
+            while (buf.remaining() >= 9) {
+                int len = buf.getInt();
+                int sum = buf.getInt();
+                if (len < 1 || len > MAX_RECORD || buf.remaining() < len) break;
+                crc.reset();
+                crc.update(buf.slice(buf.position(), len));
+                if ((int) crc.getValue() != sum) break;
+
+                byte type = buf.get();
+                byte[] body = new byte[len - 1];
+                buf.get(body);
+                apply(type, body);
+                good = buf.position();
+            }
+        }
+        // 末尾の書きかけ・破損レコードは捨てる
+        if (Files.size(file) > good) {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                out.truncate(good);
+                out.force(true);
+            }
+        }
+    }
+
+    private void apply(byte type, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if (type == PUT) {
+            Session s = decode(in);
+            if (index.put(key(s.name()), s) != null) dead++;
+        } else if (type == DEL) {
+            if (index.remove(key(in.readUTF())) != null) dead++;
+            dead++;
+        }
+    }
+
+    // 有効なレコードだけを一時ファイルに書き、fsync してから置き換える
+    private void rewrite() throws IOException {
+        if (ch != null) {
+            ch.close();
+            ch = null;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeAll(out, ByteBuffer.allocate(4).putInt(MAGIC).flip());
+            writeSessions(out, index.values());
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dead = 0;
+    }
+
+    private static void writeSessions(FileChannel out, Collection<Session> sessions) throws IOException {
+        ByteBuffer batch = ByteBuffer.allocate(256 * 1024);
+        for (Session s : sessions) {
+            ByteBuffer rec = frame(PUT, encode(s));
+            if (rec.remaining() > batch.remaining()) {
+                writeAll(out, batch.flip());
+                batch.clear();
+            }
+            if (rec.remaining() > batch.capacity()) writeAll(out, rec);
+            else batch.put(rec);
+        }
+        writeAll(out, batch.flip());
+    }
+
+    // ヘッダーも rewrite で一時ファイル経由で作る。直接書いて途中で落ちると空の sessions.db が残り、以後開けなくなる
+    private FileChannel openForAppend() throws IOException {
+        if (isNew(file)) rewrite();
+        return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // 無いか、MAGIC も書けずに終わったファイルは新規として扱う (EventJournal.open と同じ)
+    private static boolean isNew(Path file) throws IOException {
+        return !Files.exists(file) || Files.size(file) < 4;
+    }
+
+    private static ByteBuffer frame(byte type, byte[] body) {
+        ByteBuffer rec = ByteBuffer.allocate(8 + 1 + body.length);
+        rec.putInt(1 + body.length);
+        rec.putInt(0);
+        rec.put(type).put(body);
+        CRC32 crc = new CRC32();
+        crc.update(rec.array(), 8, 1 + body.length);
+        rec.putInt(4, (int) crc.getValue());
+        return rec.flip();
+    }
+
+    private static void writeAll(FileChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) out.write(b);
+    }
+
+    private static byte[] encode(Session s) {
+        try {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bo);
+            out.writeByte(SESSION_V2);
+            out.writeUTF(str(s.name()));
+            out.writeBoolean(s.useBastion());
+            out.writeUTF(str(s.sshAlias()));
+            out.writeUTF(str(s.jumpHosts()));
+            out.writeUTF(str(s.sshOptions()));
+            out.writeBoolean(s.useRdGateway());
+            out.writeUTF(str(s.rdGatewayHost()));
+            out.writeBoolean(s.rdGatewayUseCurrentUser());
+            out.writeBoolean(s.rdGatewayShareCreds());
+            out.writeUTF(str(s.rdpHost()));
+            out.writeInt(s.rdpPort());
+            out.writeUTF(str(s.username()));
+            out.writeUTF(str(s.domain()));
+            out.writeBoolean(s.fullscreen());
+            out.writeInt(s.width() == null ? -1 : s.width());
+            out.writeInt(s.height() == null ? -1 : s.height());
+            out.writeBoolean(s.multimon());
+            out.writeBoolean(s.span());
+            out.writeUTF(str(s.selectedMonitors()));
+            out.writeUTF(str(s.group()));
+            out.writeUTF(str(s.tags()));
+            return bo.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Session decode(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != SESSION_V1 && version != SESSION_V2) throw new IOException("Unsupported session record version: " + version);
+        String name = in.readUTF();
+        boolean useBastion = in.readBoolean();
+        String sshAlias = in.readUTF();
+        String jumpHosts = in.readUTF();
+        String sshOptions = in.readUTF();
+        boolean useRdGateway = in.readBoolean();
+        String rdGatewayHost = in.readUTF();
+        boolean rdGatewayUseCurrentUser = in.readBoolean();
+        boolean rdGatewayShareCreds = in.readBoolean();
+        String rdpHost = in.readUTF();
+        int rdpPort = in.readInt();
+        String username = in.readUTF();
+        String domain = in.readUTF();
+        boolean fullscreen = in.readBoolean();
+        int w = in.readInt();
+        int h = in.readInt();
+        boolean multimon = in.readBoolean();
+        boolean span = in.readBoolean();
+        String selectedMonitors = in.readUTF();
+        String group = version >= SESSION_V2 ? in.readUTF() : "";
+        String tags = version >= SESSION_V2 ? in.readUTF() : "";
+        return new Session(
+                name,
+                useBastion,
+                sshAlias,
+                jumpHosts,
+                sshOptions,
+                useRdGateway,
+                rdGatewayHost,
+                rdGatewayUseCurrentUser,
+                rdGatewayShareCreds,
+                rdpHost,
+                rdpPort,
+                username,
+                domain,
+                fullscreen,
+                w < 0 ? null : w,
+                h < 0 ? null : h,
+                multimon,
+                span,
+                selectedMonitors,
+                group,
+                tags
+        );
+    }
+
+    private static String str(String s) {
+        return s == null ? "" : s;
+    }
+
+    // SessionRegistry (画面の一覧) と同じ大文字小文字の畳み込みにして、同じ名前を別物として扱わないようにする
+    private static String key(String name) {
+        return name == null ? "" : SessionRegistry.key(name);
+    }
+}
@@ -0,0 +1,183 @@
+package app;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.TextArea;
+
+// ログ欄への書き込み口。どのスレッドからでも publish でき、溜まった行は 1 フレームに 1 回まとめて TextArea に追記する。
+// 表示は直近 VISIBLE_LINES 行までに切り詰め、全履歴はローテーションするファイルに書き出す。
+public final class LogSink {
+
+    // -Drdp.launcher.logVisibleLines=5000
+    private static final int VISIBLE_LINES = Math.max(100, Integer.getInteger("rdp.launcher.logVisibleLines", 5000));
+    private static final int RING_CAPACITY = 1 << 13;
+    private static final long SPILL_MAX_BYTES = 5L * 1024 * 1024;
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final TextArea area;
+    private final Path spillFile;
+    private final Ring ring = new Ring(RING_CAPACITY);
+    private final ArrayDeque<Integer> visibleLengths = new ArrayDeque<>();
+    private final ExecutorService spill = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("rdp-launcher-log-spill").factory());
+    private final AtomicLong dropped = new AtomicLong();
+    private final AnimationTimer pulse;
+    private Writer spillWriter;
+
+    public LogSink(TextArea area, Path spillFile) {
+        this.area = area;
+        this.spillFile = spillFile;
+        this.pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        };
+    }
+
+    public void start() {
+        pulse.start();
+    }
+
+    public void stop() {
+        pulse.stop();
+        flush();
+        spill.execute(this::closeSpill);
+        spill.shutdown();
+    }
+
+    public Path spillFile() {
+        return spillFile;
+    }
+
+    public void publish(String line) {
+        if (!ring.offer(line)) dropped.incrementAndGet();
+    }
+
+    // FX スレッドから呼ぶ
+    private void flush() {
+        long lost = dropped.getAndSet(0);
+        if (ring.isEmpty() && lost == 0) return;
+
+        StringBuilder chunk = new StringBuilder();
+        if (lost > 0) appendLine(chunk, "[WARN] " + lost + " log line(s) dropped (log buffer full)");
+        String line;
+        while ((line = ring.poll()) != null) appendLine(chunk, line);
+
+        area.appendText(chunk.toString());
+        trimVisible();
+
+        String text = chunk.toString();
+        String stamp = LocalDateTime.now().format(STAMP);
+        spill.execute(() -> writeSpill(stamp, text));
+    }
+
+    // 数えた長さが TextArea に入る長さと一致しないと、trimVisible が残すべき行の途中まで削ってしまう
+    private void appendLine(StringBuilder chunk, String line) {
+        String s = visible(line) + "\n";
+        chunk.append(s);
+        visibleLengths.addLast(s.length());
+    }
+
+    // TextArea が入力時に捨てる文字 (\r や ssh の出力に混じる ESC などの制御文字) を先に落とす
+    static String visible(String line) {
+        StringBuilder out = null;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            boolean keep = c == '\n' || c == '\t' || (c >= 0x20 && c != 0x7F);
+            if (!keep && out == null) out = new StringBuilder(line.length()).append(line, 0, i);
+            else if (keep && out != null) out.append(c);
+        }
+        return out == null ? line : out.toString();
+    }
+
+    // 上限の 1 割を超えたらまとめて削る (削除のたびに全文を作り直さないように)
+    private void trimVisible() {
+        if (visibleLengths.size() <= VISIBLE_LINES + VISIBLE_LINES / 10) return;
+        int chars = 0;
+        while (visibleLengths.size() > VISIBLE_LINES) chars += visibleLengths.pollFirst();
+        area.deleteText(0, Math.min(chars, area.getLength()));
+    }
+
+    private void writeSpill(String stamp, String text) {
+        try {
+            if (spillWriter == null) {
+                Files.createDirectories(spillFile.getParent());
+                SshLogs.rotateIfNeeded(spillFile, SPILL_MAX_BYTES);
+                spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            for (String l : text.split("\\R")) {
+                spillWriter.write(stamp);
+                spillWriter.write(' ');
+                spillWriter.write(l);
+                spillWriter.write(System.lineSeparator());
+            }
+            spillWriter.flush();
+            if (Files.size(spillFile) >= SPILL_MAX_BYTES) closeSpill();
+        } catch (IOException e) {
+            closeSpill();
+        }
+    }
+
+    private void closeSpill() {
+        Writer w = spillWriter;
+        spillWriter = null;
+        if (w == null) return;
+        try {
+            w.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // 複数スレッドから書き、FX スレッドだけが読むロックフリーのリングバッファ。満杯なら offer は false
+    static final class Ring {
+        private final AtomicReferenceArray<String> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0;
+
+        Ring(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        boolean offer(String s) {
+            while (true) {
+                long t = tail.get();
+                if (t - head >= slots.length()) return false;
+                if (tail.compareAndSet(t, t + 1)) {
+                    slots.set((int) (t & mask), s);
+                    return true;
+                }
+            }
+        }
+
+        // 確保済みでまだ書き込まれていないスロットに当たったら、そこで止めて次のフレームに回す
+        String poll() {
+            long h = head;
+            if (h == tail.get()) return null;
+            int i = (int) (h & mask);
+            String s = slots.get(i);
+            if (s == null) return null;
+            slots.set(i, null);
+            head = h + 1;
+            return s;
+        }
+
+        boolean isEmpty() {
+            return head == tail.get();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// ログ末尾の読み取り。ファイル全体ではなく末尾 (または前回位置からの差分) だけを読む
+public final class LogTail {
+
+    private LogTail() {}
+
+    private static final int BLOCK = 8 * 1024;
+    // 改行が極端に少ないファイルでも読み過ぎない上限
+    private static final int MAX_TAIL_BYTES = 1024 * 1024;
+
+    public static String lastLines(Path path, int maxLines) {
+        if (path == null || maxLines <= 0) return "";
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long floor = Math.max(0, size - MAX_TAIL_BYTES);
+            long start = floor;
+            long pos = size;
+            int newlines = 0;
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+
+            scan:
+            while (pos > floor) {
+                int n = (int) Math.min(BLOCK, pos - floor);
+                pos -= n;
+                buf.clear().limit(n);
+                readFully(ch, buf, pos);
+                for (int i = n - 1; i >= 0; i--) {
+                    // 最終行の末尾改行は数えない
+                    if (buf.get(i) == '\n' && pos + i != size - 1 && ++newlines == maxLines) {
+                        start = pos + i + 1;
+                        break scan;
+                    }
+                }
+            }
+
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - start));
+            readFully(ch, tail, start);
+            String text = new String(tail.array(), 0, tail.limit(), Charset.defaultCharset());
+            return String.join(System.lineSeparator(), text.split("\\R"));
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos + buf.position());
+            if (r < 0) break;
+        }
+        buf.flip();
+    }
+
+    // 書き込み中のログを追いかけ、前回から増えた完結行だけを返す。切り詰め・ローテーションで縮んだら先頭から読み直す
+    public static final class Follower {
+        private final Path path;
+        private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        private final ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+        private long pos;
+
+        public Follower(Path path, boolean fromEnd) {
+            this.path = path;
+            if (fromEnd) {
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                    pos = ch.size();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public List<String> poll() {
+            return poll(Integer.MAX_VALUE);
+        }
+
+        // maxLines を超えた分は次回に回す (読み位置は行の途中で止めない)
+        public List<String> poll(int maxLines) {
+            List<String> lines = new ArrayList<>();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (size < pos) {
+                    pos = 0;
+                    partial.reset();
+                }
+                while (pos < size && lines.size() < maxLines) {
+                    buf.clear();
+                    int n = ch.read(buf, pos);
+                    if (n <= 0) break;
+                    int consumed = n;
+                    for (int i = 0; i < n; i++) {
+                        byte b = buf.get(i);
+                        if (b == '\n') {
+                            lines.add(takeLine());
+                            if (lines.size() >= maxLines) {
+                                consumed = i + 1;
+                                break;
+                            }
+                        } else {
+                            partial.write(b);
+                        }
+                    }
+                    pos += consumed;
+                }
+            } catch (NoSuchFileException ignored) {
+            } catch (IOException ignored) {
+            }
+            return lines;
+        }
+
+        private String takeLine() {
+            String s = partial.toString(Charset.defaultCharset());
+            partial.reset();
+            return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+        }
+    }
+}
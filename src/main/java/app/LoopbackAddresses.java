@@ -0,0 +1,43 @@
+package app;
+
+import java.util.BitSet;
+
+// 踏み台経由の接続ごとに 127.0.0.N (N = 2..254) を 1 つずつ割り当てる。
+// mstsc は接続先のアドレスで TERMSRV/<host> を引くので、アドレスを分ければ同時に開いた接続どうしで
+// (ユーザーやパスワードが違っても) 一時資格情報が上書きされない。
+// 127.0.0.1 は ssh -D マスター・askpass・metrics が使うので割り当てない。解放したアドレスはすぐには使い回さない
+public final class LoopbackAddresses {
+
+    private static final String PREFIX = "127.0.0.";
+    private static final int FIRST = 2;
+    private static final int LAST = 254;
+
+    private final BitSet used = new BitSet(LAST + 1);
+    private int next = FIRST;
+
+    // 空きが無ければ null
+    public synchronized String acquire() {
+        for (int i = FIRST; i <= LAST; i++) {
+            int n = next;
+            next = n == LAST ? FIRST : n + 1;
+            if (!used.get(n)) {
+                used.set(n);
+                return PREFIX + n;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void release(String address) {
+        if (address == null || !address.startsWith(PREFIX)) return;
+        try {
+            int n = Integer.parseInt(address.substring(PREFIX.length()));
+            if (n >= FIRST && n <= LAST) used.clear(n);
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    public synchronized int inUse() {
+        return used.cardinality();
+    }
+}
@@ -0,0 +1,13 @@
+package app;
+
+import java.io.IOException;
+import java.util.List;
+
+// ローカルの画面 (左上から順) に対応する RDP のモニター ID を調べる。MonitorTopologyService が FX スレッド外で呼ぶ
+public interface MonitorProbe {
+
+    String name();
+
+    // expectedCount 個まで。分からなければ空 (画面の並び順をそのまま ID にする)
+    List<String> monitorIds(int expectedCount) throws IOException, InterruptedException;
+}
@@ -1,6 +1,8 @@
 package app;
 
+import javafx.application.Platform;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
@@ -13,23 +15,16 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.time.Duration;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import javafx.stage.Modality;
 import javafx.stage.Window;
-import javafx.stage.Screen;
 
 public final class MonitorSelectionSupport {
 
@@ -41,12 +36,12 @@ public final class MonitorSelectionSupport {
         }
     }
 
-    private static final Pattern MSTSC_MONITOR_LINE = Pattern.compile("(?m)^\\s*(\\d+)\\b");
-
     private MonitorSelectionSupport() {}
 
-    public static SelectionResult showDialog(Window owner, String mstscExe, String currentCsv) {
-        List<MonitorOption> monitors = discoverMonitors(mstscExe);
+    public static SelectionResult showDialog(Window owner, MonitorTopologyService topology, String currentCsv) {
+        // mstsc のモニター ID は別スレッドで調べ (2 回目以降はキャッシュ)、分かるまでは仮表示にしておく
+        CompletableFuture<List<MonitorOption>> discovery = topology.monitors(MonitorTopologyService.localScreens());
+        AtomicReference<List<MonitorOption>> monitors = new AtomicReference<>();
         Set<String> selectedIds = parseCsv(currentCsv);
 
         Dialog<ButtonType> dialog = new Dialog<>();
@@ -54,18 +49,32 @@ public final class MonitorSelectionSupport {
         dialog.initModality(Modality.WINDOW_MODAL);
         dialog.setTitle("Select Monitors");
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        Node okButton = dialog.getDialogPane().lookupButton(ButtonType.OK);
 
         Label help = new Label("Click displays to choose where the RDP session should open. Selected monitors use full-screen multi-monitor mode.");
         help.setWrapText(true);
 
-        Pane preview = buildPreview(monitors, selectedIds);
-        ScrollPane scroll = new ScrollPane(preview);
+        ScrollPane scroll = new ScrollPane();
         scroll.setFitToWidth(true);
         scroll.setFitToHeight(true);
         scroll.setPannable(true);
         scroll.setPrefViewportWidth(760);
         scroll.setPrefViewportHeight(320);
 
+        List<MonitorOption> ready = discovery.getNow(null);
+        if (ready != null) {
+            monitors.set(ready);
+            scroll.setContent(buildPreview(ready, selectedIds));
+        } else {
+            scroll.setContent(placeholder("Detecting monitors..."));
+            okButton.setDisable(true);
+            discovery.thenAccept(found -> Platform.runLater(() -> {
+                monitors.set(found);
+                scroll.setContent(buildPreview(found, selectedIds));
+                okButton.setDisable(false);
+            }));
+        }
+
         Label hint = new Label("If monitor IDs cannot be read safely from mstsc, the app falls back to local display order.");
         hint.setWrapText(true);
         hint.setStyle("-fx-text-fill: #555;");
@@ -82,10 +91,18 @@ public final class MonitorSelectionSupport {
 
         return dialog.showAndWait()
                 .filter(ButtonType.OK::equals)
-                .map(bt -> new SelectionResult(monitors, new LinkedHashSet<>(selectedIds), monitorIdsReliable(monitors)))
+                .filter(bt -> monitors.get() != null)
+                .map(bt -> new SelectionResult(monitors.get(), new LinkedHashSet<>(selectedIds), monitorIdsReliable(monitors.get())))
                 .orElse(null);
     }
 
+    private static Pane placeholder(String text) {
+        StackPane pane = new StackPane(new Label(text));
+        pane.setPrefSize(760, 320);
+        pane.setMinSize(760, 320);
+        return pane;
+    }
+
     private static Pane buildPreview(List<MonitorOption> monitors, Set<String> selectedIds) {
         Pane pane = new Pane();
         pane.setPrefSize(760, 320);
@@ -152,53 +169,6 @@ public final class MonitorSelectionSupport {
         rect.setStrokeWidth(1.5);
     }
 
-    private static List<MonitorOption> discoverMonitors(String mstscExe) {
-        List<Screen> screens = new ArrayList<>(Screen.getScreens());
-        screens.sort(Comparator.comparingDouble((Screen s) -> s.getBounds().getMinX())
-                .thenComparingDouble(s -> s.getBounds().getMinY()));
-
-        List<String> mstscIds = queryMstscMonitorIds(mstscExe, screens.size());
-        List<MonitorOption> monitors = new ArrayList<>();
-        for (int i = 0; i < screens.size(); i++) {
-            Rectangle2D bounds = screens.get(i).getBounds();
-            String rdpId = i < mstscIds.size() ? mstscIds.get(i) : String.valueOf(i);
-            monitors.add(new MonitorOption(rdpId, i + 1, bounds));
-        }
-        return monitors;
-    }
-
-    private static List<String> queryMstscMonitorIds(String mstscExe, int expectedCount) {
-        Process process = null;
-        try {
-            process = new ProcessBuilder(mstscExe, "/l")
-                    .redirectErrorStream(true)
-                    .start();
-
-            boolean finished = process.waitFor(Duration.ofSeconds(2).toMillis(), TimeUnit.MILLISECONDS);
-            if (!finished) {
-                process.destroyForcibly();
-                process.waitFor(500, TimeUnit.MILLISECONDS);
-            }
-
-            String output = new String(process.getInputStream().readAllBytes(), Charset.defaultCharset());
-            Set<String> ids = new LinkedHashSet<>();
-            Matcher matcher = MSTSC_MONITOR_LINE.matcher(output);
-            while (matcher.find()) {
-                ids.add(matcher.group(1));
-                if (ids.size() >= expectedCount) {
-                    break;
-                }
-            }
-            return new ArrayList<>(ids);
-        } catch (Exception ignored) {
-            return List.of();
-        } finally {
-            if (process != null && process.isAlive()) {
-                process.destroyForcibly();
-            }
-        }
-    }
-
     private static Set<String> parseCsv(String csv) {
         if (csv == null || csv.isBlank()) {
             return new LinkedHashSet<>();
@@ -0,0 +1,114 @@
+package app;
+
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Rectangle2D;
+import javafx.stage.Screen;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// モニター選択ダイアログ用の画面構成 (ローカルの画面配置 + RDP のモニター ID) のキャッシュ。
+// MonitorProbe (mstsc /l) は FX スレッド外で 1 回だけ走らせ、画面配置が変わるまで結果を使い回す。
+// 画面の抜き差しは Screen.getScreens() のリスナーで受けてキャッシュを捨てる (次に開いたときに取り直す)。
+// ID が画面の数だけ取れなかった結果 (mstsc の失敗・タイムアウト) は RETRY_AFTER_SECONDS だけ使い回し、その後は取り直す
+public final class MonitorTopologyService {
+    private static final long RETRY_AFTER_SECONDS = Long.getLong("rdp.launcher.monitorRetrySeconds", 30);
+
+    private final MonitorProbe probe;
+    private final Executor executor;
+    private final Consumer<String> log;
+    private final LongSupplier nanoTime;
+
+    // 取得済み・取得中の結果と、その対象になった画面配置
+    private List<Rectangle2D> topology;
+    private CompletableFuture<List<MonitorSelectionSupport.MonitorOption>> current;
+    // current が失敗だった場合の取り直し時刻 (nanoTime)。成功・取得中は 0
+    private long retryAt;
+
+    public MonitorTopologyService(MonitorProbe probe, Consumer<String> log) {
+        this(probe, r -> Thread.ofVirtual().name("rdp-launcher-monitors").start(r), log);
+    }
+
+    MonitorTopologyService(MonitorProbe probe, Executor executor, Consumer<String> log) {
+        this(probe, executor, log, System::nanoTime);
+    }
+
+    MonitorTopologyService(MonitorProbe probe, Executor executor, Consumer<String> log, LongSupplier nanoTime) {
+        this.probe = probe;
+        this.executor = executor;
+        this.log = log;
+        this.nanoTime = nanoTime;
+    }
+
+    // FX スレッドから 1 回呼ぶ
+    public void attachToScreens() {
+        Screen.getScreens().addListener((ListChangeListener<Screen>) c -> invalidate());
+    }
+
+    public synchronized void invalidate() {
+        topology = null;
+        current = null;
+        retryAt = 0;
+    }
+
+    // 画面の境界を左上から順に並べたもの。FX スレッドで読む
+    public static List<Rectangle2D> localScreens() {
+        List<Rectangle2D> bounds = new ArrayList<>();
+        for (Screen s : Screen.getScreens()) bounds.add(s.getBounds());
+        bounds.sort(Comparator.comparingDouble(Rectangle2D::getMinX).thenComparingDouble(Rectangle2D::getMinY));
+        return bounds;
+    }
+
+    // 同じ画面配置の結果があれば (取得中でも) それを返し、無ければ別スレッドで取得を始める
+    public synchronized CompletableFuture<List<MonitorSelectionSupport.MonitorOption>> monitors(List<Rectangle2D> screens) {
+        boolean expired = retryAt != 0 && nanoTime.getAsLong() - retryAt >= 0;
+        if (current != null && screens.equals(topology) && !expired) return current;
+        List<Rectangle2D> snapshot = List.copyOf(screens);
+        CompletableFuture<List<MonitorSelectionSupport.MonitorOption>> f = new CompletableFuture<>();
+        topology = snapshot;
+        current = f;
+        retryAt = 0;
+        executor.execute(() -> {
+            try {
+                f.complete(discover(snapshot, f));
+            } catch (Throwable t) {
+                failed(f);
+                f.completeExceptionally(t);
+            }
+        });
+        return f;
+    }
+
+    private synchronized void failed(CompletableFuture<?> f) {
+        if (current == f) retryAt = nanoTime.getAsLong() + TimeUnit.SECONDS.toNanos(RETRY_AFTER_SECONDS);
+    }
+
+    private List<MonitorSelectionSupport.MonitorOption> discover(List<Rectangle2D> screens, CompletableFuture<?> f) {
+        long t0 = System.nanoTime();
+        List<String> ids;
+        try {
+            ids = probe.monitorIds(screens.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ids = List.of();
+        } catch (Exception e) {
+            ids = List.of();
+        }
+
+        List<MonitorSelectionSupport.MonitorOption> monitors = new ArrayList<>();
+        for (int i = 0; i < screens.size(); i++) {
+            String rdpId = i < ids.size() ? ids.get(i) : String.valueOf(i);
+            monitors.add(new MonitorSelectionSupport.MonitorOption(rdpId, i + 1, screens.get(i)));
+        }
+        if (ids.size() < screens.size()) failed(f);
+        log.accept("[INFO] Monitors: " + screens.size() + " display(s), " + ids.size() + " ID(s) from " + probe.name()
+                + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) + " ms");
+        return List.copyOf(monitors);
+    }
+}
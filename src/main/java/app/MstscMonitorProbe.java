@@ -0,0 +1,68 @@
+package app;
+
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// mstsc /l の出力からモニター ID を読む。プロセスの起動と待ちで最大 2.5 秒かかる
+public final class MstscMonitorProbe implements MonitorProbe {
+
+    private static final Pattern MSTSC_MONITOR_LINE = Pattern.compile("(?m)^\\s*(\\d+)\\b");
+
+    private final String mstscExe;
+
+    public MstscMonitorProbe(String mstscExe) {
+        this.mstscExe = mstscExe;
+    }
+
+    @Override
+    public String name() {
+        return "mstsc";
+    }
+
+    @Override
+    public List<String> monitorIds(int expectedCount) {
+        Process process = null;
+        try {
+            process = new ProcessBuilder(mstscExe, "/l")
+                    .redirectErrorStream(true)
+                    .start();
+
+            boolean finished = process.waitFor(Duration.ofSeconds(2).toMillis(), TimeUnit.MILLISECONDS);
+            if (!finished) {
+                process.destroyForcibly();
+                process.waitFor(500, TimeUnit.MILLISECONDS);
+            }
+
+            String output = new String(process.getInputStream().readAllBytes(), Charset.defaultCharset());
+            return parse(output, expectedCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (Exception ignored) {
+            return List.of();
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    static List<String> parse(String output, int expectedCount) {
+        Set<String> ids = new LinkedHashSet<>();
+        Matcher matcher = MSTSC_MONITOR_LINE.matcher(output);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+            if (ids.size() >= expectedCount) {
+                break;
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+}
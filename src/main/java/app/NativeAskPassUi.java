@@ -0,0 +1,146 @@
+package app;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_CHAR;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+// Windows 標準のダイアログを FFM で直接出す (credui の CredUIPromptForCredentialsW / user32 の MessageBoxW)。
+// AWT / Swing を読み込まないので、askpass の起動は JVM 自体の起動時間にほぼ収まる
+public final class NativeAskPassUi implements AskPassUi {
+
+    private static final int CREDUI_FLAGS_DO_NOT_PERSIST = 0x2;
+    private static final int CREDUI_FLAGS_ALWAYS_SHOW_UI = 0x80;
+    private static final int CREDUI_FLAGS_GENERIC_CREDENTIALS = 0x40000;
+    private static final int CREDUI_FLAGS_KEEP_USERNAME = 0x100000;
+    private static final int CREDUI_MAX_USERNAME_LENGTH = 513;
+    private static final int CREDUI_MAX_PASSWORD_LENGTH = 256;
+    private static final int ERROR_CANCELLED = 1223;
+
+    private static final int MB_YESNO = 0x4;
+    private static final int MB_ICONWARNING = 0x30;
+    private static final int MB_DEFBUTTON2 = 0x100;
+    private static final int MB_SETFOREGROUND = 0x10000;
+    private static final int MB_TOPMOST = 0x40000;
+    private static final int IDYES = 6;
+
+    private static final String TITLE = "SSH Authentication";
+
+    // CREDUI_INFOW (x64)
+    private static final StructLayout CREDUI_INFOW = MemoryLayout.structLayout(
+            JAVA_INT.withName("cbSize"),
+            MemoryLayout.paddingLayout(4),
+            ADDRESS.withName("hwndParent"),
+            ADDRESS.withName("pszMessageText"),
+            ADDRESS.withName("pszCaptionText"),
+            ADDRESS.withName("hbmBanner")
+    );
+
+    private final MethodHandle credUiPrompt;
+    private final MethodHandle messageBox;
+
+    public NativeAskPassUi() {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup credui = SymbolLookup.libraryLookup("Credui.dll", Arena.global());
+        SymbolLookup user32 = SymbolLookup.libraryLookup("User32.dll", Arena.global());
+
+        this.credUiPrompt = linker.downcallHandle(
+                credui.find("CredUIPromptForCredentialsW").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT,
+                        ADDRESS, JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT));
+        this.messageBox = linker.downcallHandle(
+                user32.find("MessageBoxW").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT));
+    }
+
+    @Override
+    public String name() {
+        return "native";
+    }
+
+    @Override
+    public String ask(AskPassPrompt prompt) {
+        try {
+            return prompt.secret() ? askSecret(prompt) : prompt.confirmAnswer(confirm(prompt.text()));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("askpass dialog failed: " + t.getMessage(), t);
+        }
+    }
+
+    private boolean confirm(String text) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            int r = (int) messageBox.invokeExact(MemorySegment.NULL, wide(arena, text), wide(arena, TITLE),
+                    MB_YESNO | MB_ICONWARNING | MB_DEFBUTTON2 | MB_SETFOREGROUND | MB_TOPMOST);
+            return r == IDYES;
+        }
+    }
+
+    // ユーザー名欄は読み取り専用で、接続先や鍵の表示に使う
+    private String askSecret(AskPassPrompt prompt) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment info = arena.allocate(CREDUI_INFOW);
+            info.set(JAVA_INT, offset("cbSize"), (int) CREDUI_INFOW.byteSize());
+            info.set(ADDRESS, offset("pszMessageText"), wide(arena, prompt.text()));
+            info.set(ADDRESS, offset("pszCaptionText"), wide(arena, TITLE));
+
+            MemorySegment user = arena.allocate((CREDUI_MAX_USERNAME_LENGTH + 1) * 2L, 2);
+            String subject = prompt.subject();
+            if (subject.length() > CREDUI_MAX_USERNAME_LENGTH) subject = subject.substring(0, CREDUI_MAX_USERNAME_LENGTH);
+            MemorySegment.copy(wide(arena, subject), 0, user, 0, (subject.length() + 1) * 2L);
+            MemorySegment password = arena.allocate((CREDUI_MAX_PASSWORD_LENGTH + 1) * 2L, 2);
+            MemorySegment save = arena.allocate(JAVA_INT);
+            try {
+                int r = (int) credUiPrompt.invokeExact(info, wide(arena, "ssh"), MemorySegment.NULL, 0,
+                        user, CREDUI_MAX_USERNAME_LENGTH + 1, password, CREDUI_MAX_PASSWORD_LENGTH + 1, save,
+                        CREDUI_FLAGS_GENERIC_CREDENTIALS | CREDUI_FLAGS_ALWAYS_SHOW_UI
+                                | CREDUI_FLAGS_DO_NOT_PERSIST | CREDUI_FLAGS_KEEP_USERNAME);
+                if (r == ERROR_CANCELLED) return null;
+                if (r != 0) throw new IllegalStateException("CredUIPromptForCredentialsW failed: " + r);
+                return readWide(password);
+            } finally {
+                password.fill((byte) 0);
+            }
+        }
+    }
+
+    // 表示はできないので、ダウンコールの解決 (クラス生成) までを済ませる
+    @Override
+    public void warmUp() {
+        try (Arena arena = Arena.ofConfined()) {
+            readWide(wide(arena, TITLE));
+            arena.allocate(CREDUI_INFOW).set(JAVA_INT, offset("cbSize"), (int) CREDUI_INFOW.byteSize());
+        }
+    }
+
+    private static long offset(String field) {
+        return CREDUI_INFOW.byteOffset(groupElement(field));
+    }
+
+    private static MemorySegment wide(Arena arena, String s) {
+        byte[] b = (s + "\0").getBytes(StandardCharsets.UTF_16LE);
+        MemorySegment seg = arena.allocate(b.length);
+        MemorySegment.copy(b, 0, seg, JAVA_BYTE, 0, b.length);
+        return seg;
+    }
+
+    private static String readWide(MemorySegment seg) {
+        int n = 0;
+        while (n < seg.byteSize() / 2 && seg.getAtIndex(JAVA_CHAR, n) != 0) n++;
+        char[] c = new char[n];
+        MemorySegment.copy(seg, JAVA_CHAR, 0, c, 0, n);
+        return new String(c);
+    }
+}
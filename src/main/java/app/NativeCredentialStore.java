@@ -0,0 +1,129 @@
+package app;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+// advapi32 の CredWriteW / CredDeleteW を FFM で直接呼ぶ。子プロセスを起動せず、パスワードもコマンドラインに出ない
+public final class NativeCredentialStore implements CredentialStore {
+
+    private static final int CRED_TYPE_GENERIC = 1;
+    // ログオフで自動的に消えるので一時資格情報にはこれで十分
+    private static final int CRED_PERSIST_SESSION = 1;
+
+    // CREDENTIALW (x64)
+    private static final StructLayout CREDENTIALW = MemoryLayout.structLayout(
+            JAVA_INT.withName("Flags"),
+            JAVA_INT.withName("Type"),
+            ADDRESS.withName("TargetName"),
+            ADDRESS.withName("Comment"),
+            JAVA_INT.withName("LastWrittenLow"),
+            JAVA_INT.withName("LastWrittenHigh"),
+            JAVA_INT.withName("CredentialBlobSize"),
+            MemoryLayout.paddingLayout(4),
+            ADDRESS.withName("CredentialBlob"),
+            JAVA_INT.withName("Persist"),
+            JAVA_INT.withName("AttributeCount"),
+            ADDRESS.withName("Attributes"),
+            ADDRESS.withName("TargetAlias"),
+            ADDRESS.withName("UserName")
+    );
+
+    private static final StructLayout CAPTURE = Linker.Option.captureStateLayout();
+    private static final long LAST_ERROR = CAPTURE.byteOffset(groupElement("GetLastError"));
+
+    private final MethodHandle credWrite;
+    private final MethodHandle credDelete;
+
+    public NativeCredentialStore() {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup advapi = SymbolLookup.libraryLookup("Advapi32.dll", Arena.global());
+        Linker.Option lastError = Linker.Option.captureCallState("GetLastError");
+
+        this.credWrite = linker.downcallHandle(
+                advapi.find("CredWriteW").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT),
+                lastError);
+        this.credDelete = linker.downcallHandle(
+                advapi.find("CredDeleteW").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT),
+                lastError);
+    }
+
+    @Override
+    public String name() {
+        return "native";
+    }
+
+    @Override
+    public CredentialManager.BatchResult addAll(Collection<String> hosts, String username, String password) {
+        long t0 = System.nanoTime();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CAPTURE);
+            MemorySegment user = wide(arena, username == null ? "" : username, true);
+            MemorySegment blob = wide(arena, password == null ? "" : password, false);
+            try {
+                for (String h : CredentialManager.distinct(hosts)) {
+                    MemorySegment cred = arena.allocate(CREDENTIALW);
+                    cred.set(JAVA_INT, offset("Type"), CRED_TYPE_GENERIC);
+                    cred.set(ADDRESS, offset("TargetName"), wide(arena, CredentialManager.target(h), true));
+                    cred.set(JAVA_INT, offset("CredentialBlobSize"), (int) blob.byteSize());
+                    cred.set(ADDRESS, offset("CredentialBlob"), blob);
+                    cred.set(JAVA_INT, offset("Persist"), CRED_PERSIST_SESSION);
+                    cred.set(ADDRESS, offset("UserName"), user);
+
+                    int ok = (int) credWrite.invokeExact(state, cred, 0);
+                    result.put(h, ok != 0 ? 0 : state.get(JAVA_INT, LAST_ERROR));
+                }
+            } finally {
+                blob.fill((byte) 0);
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("CredWriteW failed: " + t.getMessage(), t);
+        }
+        return new CredentialManager.BatchResult(result, System.nanoTime() - t0);
+    }
+
+    @Override
+    public CredentialManager.BatchResult deleteAll(Collection<String> hosts) {
+        long t0 = System.nanoTime();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CAPTURE);
+            for (String h : CredentialManager.distinct(hosts)) {
+                MemorySegment target = wide(arena, CredentialManager.target(h), true);
+                int ok = (int) credDelete.invokeExact(state, target, CRED_TYPE_GENERIC, 0);
+                result.put(h, ok != 0 ? 0 : state.get(JAVA_INT, LAST_ERROR));
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("CredDeleteW failed: " + t.getMessage(), t);
+        }
+        return new CredentialManager.BatchResult(result, System.nanoTime() - t0);
+    }
+
+    private static long offset(String field) {
+        return CREDENTIALW.byteOffset(groupElement(field));
+    }
+
+    private static MemorySegment wide(Arena arena, String s, boolean nullTerminated) {
+        byte[] b = (nullTerminated ? s + "\0" : s).getBytes(StandardCharsets.UTF_16LE);
+        MemorySegment seg = arena.allocate(Math.max(1, b.length));
+        MemorySegment.copy(b, 0, seg, JAVA_BYTE, 0, b.length);
+        return b.length == 0 ? seg.asSlice(0, 0) : seg;
+    }
+}
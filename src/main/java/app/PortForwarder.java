@@ -0,0 +1,271 @@
+package app;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// アプリ内 TCP 中継。LOCAL_BIND で待ち受け、接続ごとに Upstream を開いて仮想スレッドで双方向に転送する。
+// 転送バッファは接続ごとに 1 回だけ確保する direct ByteBuffer を使い回す。
+public final class PortForwarder implements AutoCloseable {
+
+    public record Link(ReadableByteChannel in, WritableByteChannel out, AutoCloseable resource) {}
+
+    @FunctionalInterface
+    public interface Upstream {
+        Link open() throws IOException;
+    }
+
+    public record Stats(long connections, long activeConnections, long bytesUp, long bytesDown, long lastSetupMicros) {}
+
+    private static final int BUFFER_SIZE = Integer.getInteger("rdp.launcher.forwardBufferKb", 64) * 1024;
+
+    private final ServerSocketChannel server;
+    private final Upstream upstream;
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong bytesUp = new AtomicLong();
+    private final AtomicLong bytesDown = new AtomicLong();
+    private final AtomicLong lastSetupMicros = new AtomicLong(-1);
+
+    public PortForwarder(String localBind, int localPort, Upstream upstream) throws IOException {
+        this.upstream = upstream;
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(InetAddress.getByName(localBind), localPort), 50);
+
+        Thread.ofVirtual().name("rdp-launcher-forward-" + port()).start(this::acceptLoop);
+    }
+
+    public int port() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(connections.get(), active.get(), bytesUp.get(), bytesDown.get(), lastSetupMicros.get());
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(server);
+        for (SocketChannel c : clients) closeQuietly(c);
+        for (Link l : links) closeLink(l);
+        clients.clear();
+        links.clear();
+    }
+
+    // ---- upstreams ----
+
+    public static Upstream direct(String host, int port) {
+        return () -> {
+            SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return new Link(ch, ch, ch);
+        };
+    }
+
+    // ssh -D のマスターに SOCKS5 CONNECT して targetHost:targetPort へ繋ぐ
+    public static Upstream socks(String socksHost, int socksPort, String targetHost, int targetPort) {
+        return () -> {
+            socksHostName(targetHost);
+            SocketChannel ch = SocketChannel.open(new InetSocketAddress(socksHost, socksPort));
+            try {
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                socksConnect(ch, targetHost, targetPort);
+            } catch (IOException e) {
+                closeQuietly(ch);
+                throw e;
+            }
+            return new Link(ch, ch, ch);
+        };
+    }
+
+    // 接続ごとに ssh -W host:port を起動し、その stdio を上流として使う
+    public static Upstream sshStdio(List<String> command, Map<String, String> env, String errLog) {
+        return () -> {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            if (env != null) pb.environment().putAll(env);
+            Process p = pb.start();
+            try {
+                // 同じ errLog を接続ごとの ssh -W で共有し、サイズ上限でローテーションする
+                SshLogs.pump(p.getErrorStream(), errLog);
+            } catch (IOException e) {
+                p.destroyForcibly();
+                throw e;
+            }
+            return new Link(Channels.newChannel(p.getInputStream()), Channels.newChannel(p.getOutputStream()),
+                    p::destroyForcibly);
+        };
+    }
+
+    // ポートだけ先に確保しておき、上流はトンネル確立後に差し込む
+    public static Upstream deferred(CompletableFuture<Upstream> upstream) {
+        return () -> {
+            try {
+                return upstream.get().open();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the tunnel", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Tunnel failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        };
+    }
+
+    // ---- relay ----
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread.ofVirtual().name("rdp-launcher-forward-conn").start(() -> handle(client));
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        clients.add(client);
+        connections.incrementAndGet();
+        active.incrementAndGet();
+        Link link = null;
+        try {
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            long t0 = System.nanoTime();
+            link = upstream.open();
+            lastSetupMicros.set((System.nanoTime() - t0) / 1000);
+            links.add(link);
+
+            Link l = link;
+            Thread up = Thread.ofVirtual().name("rdp-launcher-forward-up")
+                    .start(() -> pump(client, l.out(), bytesUp, () -> halfClose(l.out())));
+            pump(l.in(), client, bytesDown, () -> shutdownOutput(client));
+            up.join();
+        } catch (Exception ignored) {
+        } finally {
+            closeQuietly(client);
+            clients.remove(client);
+            if (link != null) {
+                closeLink(link);
+                links.remove(link);
+            }
+            active.decrementAndGet();
+        }
+    }
+
+    private static void pump(ReadableByteChannel from, WritableByteChannel to, AtomicLong counter, Runnable onEof) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            while (from.read(buf) >= 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    counter.addAndGet(to.write(buf));
+                }
+                buf.clear();
+            }
+            onEof.run();
+        } catch (ClosedChannelException ignored) {
+        } catch (IOException e) {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    static void socksConnect(SocketChannel ch, String host, int port) throws IOException {
+        ByteBuffer hello = ByteBuffer.wrap(new byte[] { 5, 1, 0 });
+        while (hello.hasRemaining()) ch.write(hello);
+        ByteBuffer method = readFully(ch, 2);
+        if (method.get(0) != 5 || method.get(1) != 0) throw new IOException("SOCKS auth rejected");
+
+        byte[] h = socksHostName(host);
+        ByteBuffer req = ByteBuffer.allocate(7 + h.length);
+        req.put((byte) 5).put((byte) 1).put((byte) 0).put((byte) 3).put((byte) h.length).put(h).putShort((short) port);
+        req.flip();
+        while (req.hasRemaining()) ch.write(req);
+
+        ByteBuffer head = readFully(ch, 4);
+        if (head.get(1) != 0) throw new IOException("SOCKS connect to " + host + ":" + port + " failed (rep=" + head.get(1) + ")");
+        int addrLen = switch (head.get(3)) {
+            case 1 -> 4;
+            case 4 -> 16;
+            case 3 -> readFully(ch, 1).get(0) & 0xff;
+            default -> throw new IOException("SOCKS reply has unknown address type " + head.get(3));
+        };
+        readFully(ch, addrLen + 2);
+    }
+
+    // SOCKS5 のドメイン名は長さ 1 バイト。255 バイトを超える名前は長さが桁あふれして別の名前として送られる
+    private static byte[] socksHostName(String host) throws IOException {
+        byte[] h = host.getBytes(StandardCharsets.US_ASCII);
+        if (h.length == 0 || h.length > 255) {
+            throw new IOException("RDP host name must be 1-255 bytes for SOCKS5 (got " + h.length + "): "
+                    + host.substring(0, Math.min(host.length(), 40)) + (host.length() > 40 ? "~" : ""));
+        }
+        return h;
+    }
+
+    private static ByteBuffer readFully(SocketChannel ch, int n) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(n);
+        while (b.hasRemaining()) {
+            if (ch.read(b) < 0) throw new IOException("SOCKS proxy closed the connection");
+        }
+        b.flip();
+        return b;
+    }
+
+    private static void shutdownOutput(SocketChannel ch) {
+        try {
+            ch.shutdownOutput();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ssh -W の stdin は閉じて EOF を伝え、ソケットは片側だけ閉じる
+    private static void halfClose(WritableByteChannel out) {
+        if (out instanceof SocketChannel ch) {
+            shutdownOutput(ch);
+        } else {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeLink(Link l) {
+        try {
+            l.resource().close();
+        } catch (Exception ignored) {
+        }
+        closeQuietly(l.in());
+        closeQuietly(l.out());
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
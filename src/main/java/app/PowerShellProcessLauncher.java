@@ -0,0 +1,132 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public final class PowerShellProcessLauncher implements ProcessLauncher {
+
+    @Override
+    public String name() {
+        return "powershell";
+    }
+
+    @Override
+    public int runAndWait(String exe, List<String> args) throws IOException, InterruptedException {
+
+        String argList = toPsArgList(args);
+
+        String ps = ""
+                + "$p = Start-Process -FilePath '" + esc(exe) + "' "
+                + " -ArgumentList @(" + argList + ") "
+                + " -WindowStyle Hidden -Wait -PassThru; "
+                + "exit $p.ExitCode;";
+
+        Process p = powershell(ps).start();
+        return p.waitFor();
+    }
+
+    // powershell.exe の起動は 1 回だけにして、中で順に Start-Process する
+    @Override
+    public int[] runAllAndWait(List<HiddenExec.Command> commands) throws IOException, InterruptedException {
+        StringBuilder ps = new StringBuilder();
+        for (HiddenExec.Command c : commands) {
+            ps.append("$p = Start-Process -FilePath '").append(esc(c.exe())).append("' ")
+                    .append(" -ArgumentList @(").append(toPsArgList(c.args())).append(") ")
+                    .append(" -WindowStyle Hidden -Wait -PassThru; ")
+                    .append("Write-Output $p.ExitCode;");
+        }
+
+        ProcessBuilder pb = powershell(ps.toString());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+
+        int[] exits = new int[commands.size()];
+        Arrays.fill(exits, -1);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), Charset.defaultCharset()))) {
+            String line;
+            int i = 0;
+            while ((line = br.readLine()) != null && i < exits.length) {
+                try {
+                    exits[i] = Integer.parseInt(line.trim());
+                    i++;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        p.waitFor();
+        return exits;
+    }
+
+    @Override
+    public HiddenExec.StartResult startWithLogs(
+            String exe,
+            List<String> args,
+            String outLog,
+            String errLog,
+            Map<String, String> extraEnv // child に渡す環境変数
+    ) throws IOException, InterruptedException {
+
+        String argList = toPsArgList(args);
+
+        String envLines = "";
+        if (extraEnv != null && !extraEnv.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (var e : extraEnv.entrySet()) {
+                sb.append("$env:").append(e.getKey()).append("='").append(esc(e.getValue())).append("';");
+            }
+            envLines = sb.toString();
+        }
+
+        String ps = ""
+                + envLines
+                + "$p = Start-Process -FilePath '" + esc(exe) + "' "
+                + " -ArgumentList @(" + argList + ") "
+                + " -WindowStyle Hidden -PassThru "
+                + " -RedirectStandardOutput '" + esc(outLog) + "' "
+                + " -RedirectStandardError '" + esc(errLog) + "'; "
+                + "Write-Output $p.Id;";
+
+        ProcessBuilder pb = powershell(ps);
+        pb.redirectErrorStream(true);
+
+        Process p = pb.start();
+
+        String pidLine;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), Charset.defaultCharset()))) {
+            pidLine = br.readLine();
+        }
+        int exit = p.waitFor();
+        if (exit != 0 || pidLine == null || pidLine.isBlank()) {
+            throw new IOException("Failed to start hidden process. exe=" + exe + " exit=" + exit + " pidLine=" + pidLine);
+        }
+
+        int pid = Integer.parseInt(pidLine.trim());
+        return new HiddenExec.StartResult(pid, outLog, errLog);
+    }
+
+    private static ProcessBuilder powershell(String script) {
+        return new ProcessBuilder(
+                "powershell.exe",
+                "-NoProfile",
+                "-ExecutionPolicy", "Bypass",
+                "-Command", script
+        );
+    }
+
+    private static String toPsArgList(List<String> args) {
+        if (args == null) args = List.of();
+        return args.stream()
+                .map(a -> "'" + esc(a) + "'")
+                .collect(Collectors.joining(","));
+    }
+
+    static String esc(String s) {
+        return (s == null) ? "" : s.replace("'", "''");
+    }
+}
@@ -0,0 +1,24 @@
+package app;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// HiddenExec の起動方式 (direct / powershell)
+public interface ProcessLauncher {
+
+    String name();
+
+    int runAndWait(String exe, List<String> args) throws IOException, InterruptedException;
+
+    // 複数コマンドを 1 往復で実行し、入力順に終了コードを返す
+    int[] runAllAndWait(List<HiddenExec.Command> commands) throws IOException, InterruptedException;
+
+    HiddenExec.StartResult startWithLogs(
+            String exe,
+            List<String> args,
+            String outLog,
+            String errLog,
+            Map<String, String> extraEnv
+    ) throws IOException, InterruptedException;
+}
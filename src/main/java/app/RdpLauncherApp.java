@@ -1,21 +1,28 @@
 package app;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Comparator;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.collections.ListChangeListener;
+import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -23,14 +30,17 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.Separator;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TitledPane;
+import javafx.scene.control.TreeView;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
@@ -39,28 +49,40 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class RdpLauncherApp extends Application {
 
     private static final String LOCAL_BIND = "127.0.0.1";
-    private static final String LOOPBACK_HOST_FOR_RDP = "localhost";
     private static final String MSTSC_EXE = "C:\\Windows\\System32\\mstsc.exe";
 
+    // ssh 側の待ち時間 (SshHelpers.READY_TIMEOUT) に合わせる
+    private static final Duration ASKPASS_TIMEOUT = Duration.ofSeconds(Long.getLong("rdp.launcher.askpassTimeoutSeconds", 120));
     private static final Path APP_DIR = Paths.get(System.getProperty("user.home"), "rdp-launcher");
     private static final Path SESSIONS_CSV = APP_DIR.resolve("sessions.csv");
+    private static final Path SESSIONS_DB = APP_DIR.resolve("sessions.db");
     private static final Path APP_KNOWN_HOSTS = APP_DIR.resolve("known_hosts");
+    // 起動時に一覧へ流し込む 1 回あたりの件数 (1 フレームに収まる程度)
+    private static final int LOAD_CHUNK = 5000;
 
     private static final String TITLE = "Windows Remote Desktop Launcher v0.1.2";
 
-    private final Connection connection = new Connection(LOCAL_BIND, LOOPBACK_HOST_FOR_RDP, MSTSC_EXE, APP_DIR, APP_KNOWN_HOSTS);
-    private final ObservableList<Session> sessions = FXCollections.observableArrayList();
+    private final Connection connection = new Connection(LOCAL_BIND, MSTSC_EXE, APP_DIR, APP_KNOWN_HOSTS);
+    private final SessionRegistry sessions = new SessionRegistry();
     private final AtomicBoolean disconnecting = new AtomicBoolean(false);
 
     private ListView<Session> sessionList;
+    private SessionTree sessionTree;
+    private TextField searchField;
+    private Label sessionsLabel;
+    private final SessionSearch search = new SessionSearch(this::showSearchResult);
 
     private TextField nameField;
+    private TextField groupField;
+    private TextField tagsField;
     private CheckBox useBastionChk;
     private Label bastionAliasLabel;
     private TextField sshAliasField;
@@ -84,6 +106,15 @@ public class RdpLauncherApp extends Application {
     private CheckBox autoSaveUserChk;
 
     private TextArea logArea;
+    private LogSink logSink;
+    // 起動時は別スレッドで開くので、読み込みが終わるまで null
+    private volatile SessionRepository sessionRepo;
+    private final ExecutorService repoWriter =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("rdp-launcher-repo-writer").factory());
+    private final StartupTrace startup = new StartupTrace();
+    private final MonitorTopologyService monitorTopology =
+            new MonitorTopologyService(new MstscMonitorProbe(MSTSC_EXE), this::appendLog);
+    private boolean bulkLoading = false;
     private Label statusLabel;
 
     private Button newBtn;
@@ -98,8 +129,14 @@ public class RdpLauncherApp extends Application {
 
     @Override
     public void start(Stage stage) {
-        sessionList = new ListView<>(sessions);
+        startup.mark("launch");
+        AskPassServer.setPrompter(this::askPassPrompt);
+        monitorTopology.attachToScreens();
+
+        // 検索中は結果の一覧、それ以外はグループのツリーを表示する
+        sessionList = new ListView<>();
         sessionList.setPrefWidth(280);
+        sessionList.setVisible(false);
         sessionList.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> {
             if (loadingForm) return;
             if (newV != null) loadToForm(newV);
@@ -116,6 +153,37 @@ public class RdpLauncherApp extends Application {
             }
         });
 
+        sessionTree = new SessionTree(this::appendLog);
+        TreeView<Object> treeView = sessionTree.view();
+        treeView.setPrefWidth(280);
+        treeView.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> {
+            if (loadingForm || sessionTree.restoring()) return;
+            if (newV != null && newV.getValue() instanceof Session s) loadToForm(s);
+        });
+        treeView.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2 && sessionTree.selectedSession() != null) {
+                onConnect();
+            }
+        });
+        treeView.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER && sessionTree.selectedSession() != null) {
+                onConnect();
+                e.consume();
+            }
+        });
+
+        MenuItem connectGroupItem = new MenuItem("Connect all in group");
+        connectGroupItem.setOnAction(e -> onConnectGroup());
+        MenuItem prewarmGroupItem = new MenuItem("Pre-warm SSH tunnels");
+        prewarmGroupItem.setOnAction(e -> onPrewarmGroup());
+        ContextMenu groupMenu = new ContextMenu(connectGroupItem, prewarmGroupItem);
+        groupMenu.setOnShowing(e -> {
+            boolean group = sessionTree.selectedGroup() != null;
+            connectGroupItem.setDisable(!group);
+            prewarmGroupItem.setDisable(!group);
+        });
+        treeView.setContextMenu(groupMenu);
+
         buildForm();
         GridPane cred = buildCredentialPane();
         TitledPane credPane = new TitledPane("Login", cred);
@@ -131,6 +199,9 @@ public class RdpLauncherApp extends Application {
         detailsBtn = new Button("Display");
         detailsBtn.setOnAction(e -> onDetails());
 
+        Button metricsBtn = new Button("Metrics");
+        metricsBtn.setOnAction(e -> onMetrics());
+
         newBtn = new Button("New");
         saveBtn = new Button("Save");
         deleteBtn = new Button("Delete");
@@ -143,7 +214,7 @@ public class RdpLauncherApp extends Application {
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
 
-        HBox toolbar = new HBox(10, connectBtn, disconnectBtn, detailsBtn, spacer, newBtn, saveBtn, deleteBtn);
+        HBox toolbar = new HBox(10, connectBtn, disconnectBtn, detailsBtn, metricsBtn, spacer, newBtn, saveBtn, deleteBtn);
         toolbar.setAlignment(Pos.CENTER_LEFT);
 
         statusLabel = new Label("Ready");
@@ -154,20 +225,46 @@ public class RdpLauncherApp extends Application {
         logArea = new TextArea();
         logArea.setEditable(false);
         logArea.setWrapText(true);
+        logSink = new LogSink(logArea, APP_DIR.resolve("logs").resolve("launcher.log"));
+        logSink.start();
 
         VBox right = new VBox(10, rightTop, new Label("Log"), logArea);
         VBox.setVgrow(logArea, Priority.ALWAYS);
 
-        Label sessionsLabel = new Label("Sessions");
+        sessionsLabel = new Label("Sessions");
         Button newLeftBtn = new Button("New");
         newLeftBtn.setOnAction(e -> onNew());
 
-        HBox leftHeader = new HBox(10, sessionsLabel, newLeftBtn);
+        Button importBtn = new Button("Import");
+        importBtn.setOnAction(e -> onImport());
+        Button exportBtn = new Button("Export");
+        exportBtn.setOnAction(e -> onExport());
+
+        HBox leftHeader = new HBox(10, sessionsLabel, newLeftBtn, importBtn, exportBtn);
         leftHeader.setPadding(new Insets(10, 10, 0, 10));
 
-        VBox leftBox = new VBox(10, leftHeader, sessionList);
+        searchField = new TextField();
+        searchField.setPromptText("Search name / host / alias");
+        searchField.textProperty().addListener((obs, oldV, newV) -> onSearch(newV));
+        searchField.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE) {
+                searchField.clear();
+                e.consume();
+            } else if ((e.getCode() == KeyCode.DOWN || e.getCode() == KeyCode.ENTER) && !sessionList.getItems().isEmpty()) {
+                sessionList.requestFocus();
+                sessionList.getSelectionModel().select(0);
+                e.consume();
+            }
+        });
+        // 一覧が変わるたびに検索インデックスとツリーを直す (起動時の分割読み込み中は feedSessions が行う)
+        sessions.items().addListener((ListChangeListener<Session>) c -> {
+            if (!bulkLoading) onSessionsChanged(c);
+        });
+
+        StackPane sessionPane = new StackPane(treeView, sessionList);
+        VBox leftBox = new VBox(10, leftHeader, searchField, sessionPane);
         leftBox.setPadding(new Insets(0, 10, 10, 10));
-        VBox.setVgrow(sessionList, Priority.ALWAYS);
+        VBox.setVgrow(sessionPane, Priority.ALWAYS);
 
         BorderPane root = new BorderPane();
         root.setLeft(leftBox);
@@ -180,26 +277,30 @@ public class RdpLauncherApp extends Application {
         }
 
         stage.setTitle(TITLE);
-        stage.setScene(new Scene(root, 1120, 760));
+        Scene scene = new Scene(root, 1120, 760);
+        Runnable firstFrame = new Runnable() {
+            @Override public void run() {
+                startup.mark("first-frame");
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+            }
+        };
+        scene.addPostLayoutPulseListener(firstFrame);
+        stage.setScene(scene);
         stage.show();
 
-        try {
-            loadSessionsFromDisk();
-            if (!sessions.isEmpty()) {
-                sessionList.getSelectionModel().select(0);
-            } else {
-                onNew();
-            }
-        } catch (Exception ex) {
-            appendLog("[ERROR] Failed to load sessions: " + ex.getMessage());
-            onNew();
-        }
+        // 画面を先に出し、セッションの読み込みは別スレッドで行う
+        loadSessionsAsync();
     }
 
     private void buildForm() {
         nameField = new TextField();
         nameField.setPromptText("Session name");
 
+        groupField = new TextField();
+        groupField.setPromptText("Example: prod/customerA/tokyo");
+        tagsField = new TextField();
+        tagsField.setPromptText("Example: windows, sql, dmz");
+
         useBastionChk = new CheckBox("Use SSH tunnel");
         useBastionChk.setSelected(true);
         useBastionChk.selectedProperty().addListener((obs, oldV, newV) -> applyTransportUi());
@@ -248,6 +349,10 @@ public class RdpLauncherApp extends Application {
         int row = 0;
         mainForm.add(new Label("Name"), 0, row);
         mainForm.add(nameField, 1, row++);
+        mainForm.add(new Label("Group"), 0, row);
+        mainForm.add(groupField, 1, row++);
+        mainForm.add(new Label("Tags"), 0, row);
+        mainForm.add(tagsField, 1, row++);
         mainForm.add(new Label("SSH tunnel"), 0, row);
         mainForm.add(useBastionChk, 1, row++);
         mainForm.add(sshChainLabel, 0, row);
@@ -388,10 +493,10 @@ public class RdpLauncherApp extends Application {
             onSave();
         }
 
-        Session selected = sessionList.getSelectionModel().getSelectedItem();
+        Session selected = selectedSession();
         Session existing = (selected != null && selected.name().equalsIgnoreCase(base.name()))
                 ? selected
-                : (indexOfName(base.name()) >= 0 ? sessions.get(indexOfName(base.name())) : null);
+                : sessions.find(base.name());
 
         boolean fullscreen = existing != null && existing.fullscreen();
         Integer width = existing != null ? existing.width() : null;
@@ -421,25 +526,27 @@ public class RdpLauncherApp extends Application {
                 height,
                 multimon,
                 span,
-                existing != null ? norm(existing.selectedMonitors()) : norm(base.selectedMonitors())
+                existing != null ? norm(existing.selectedMonitors()) : norm(base.selectedMonitors()),
+                base.group(),
+                base.tags()
         );
 
-        Connection.Ui ui = new Connection.Ui() {
+        search.recordUse(effective.name(), System.currentTimeMillis());
+        connection.connect(effective, snapUser, snapDom, snapPass, connectUi());
+    }
+
+    private Connection.Ui connectUi() {
+        return new Connection.Ui() {
             @Override public void log(String s) { appendLog(s); }
             @Override public void status(String s) { setStatus(s); }
             @Override public void alert(String s) { alertDialog(s); }
             @Override public void setInputsDisabled(boolean disabled) { RdpLauncherApp.this.setInputsDisabled(disabled); }
             @Override public void setConnected(boolean connected) {
-                Platform.runLater(() -> {
-                    connectBtn.setDisable(connected);
-                    disconnectBtn.setDisable(!connected);
-                });
+                Platform.runLater(() -> disconnectBtn.setDisable(!connected));
             }
             @Override public void runOnFx(Runnable r) { Platform.runLater(r); }
             @Override public void clearPassword() { passField.clear(); }
         };
-
-        connection.connect(effective, snapUser, snapDom, snapPass, ui);
     }
 
     private void onDisconnect() {
@@ -449,38 +556,62 @@ public class RdpLauncherApp extends Application {
         setStatus("Disconnecting...");
         Platform.runLater(() -> disconnectBtn.setDisable(true));
 
-        Connection.Ui ui = new Connection.Ui() {
-            @Override public void log(String s) { appendLog(s); }
-            @Override public void status(String s) { setStatus(s); }
-            @Override public void alert(String s) { alertDialog(s); }
-            @Override public void setInputsDisabled(boolean disabled) { RdpLauncherApp.this.setInputsDisabled(disabled); }
-            @Override public void setConnected(boolean connected) {
-                Platform.runLater(() -> {
-                    connectBtn.setDisable(connected);
-                    disconnectBtn.setDisable(!connected);
-                });
-            }
-            @Override public void runOnFx(Runnable r) { Platform.runLater(r); }
-            @Override public void clearPassword() { passField.clear(); }
-        };
+        Connection.Ui ui = connectUi();
 
-        new Thread(() -> {
-            try {
-                connection.disconnect(ui);
-                appendLog("[INFO] Disconnect requested (done)");
-            } catch (Throwable t) {
-                appendLog("[ERROR] Disconnect failed: " + t);
-                Platform.runLater(() -> alertDialog("Disconnect failed:\n" + t));
-                Platform.runLater(() -> disconnectBtn.setDisable(false));
-            } finally {
-                disconnecting.set(false);
+        // 選択中のセッションが接続中ならそれだけ、そうでなければ全接続を切断する
+        Session selected = selectedSession();
+        String target = selected != null && connection.isConnected(selected.name()) ? selected.name() : null;
+
+        // 実際の切断処理は Connection の仮想スレッド上で走る
+        try {
+            connection.disconnect(target, ui);
+            appendLog("[INFO] Disconnect requested (done)");
+        } catch (Throwable t) {
+            appendLog("[ERROR] Disconnect failed: " + t);
+            alertDialog("Disconnect failed:\n" + t);
+            Platform.runLater(() -> disconnectBtn.setDisable(false));
+        } finally {
+            disconnecting.set(false);
+        }
+    }
+
+    private void onConnectGroup() {
+        SessionGroups.Group g = sessionTree.selectedGroup();
+        if (g == null) return;
+        List<Session> members = sessionTree.groups().allIn(g.path());
+        if (members.isEmpty()) return;
+
+        Alert a = new Alert(Alert.AlertType.CONFIRMATION);
+        a.setTitle("Connect group");
+        a.setHeaderText(null);
+        a.setContentText("Connect " + members.size() + " session(s) in '" + g.name() + "'?");
+        Optional<ButtonType> r = a.showAndWait();
+        if (r.isEmpty() || r.get() != ButtonType.OK) return;
+
+        // 各セッションに保存済みのユーザー名で接続し、パスワードは mstsc に任せる (入力中のパスワードは別のセッションに送らない)。
+        // ユーザー名の無いセッションは飛ばしてログに残す (1 件ずつ警告ダイアログを出さない)
+        appendLog("[INFO] Connect group '" + g.name() + "': " + members.size() + " session(s)");
+        for (Session s : members) {
+            if (s.username() == null || s.username().isBlank()) {
+                appendLog("[WARN] Connect group: skipped '" + s.name() + "' (no username saved)");
+                continue;
             }
-        }, "rdp-launcher-disconnect").start();
+            search.recordUse(s.name(), System.currentTimeMillis());
+            connection.connect(s, "", "", "", connectUi());
+        }
+    }
+
+    private void onPrewarmGroup() {
+        SessionGroups.Group g = sessionTree.selectedGroup();
+        if (g == null) return;
+        connection.prewarm(sessionTree.groups().allIn(g.path()), connectUi());
     }
 
     private void setInputsDisabled(boolean connecting) {
         Platform.runLater(() -> {
             nameField.setDisable(connecting);
+            groupField.setDisable(connecting);
+            tagsField.setDisable(connecting);
             useBastionChk.setDisable(connecting);
             sshChainField.setDisable(connecting || !useBastionChk.isSelected());
             sshAliasField.setDisable(connecting || !useBastionChk.isSelected());
@@ -496,6 +627,7 @@ public class RdpLauncherApp extends Application {
             domainField.setDisable(connecting);
             autoSaveUserChk.setDisable(connecting);
             sessionList.setDisable(connecting);
+            sessionTree.view().setDisable(connecting);
             detailsBtn.setDisable(connecting);
             newBtn.setDisable(connecting);
             saveBtn.setDisable(connecting);
@@ -519,7 +651,10 @@ public class RdpLauncherApp extends Application {
             userField.clear();
             domainField.clear();
             passField.clear();
+            groupField.clear();
+            tagsField.clear();
             sessionList.getSelectionModel().clearSelection();
+            sessionTree.clearSelection();
             applyTransportUi();
         } finally {
             loadingForm = false;
@@ -528,11 +663,11 @@ public class RdpLauncherApp extends Application {
     }
 
     private void onSave() {
+        if (sessionsLoading()) return;
         Session base = readFromFormValidated();
         if (base == null) return;
 
-        int idx = indexOfName(base.name());
-        Session existing = idx >= 0 ? sessions.get(idx) : null;
+        Session existing = sessions.find(base.name());
 
         String username;
         String domain;
@@ -569,25 +704,20 @@ public class RdpLauncherApp extends Application {
                 height,
                 multimon,
                 span,
-                existing != null ? norm(existing.selectedMonitors()) : ""
+                existing != null ? norm(existing.selectedMonitors()) : "",
+                base.group(),
+                base.tags()
         );
 
-        if (idx >= 0) sessions.set(idx, merged);
-        else sessions.add(merged);
-
-        FXCollections.sort(sessions, Comparator.comparing(Session::name, String.CASE_INSENSITIVE_ORDER));
-        sessionList.getSelectionModel().select(merged);
+        sessions.put(merged);
+        selectSession(merged);
 
-        try {
-            saveSessionsToDisk();
-            appendLog("[INFO] Saved: " + merged.name());
-        } catch (Exception ex) {
-            appendLog("[ERROR] Save failed: " + ex.getMessage());
-        }
+        persist(repo -> repo.upsert(merged), "[INFO] Saved: " + merged.name(), "[ERROR] Save failed: ");
     }
 
     private void onDelete() {
-        Session sel = sessionList.getSelectionModel().getSelectedItem();
+        if (sessionsLoading()) return;
+        Session sel = selectedSession();
         if (sel == null) {
             alertDialog("Select a session to delete.");
             return;
@@ -600,20 +730,132 @@ public class RdpLauncherApp extends Application {
         Optional<ButtonType> r = a.showAndWait();
         if (r.isEmpty() || r.get() != ButtonType.OK) return;
 
-        sessions.remove(sel);
+        sessions.remove(sel.name());
+        persist(repo -> repo.delete(sel.name()), "[INFO] Deleted: " + sel.name(), "[ERROR] Delete failed: ");
+        onNew();
+    }
+    private FileChooser sessionFileChooser(String title) {
+        FileChooser fc = new FileChooser();
+        fc.setTitle(title);
+        fc.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV (RFC 4180)", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl", "*.ndjson"));
+        return fc;
+    }
+
+    private void onImport() {
+        if (sessionsLoading()) return;
+        File f = sessionFileChooser("Import sessions").showOpenDialog(mainForm.getScene().getWindow());
+        if (f == null) return;
+
+        Path file = f.toPath();
+        appendLog("[INFO] Importing sessions: " + file);
+        // 大きな CMDB エクスポートでも UI を止めない
+        Thread.ofVirtual().name("rdp-launcher-import").start(() -> {
+            try {
+                SessionTransfer.Result r = SessionTransfer.importFile(file, sessionRepo);
+                for (SessionCsv.RowError e : r.errors()) {
+                    appendLog("[WARN] Import line " + e.line() + ": " + e.message());
+                }
+                if (r.errorCount() > r.errors().size()) {
+                    appendLog("[WARN] Import: " + (r.errorCount() - r.errors().size()) + " more row error(s) not shown");
+                }
+                appendLog("[INFO] Imported " + r.rows() + " session(s), " + r.errorCount() + " error(s) in "
+                        + r.elapsedMillis() + " ms (" + r.rowsPerSecond() + " rows/s)");
+
+                List<Session> all = sessionRepo.loadAll();
+                Platform.runLater(() -> sessions.setAll(all));
+            } catch (Exception ex) {
+                appendLog("[ERROR] Import failed: " + ex.getMessage());
+            }
+        });
+    }
+
+    private void onExport() {
+        if (sessionsLoading()) return;
+        File f = sessionFileChooser("Export sessions").showSaveDialog(mainForm.getScene().getWindow());
+        if (f == null) return;
+
+        Path file = f.toPath();
+        List<Session> snapshot = List.copyOf(sessions.items());
+        Thread.ofVirtual().name("rdp-launcher-export").start(() -> {
+            try {
+                SessionTransfer.Result r = SessionTransfer.exportFile(file, snapshot);
+                appendLog("[INFO] Exported " + r.rows() + " session(s) to " + file + " in " + r.elapsedMillis() + " ms");
+            } catch (Exception ex) {
+                appendLog("[ERROR] Export failed: " + ex.getMessage());
+            }
+        });
+    }
+
+    private void onMetrics() {
+        ConnectMetrics metrics = connection.metrics();
+
+        TextArea view = new TextArea();
+        view.setEditable(false);
+        view.setStyle("-fx-font-family: 'Consolas', monospace;");
+        view.setPrefColumnCount(100);
+        view.setPrefRowCount(24);
+
+        Runnable refresh = () -> {
+            String live = metrics.toText();
+            view.setText(live + System.lineSeparator() + "History (events.bin): loading...");
+            // 過去分はジャーナルを読むので FX スレッド外で集計する
+            Thread.ofVirtual().start(() -> {
+                String history;
+                try {
+                    history = "History (events.bin): " + connection.timeToDesktop(null);
+                } catch (IOException ex) {
+                    history = "History (events.bin): " + ex.getMessage();
+                }
+                int port = metrics.httpPort();
+                String text = live + System.lineSeparator() + history
+                        + (port > 0 ? System.lineSeparator() + "HTTP: http://127.0.0.1:" + port + "/metrics" : "");
+                Platform.runLater(() -> view.setText(text));
+            });
+        };
+        refresh.run();
+
+        ButtonType refreshBt = new ButtonType("Refresh");
+        ButtonType jsonBt = new ButtonType("Export JSON");
+        ButtonType promBt = new ButtonType("Export Prometheus");
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Connect metrics");
+        dialog.setResizable(true);
+        dialog.getDialogPane().setContent(view);
+        dialog.getDialogPane().getButtonTypes().addAll(refreshBt, jsonBt, promBt, ButtonType.CLOSE);
+
+        // Close 以外のボタンではダイアログを閉じない
+        dialog.getDialogPane().lookupButton(refreshBt).addEventFilter(ActionEvent.ACTION, e -> {
+            e.consume();
+            refresh.run();
+        });
+        dialog.getDialogPane().lookupButton(jsonBt).addEventFilter(ActionEvent.ACTION, e -> {
+            e.consume();
+            exportMetrics(metrics, APP_DIR.resolve("metrics.json"));
+        });
+        dialog.getDialogPane().lookupButton(promBt).addEventFilter(ActionEvent.ACTION, e -> {
+            e.consume();
+            exportMetrics(metrics, APP_DIR.resolve("metrics.prom"));
+        });
+        dialog.showAndWait();
+    }
+
+    private void exportMetrics(ConnectMetrics metrics, Path file) {
         try {
-            saveSessionsToDisk();
-            appendLog("[INFO] Deleted: " + sel.name());
-        } catch (Exception ex) {
-            appendLog("[ERROR] Save failed: " + ex.getMessage());
+            appendLog("[INFO] Metrics exported: " + metrics.exportTo(file));
+        } catch (IOException ex) {
+            appendLog("[ERROR] Metrics export failed: " + ex.getMessage());
         }
-        onNew();
     }
+
     private void onDetails() {
+        if (sessionsLoading()) return;
         Session base = readFromFormValidated();
         if (base == null) return;
 
-        Session sel = sessionList.getSelectionModel().getSelectedItem();
+        Session sel = selectedSession();
         Session cur = (sel != null && sel.name().equalsIgnoreCase(base.name())) ? sel : base;
         final String[] selectedMonitors = { norm(cur.selectedMonitors()) };
 
@@ -647,7 +889,7 @@ public class RdpLauncherApp extends Application {
         Button chooseMonitorsBtn = new Button("Choose monitors...");
         chooseMonitorsBtn.setOnAction(e -> {
             MonitorSelectionSupport.SelectionResult result =
-                    MonitorSelectionSupport.showDialog(mainForm.getScene().getWindow(), MSTSC_EXE, selectedMonitors[0]);
+                    MonitorSelectionSupport.showDialog(mainForm.getScene().getWindow(), monitorTopology, selectedMonitors[0]);
             if (result != null) {
                 selectedMonitors[0] = result.toCsv();
                 selectedMonitorsLabel.setText(formatSelectedMonitorsText(selectedMonitors[0]));
@@ -715,32 +957,36 @@ public class RdpLauncherApp extends Application {
                     h,
                     multimonChk.isSelected(),
                     spanChk.isSelected(),
-                    selectedMonitors[0]
+                    selectedMonitors[0],
+                    base.group(),
+                    base.tags()
             );
 
-            int idx = indexOfName(updated.name());
-            if (idx >= 0) sessions.set(idx, updated);
-            else sessions.add(updated);
+            sessions.put(updated);
+            selectSession(updated);
 
-            FXCollections.sort(sessions, Comparator.comparing(Session::name, String.CASE_INSENSITIVE_ORDER));
-            sessionList.getSelectionModel().select(updated);
+            persist(repo -> repo.upsert(updated), "[INFO] Saved details: " + updated.name(), "[ERROR] Save details failed: ");
+        });
+    }
+
+    private interface RepoWrite {
+        void run(SessionRepository repo) throws IOException;
+    }
 
+    // 書き込みは 1 件ごとに fsync するので FX スレッドでは行わない。
+    // 単一スレッドで順に書くので、保存 → 削除のような連続操作も画面と同じ順でストアに届く
+    private void persist(RepoWrite write, String done, String failed) {
+        SessionRepository repo = sessionRepo;
+        repoWriter.execute(() -> {
             try {
-                saveSessionsToDisk();
-                appendLog("[INFO] Saved details: " + updated.name());
+                write.run(repo);
+                appendLog(done);
             } catch (Exception ex) {
-                appendLog("[ERROR] Save details failed: " + ex.getMessage());
+                appendLog(failed + ex.getMessage());
             }
         });
     }
 
-    private int indexOfName(String name) {
-        for (int i = 0; i < sessions.size(); i++) {
-            if (sessions.get(i).name().equalsIgnoreCase(name)) return i;
-        }
-        return -1;
-    }
-
     private Session readFromFormValidated() {
         String name = norm(nameField.getText());
         boolean useBastion = useBastionChk.isSelected();
@@ -804,7 +1050,9 @@ public class RdpLauncherApp extends Application {
                 null,
                 false,
                 false,
-                ""
+                "",
+                SessionGroups.normalizeGroup(groupField.getText()),
+                SessionGroups.normalizeTags(tagsField.getText())
         );
     }
 
@@ -812,6 +1060,8 @@ public class RdpLauncherApp extends Application {
         loadingForm = true;
         try {
             nameField.setText(s.name());
+            groupField.setText(s.group() == null ? "" : s.group());
+            tagsField.setText(s.tags() == null ? "" : s.tags());
             useBastionChk.setSelected(s.useBastion());
             sshChainField.setText(buildSshChain(s.jumpHosts(), s.sshAlias()));
             sshAliasField.setText(s.sshAlias() == null ? "" : s.sshAlias());
@@ -829,107 +1079,107 @@ public class RdpLauncherApp extends Application {
             loadingForm = false;
         }
     }
-    private void loadSessionsFromDisk() throws IOException {
-        Files.createDirectories(APP_DIR);
-        if (!Files.exists(SESSIONS_CSV)) return;
+    private void loadSessionsAsync() {
+        setStatus("Loading sessions...");
+        Thread.ofVirtual().name("rdp-launcher-load").start(() -> {
+            long t0 = System.nanoTime();
+            try {
+                SessionRepository repo = LogSessionRepository.open(SESSIONS_DB, SESSIONS_CSV);
+                List<Session> loaded = new ArrayList<>(repo.loadAll());
+                loaded.sort(SessionRegistry.ORDER);
+                startup.mark("sessions-read");
+                long readMillis = (System.nanoTime() - t0) / 1_000_000;
+                Platform.runLater(() -> {
+                    sessionRepo = repo;
+                    appendLog("[INFO] Loaded sessions: " + loaded.size() + " (" + SESSIONS_DB + ", " + readMillis + " ms)");
+                    feedSessions(loaded, 0);
+                });
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    appendLog("[ERROR] Failed to load sessions: " + ex.getMessage());
+                    setStatus("Ready");
+                    onNew();
+                    startupInteractive();
+                });
+            }
+        });
+        Thread.ofVirtual().name("rdp-launcher-history").start(() -> {
+            try {
+                search.recordUse(connection.lastConnected());
+            } catch (IOException ex) {
+                appendLog("[WARN] Failed to read connection history: " + ex.getMessage());
+            }
+        });
+    }
 
-        List<String> lines = Files.readAllLines(SESSIONS_CSV, Charset.forName("UTF-8"));
-        for (String line : lines) {
-            if (line.isBlank()) continue;
-            if (line.startsWith("#")) continue;
-            if (line.toLowerCase().startsWith("name,")) continue;
+    // LOAD_CHUNK 件ずつ 1 パルスに 1 回流し込み、最初と最後のまとまりでツリーと検索を作り直す
+    private void feedSessions(List<Session> loaded, int from) {
+        int to = Math.min(loaded.size(), from + LOAD_CHUNK);
+        boolean last = to >= loaded.size();
+        bulkLoading = true;
+        try {
+            sessions.appendSorted(loaded.subList(from, to));
+        } finally {
+            bulkLoading = false;
+        }
 
-            String[] parts = line.split(",", -1);
-            if (parts.length < 6) continue;
+        if (!last) {
+            if (from == 0) refreshSessionViews();
+            sessionsLabel.setText("Sessions (loading " + to + "/" + loaded.size() + ")");
+            Platform.runLater(() -> feedSessions(loaded, to));
+            return;
+        }
 
-            int i = 0;
-            String name = parts[i++].trim();
-            boolean useBastion = Boolean.parseBoolean(parts[i++].trim());
-            String sshAlias = parts[i++].trim();
-            String sshOptions = parts[i++].trim();
-            String rdpHost = parts[i++].trim();
+        startup.mark("sessions-shown");
+        sessionTree.onNextApply(this::startupInteractive);
+        refreshSessionViews();
+        setStatus("Ready");
+        if (!sessions.isEmpty()) {
+            selectSession(sessions.items().get(0));
+        } else {
+            onNew();
+        }
+    }
 
-            int rdpPort;
-            try {
-                rdpPort = Integer.parseInt(parts[i++].trim());
-            } catch (NumberFormatException e) {
-                continue;
-            }
+    // 1 件の保存・削除はツリーをその場で直し、一括読み込み・インポートのときだけ作り直す
+    private void onSessionsChanged(ListChangeListener.Change<? extends Session> c) {
+        List<Session> removed = new ArrayList<>();
+        List<Session> added = new ArrayList<>();
+        while (c.next()) {
+            removed.addAll(c.getRemoved());
+            added.addAll(c.getAddedSubList());
+        }
+        if (removed.size() > 1 || added.size() > 1
+                || !sessionTree.update(removed.isEmpty() ? null : removed.get(0), added.isEmpty() ? null : added.get(0))) {
+            refreshSessionViews();
+            return;
+        }
+        search.reindex(List.copyOf(sessions.items()));
+        if (!search.active()) updateSessionsLabel(sessions.size());
+    }
 
-            String username = parts.length > i ? parts[i++].trim() : "";
-            String domain = parts.length > i ? parts[i++].trim() : "";
-            boolean fullscreen = parts.length > i && Boolean.parseBoolean(parts[i++].trim());
-            Integer width = parts.length > i ? parseNullableInt(parts[i++]) : null;
-            Integer height = parts.length > i ? parseNullableInt(parts[i++]) : null;
-            boolean multimon = parts.length > i && Boolean.parseBoolean(parts[i++].trim());
-            boolean span = parts.length > i && Boolean.parseBoolean(parts[i++].trim());
-
-            String jumpHosts = parts.length > i ? parts[i++].trim() : "";
-            boolean useRdGateway = parts.length > i && Boolean.parseBoolean(parts[i++].trim());
-            String rdGatewayHost = parts.length > i ? parts[i++].trim() : "";
-            boolean rdGatewayUseCurrentUser = parts.length > i && Boolean.parseBoolean(parts[i++].trim());
-            boolean rdGatewayShareCreds = parts.length > i ? Boolean.parseBoolean(parts[i++].trim()) : true;
-            String selectedMonitors = parts.length > i ? parts[i++].trim() : "";
-
-            sessions.add(new Session(
-                    name,
-                    useBastion,
-                    sshAlias,
-                    jumpHosts,
-                    sshOptions,
-                    useRdGateway,
-                    rdGatewayHost,
-                    rdGatewayUseCurrentUser,
-                    rdGatewayShareCreds,
-                    rdpHost,
-                    rdpPort,
-                    username,
-                    domain,
-                    fullscreen,
-                    width,
-                    height,
-                    multimon,
-                    span,
-                    selectedMonitors
-            ));
-        }
-
-        FXCollections.sort(sessions, Comparator.comparing(Session::name, String.CASE_INSENSITIVE_ORDER));
-        appendLog("[INFO] Loaded sessions: " + sessions.size() + " (" + SESSIONS_CSV + ")");
-    }
-
-    private void saveSessionsToDisk() throws IOException {
-        Files.createDirectories(APP_DIR);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("name,useBastion,sshAlias,sshOptions,rdpHost,rdpPort,username,domain,fullscreen,width,height,multimon,span,jumpHosts,useRdGateway,rdGatewayHost,rdGatewayUseCurrentUser,rdGatewayShareCreds,selectedMonitors")
-                .append(System.lineSeparator());
-
-        for (Session s : sessions) {
-            sb.append(nullToEmpty(s.name())).append(",")
-                    .append(s.useBastion()).append(",")
-                    .append(nullToEmpty(s.sshAlias())).append(",")
-                    .append(nullToEmpty(s.sshOptions())).append(",")
-                    .append(nullToEmpty(s.rdpHost())).append(",")
-                    .append(s.rdpPort()).append(",")
-                    .append(nullToEmpty(s.username())).append(",")
-                    .append(nullToEmpty(s.domain())).append(",")
-                    .append(s.fullscreen()).append(",")
-                    .append(s.width() == null ? "" : s.width()).append(",")
-                    .append(s.height() == null ? "" : s.height()).append(",")
-                    .append(s.multimon()).append(",")
-                    .append(s.span()).append(",")
-                    .append(nullToEmpty(s.jumpHosts())).append(",")
-                    .append(s.useRdGateway()).append(",")
-                    .append(nullToEmpty(s.rdGatewayHost())).append(",")
-                    .append(s.rdGatewayUseCurrentUser()).append(",")
-                    .append(s.rdGatewayShareCreds()).append(",")
-                    .append(nullToEmpty(s.selectedMonitors()))
-                    .append(System.lineSeparator());
-        }
-
-        Files.writeString(SESSIONS_CSV, sb.toString(), Charset.forName("UTF-8"), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        appendLog("[INFO] Saved sessions: " + sessions.size() + " (" + SESSIONS_CSV + ")");
+    private void refreshSessionViews() {
+        List<Session> snapshot = List.copyOf(sessions.items());
+        search.reindex(snapshot);
+        sessionTree.refresh(snapshot);
+        if (!search.active()) updateSessionsLabel(sessions.size());
+    }
+
+    private void startupInteractive() {
+        startup.mark("interactive");
+        startup.record(connection.metrics());
+        appendLog("[INFO] Startup: " + startup.summary());
+        if (StartupTrace.EXIT_WHEN_INTERACTIVE) {
+            System.out.println("STARTUP " + startup.summary());
+            Platform.exit();
+        }
+    }
+
+    // 起動直後の読み込みが終わるまでは保存先が無い
+    private boolean sessionsLoading() {
+        if (sessionRepo != null) return false;
+        alertDialog("Sessions are still loading.");
+        return true;
     }
 
     private static Integer parseNullableInt(String s) {
@@ -947,10 +1197,6 @@ public class RdpLauncherApp extends Application {
         return s == null ? "" : s.trim();
     }
 
-    private static String nullToEmpty(String s) {
-        return s == null ? "" : s;
-    }
-
     private static String formatSelectedMonitorsText(String csv) {
         String value = norm(csv);
         if (value.isEmpty()) {
@@ -960,7 +1206,7 @@ public class RdpLauncherApp extends Application {
     }
 
     private void appendLog(String s) {
-        Platform.runLater(() -> logArea.appendText(s + System.lineSeparator()));
+        logSink.publish(s);
     }
 
     private void setStatus(String s) {
@@ -976,15 +1222,116 @@ public class RdpLauncherApp extends Application {
             a.showAndWait();
         });
     }
+    // AskPassServer から呼ばれる (FX スレッド外)。ダイアログが閉じるまで待つ
+    // 応答が無いまま待ち続けない。時間切れ・中断 (接続の片付け) のときは表示中のダイアログも閉じる
+    private String askPassPrompt(AskPassPrompt prompt) throws InterruptedException {
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        AtomicReference<Dialog<ButtonType>> shown = new AtomicReference<>();
+        Platform.runLater(() -> {
+            if (answer.isDone()) return;
+            try {
+                // ホスト鍵の確認などは はい / いいえ で答える
+                if (!prompt.secret()) {
+                    Alert a = new Alert(Alert.AlertType.CONFIRMATION, prompt.text(), ButtonType.YES, ButtonType.NO);
+                    a.setTitle("SSH Authentication");
+                    a.setHeaderText(null);
+                    if (mainForm != null && mainForm.getScene() != null) a.initOwner(mainForm.getScene().getWindow());
+                    shown.set(a);
+                    Optional<ButtonType> r = a.showAndWait();
+                    answer.complete(prompt.confirmAnswer(r.isPresent() && r.get() == ButtonType.YES));
+                    return;
+                }
+                PasswordField pf = new PasswordField();
+                Dialog<ButtonType> d = new Dialog<>();
+                d.setTitle("SSH Authentication");
+                d.setHeaderText(prompt.text());
+                if (mainForm != null && mainForm.getScene() != null) d.initOwner(mainForm.getScene().getWindow());
+                d.getDialogPane().setContent(pf);
+                d.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+                Platform.runLater(pf::requestFocus);
+
+                shown.set(d);
+                Optional<ButtonType> r = d.showAndWait();
+                answer.complete(r.isPresent() && r.get() == ButtonType.OK ? pf.getText() : null);
+            } catch (RuntimeException e) {
+                answer.complete(null);
+            }
+        });
+        try {
+            return answer.get(ASKPASS_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            appendLog("[WARN] SSH authentication prompt timed out after " + ASKPASS_TIMEOUT.toSeconds() + "s.");
+            return null;
+        } finally {
+            if (answer.complete(null)) {
+                Platform.runLater(() -> {
+                    Dialog<ButtonType> d = shown.get();
+                    if (d != null && d.isShowing()) d.setResult(prompt.secret() ? ButtonType.CANCEL : ButtonType.NO);
+                });
+            }
+        }
+    }
+
+    private void onSearch(String text) {
+        search.search(text);
+        if (!search.active() && sessionList.isVisible()) {
+            sessionList.setVisible(false);
+            sessionList.getItems().clear();
+            updateSessionsLabel(sessions.size());
+        }
+    }
+
+    private void showSearchResult(SessionSearch.Result r) {
+        if (!search.active()) return;
+        sessionList.setItems(FXCollections.observableArrayList(r.sessions()));
+        sessionList.setVisible(true);
+        updateSessionsLabel(r.sessions().size());
+        if (r.elapsedMicros() > 16_000) {
+            appendLog("[INFO] Search '" + r.query() + "': " + r.sessions().size() + "/" + r.indexed()
+                    + " in " + r.elapsedMicros() / 1000 + " ms");
+        }
+    }
+
+    private Session selectedSession() {
+        return sessionList.isVisible() ? sessionList.getSelectionModel().getSelectedItem() : sessionTree.selectedSession();
+    }
+
+    private void selectSession(Session s) {
+        if (sessionList.isVisible()) sessionList.getSelectionModel().select(s);
+        else sessionTree.select(s);
+    }
+
+    private void updateSessionsLabel(int shown) {
+        sessionsLabel.setText(shown == sessions.size() ? "Sessions (" + shown + ")" : "Sessions (" + shown + "/" + sessions.size() + ")");
+    }
+
     @Override
     public void stop() {
+        search.close();
         try {
             connection.shutdown();
         } catch (Exception ignored) {
         }
+        // 書きかけの保存を終えてから閉じる
+        repoWriter.shutdown();
+        try {
+            repoWriter.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sessionRepo != null) {
+            try {
+                sessionRepo.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (logSink != null) logSink.stop();
     }
 
     public static void main(String[] args) {
+        // 以前の shim (アプリの exe を SSH_ASKPASS にしたもの) との互換。通常は AskPassMain が直接起動される
         if (args != null && args.length > 0 && looksLikeSshAskPass(args[0]) && System.getenv("SSH_ASKPASS") != null) {
             AskPassMain.main(args);
             return;
@@ -999,6 +1346,7 @@ public class RdpLauncherApp extends Application {
                 || p.contains("password")
                 || p.contains("verification code")
                 || p.contains("otp")
+                || p.contains("(yes/no")
                 || p.contains("enter");
     }
 }
@@ -0,0 +1,100 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// サイズ上限でローテーションする追記ログ。ssh の stdout / stderr をパイプで受けてここに書く
+// (ファイルへ直接リダイレクトすると、-vvv のまま何時間も動くマスターのログが際限なく伸びる)。
+// 同じパスへの書き込み (stdio モードの ssh -W が複数) は 1 つの実体を共有し、ローテーションが食い違わないようにする
+final class RotatingLogFile implements Closeable {
+
+    private static final Map<Path, RotatingLogFile> OPEN = new HashMap<>();
+    private static final int CHUNK = 8 * 1024;
+
+    private final Path path;
+    private final long maxBytes;
+    private FileChannel ch;
+    private long size;
+    private int refs;
+
+    private RotatingLogFile(Path path, long maxBytes) throws IOException {
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.ch = openChannel();
+        this.size = ch.size();
+    }
+
+    // 呼び出し時点でファイルを作る (TunnelReadiness などがすぐ読みに行くため)
+    static RotatingLogFile open(Path path, long maxBytes) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            RotatingLogFile f = OPEN.get(key);
+            if (f == null) {
+                f = new RotatingLogFile(key, maxBytes);
+                OPEN.put(key, f);
+            }
+            f.refs++;
+            return f;
+        }
+    }
+
+    // in を EOF まで読んで書き、閉じる。プロセスの出力を受ける仮想スレッドを返す
+    static Thread pump(InputStream in, Path path, long maxBytes) throws IOException {
+        RotatingLogFile f = open(path, maxBytes);
+        return Thread.ofVirtual().name("rdp-launcher-log-pump").start(() -> {
+            byte[] buf = new byte[CHUNK];
+            try (in; f) {
+                int n;
+                while ((n = in.read(buf)) > 0) f.write(buf, 0, n);
+            } catch (IOException ignored) {
+                // プロセス終了でパイプが切れた
+            }
+        });
+    }
+
+    synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (ch == null) throw new IOException("Log closed: " + path);
+        if (size > 0 && size + len > maxBytes) rotate();
+        ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+        while (buf.hasRemaining()) size += ch.write(buf);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    private void rotate() throws IOException {
+        ch.close();
+        SshLogs.rotate(path);
+        ch = openChannel();
+        size = ch.size();
+        // 他のプロセスが開いていて移動できなかった場合も上限は守る
+        if (size >= maxBytes) {
+            ch.truncate(0);
+            size = 0;
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN) {
+            if (--refs > 0) return;
+            OPEN.remove(path);
+        }
+        synchronized (this) {
+            if (ch != null) ch.close();
+            ch = null;
+        }
+    }
+}
@@ -19,7 +19,9 @@ public record Session(
         Integer height,
         boolean multimon,
         boolean span,
-        String selectedMonitors
+        String selectedMonitors,
+        String group,
+        String tags
 ) {
     @Override public String toString() { return name; }
 }
@@ -0,0 +1,386 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// RFC 4180 の CSV でセッションを読み書きする。Reader / Writer から 1 レコードずつ処理し、全体を溜め込まない。
+// 列はヘッダー名で対応付ける (ヘッダーが無い旧 sessions.csv は COLUMNS の順とみなす)。
+public final class SessionCsv {
+
+    private SessionCsv() {}
+
+    public static final List<String> COLUMNS = List.of(
+            "name", "useBastion", "sshAlias", "sshOptions", "rdpHost", "rdpPort", "username", "domain",
+            "fullscreen", "width", "height", "multimon", "span", "jumpHosts", "useRdGateway", "rdGatewayHost",
+            "rdGatewayUseCurrentUser", "rdGatewayShareCreds", "selectedMonitors", "group", "tags");
+
+    public static final String HEADER = String.join(",", COLUMNS);
+
+    // 旧版 (引用なし) の sessions.csv が持っていた列数。COLUMNS の先頭 19 列と同じ並び
+    private static final int LEGACY_COLUMNS = 19;
+
+    // line は元ファイルでそのレコードが始まる行番号 (1 始まり)
+    public record RowError(long line, String message) {}
+
+    // 旧版が書いた sessions.csv を読む。旧版は引用せずに書いていたので、カンマを含む列は foldLegacy で区切り直す
+    public static List<Session> readLegacy(Path csv, Consumer<RowError> errors) throws IOException {
+        List<Session> out = new ArrayList<>();
+        if (!Files.exists(csv)) return out;
+        try (Reader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            read(r, out::add, errors, true);
+        }
+        return out;
+    }
+
+    // 読めた件数を返す。壊れた行は errors に渡して読み進める
+    public static int read(Reader in, Consumer<Session> sink, Consumer<RowError> errors) throws IOException {
+        return read(in, sink, errors, false);
+    }
+
+    private static int read(Reader in, Consumer<Session> sink, Consumer<RowError> errors, boolean legacy) throws IOException {
+        RecordReader rr = new RecordReader(in);
+        List<String> columns = COLUMNS;
+        int count = 0;
+        boolean first = true;
+
+        List<String> rec;
+        while ((rec = rr.next()) != null) {
+            long line = rr.recordLine();
+            if (first) {
+                first = false;
+                if (!rec.isEmpty()) rec.set(0, stripBom(rec.get(0)));
+                if (!rec.isEmpty() && rec.get(0).trim().equalsIgnoreCase("name")) {
+                    columns = canonicalColumns(rec);
+                    continue;
+                }
+            }
+            if (rec.size() == 1 && rec.get(0).isBlank()) continue;
+            // # で始まる行はコメントとして飛ばすが、黙って捨てずに知らせる。"#name" と引用された名前はセッションとして読む
+            if (!rr.firstFieldQuoted() && rec.get(0).startsWith("#")) {
+                errors.accept(new RowError(line, "Skipped comment row (quote the name to import a session starting with '#'): "
+                        + abbreviate(rec.get(0))));
+                continue;
+            }
+            // 引用し忘れたカンマなどで列がずれた行は、値を取り違えて取り込まないよう丸ごと弾く (末尾の空欄だけなら許す)
+            if (legacy && rec.size() > LEGACY_COLUMNS && columns.equals(COLUMNS.subList(0, columns.size()))) {
+                List<String> folded = foldLegacy(rec);
+                if (folded == null) {
+                    errors.accept(new RowError(line, "Could not realign unquoted row: " + rec.size() + " fields"));
+                    continue;
+                }
+                rec = folded;
+            }
+            if (rec.size() > columns.size() && !blankFrom(rec, columns.size())) {
+                errors.accept(new RowError(line, "Too many fields: " + rec.size() + " (expected " + columns.size() + ")"));
+                continue;
+            }
+
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < rec.size() && i < columns.size(); i++) {
+                if (columns.get(i) != null) fields.put(columns.get(i), rec.get(i));
+            }
+            try {
+                sink.accept(fromFields(fields));
+                count++;
+            } catch (IllegalArgumentException e) {
+                errors.accept(new RowError(line, e.getMessage()));
+            }
+        }
+        if (rr.unterminatedQuoteLine() > 0) {
+            errors.accept(new RowError(rr.unterminatedQuoteLine(), "Unterminated quoted field"));
+        }
+        return count;
+    }
+
+    public static void write(Writer out, Iterable<Session> sessions) throws IOException {
+        writeHeader(out);
+        for (Session s : sessions) writeRow(out, s);
+        out.flush();
+    }
+
+    public static void writeHeader(Writer out) throws IOException {
+        out.write(HEADER);
+        out.write("\r\n");
+    }
+
+    public static void writeRow(Writer out, Session s) throws IOException {
+        boolean first = true;
+        for (String v : toFields(s).values()) {
+            if (!first) out.write(',');
+            first = false;
+            writeField(out, v);
+        }
+        out.write("\r\n");
+    }
+
+    // 先頭の # も引用する (読み込み側は引用されていない # 始まりの行をコメントとみなす)
+    private static void writeField(Writer out, String v) throws IOException {
+        boolean quote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0
+                || (!v.isEmpty() && (v.charAt(0) == '#'
+                        || Character.isWhitespace(v.charAt(0)) || Character.isWhitespace(v.charAt(v.length() - 1))));
+        if (!quote) {
+            out.write(v);
+            return;
+        }
+        out.write('"');
+        out.write(v.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    // ---- Session <-> 列名付きの値 (JSON Lines と共通) ----
+
+    static Map<String, String> toFields(Session s) {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("name", str(s.name()));
+        m.put("useBastion", String.valueOf(s.useBastion()));
+        m.put("sshAlias", str(s.sshAlias()));
+        m.put("sshOptions", str(s.sshOptions()));
+        m.put("rdpHost", str(s.rdpHost()));
+        m.put("rdpPort", String.valueOf(s.rdpPort()));
+        m.put("username", str(s.username()));
+        m.put("domain", str(s.domain()));
+        m.put("fullscreen", String.valueOf(s.fullscreen()));
+        m.put("width", s.width() == null ? "" : String.valueOf(s.width()));
+        m.put("height", s.height() == null ? "" : String.valueOf(s.height()));
+        m.put("multimon", String.valueOf(s.multimon()));
+        m.put("span", String.valueOf(s.span()));
+        m.put("jumpHosts", str(s.jumpHosts()));
+        m.put("useRdGateway", String.valueOf(s.useRdGateway()));
+        m.put("rdGatewayHost", str(s.rdGatewayHost()));
+        m.put("rdGatewayUseCurrentUser", String.valueOf(s.rdGatewayUseCurrentUser()));
+        m.put("rdGatewayShareCreds", String.valueOf(s.rdGatewayShareCreds()));
+        m.put("selectedMonitors", str(s.selectedMonitors()));
+        m.put("group", str(s.group()));
+        m.put("tags", str(s.tags()));
+        return m;
+    }
+
+    static Session fromFields(Map<String, String> f) {
+        String name = get(f, "name");
+        if (name.isEmpty()) throw new IllegalArgumentException("name is empty");
+
+        String portText = get(f, "rdpPort");
+        int rdpPort;
+        try {
+            rdpPort = Integer.parseInt(portText);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("rdpPort is not a number: '" + portText + "' (" + name + ")");
+        }
+        if (rdpPort < 1 || rdpPort > 65535) {
+            throw new IllegalArgumentException("rdpPort out of range: " + rdpPort + " (" + name + ")");
+        }
+
+        return new Session(
+                name,
+                bool(f, "useBastion", false),
+                get(f, "sshAlias"),
+                get(f, "jumpHosts"),
+                get(f, "sshOptions"),
+                bool(f, "useRdGateway", false),
+                get(f, "rdGatewayHost"),
+                bool(f, "rdGatewayUseCurrentUser", false),
+                bool(f, "rdGatewayShareCreds", true),
+                get(f, "rdpHost"),
+                rdpPort,
+                get(f, "username"),
+                get(f, "domain"),
+                bool(f, "fullscreen", false),
+                positiveOrNull(get(f, "width")),
+                positiveOrNull(get(f, "height")),
+                bool(f, "multimon", false),
+                bool(f, "span", false),
+                get(f, "selectedMonitors"),
+                SessionGroups.normalizeGroup(get(f, "group")),
+                SessionGroups.normalizeTags(get(f, "tags"))
+        );
+    }
+
+    // 旧版の 1 行を 19 列にそろえる。sshOptions (-J a,b / ProxyJump=a,b)・jumpHosts・selectedMonitors (0,1,2) は
+    // カンマを含みうるので、型の決まった列 (rdpPort と真偽値) を目印に区切り直し、余った末尾は selectedMonitors に戻す。
+    // 目印が見つからなければ null
+    static List<String> foldLegacy(List<String> rec) {
+        int n = rec.size();
+        for (int k = 4; k + 12 < n; k++) { // k: rdpHost
+            if (!isInt(rec.get(k + 1)) || !isBool(rec.get(k + 4)) || !isBool(rec.get(k + 7)) || !isBool(rec.get(k + 8))) {
+                continue;
+            }
+            int j = k + 9; // jumpHosts の先頭
+            for (int m = j + 1; m + 3 < n; m++) { // m: useRdGateway
+                if (!isBool(rec.get(m)) || !isBool(rec.get(m + 2)) || !isBool(rec.get(m + 3))) continue;
+                List<String> out = new ArrayList<>(LEGACY_COLUMNS);
+                out.addAll(rec.subList(0, 3));
+                out.add(String.join(",", rec.subList(3, k)));
+                out.addAll(rec.subList(k, j));
+                out.add(String.join(",", rec.subList(j, m)));
+                out.addAll(rec.subList(m, m + 4));
+                out.add(String.join(",", rec.subList(Math.min(m + 4, n), n)));
+                return out;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInt(String s) {
+        try {
+            Integer.parseInt(s.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBool(String s) {
+        String t = s.trim();
+        return t.equalsIgnoreCase("true") || t.equalsIgnoreCase("false");
+    }
+
+    private static List<String> canonicalColumns(List<String> header) {
+        Map<String, String> known = new HashMap<>();
+        for (String c : COLUMNS) known.put(c.toLowerCase(Locale.ROOT), c);
+        List<String> out = new ArrayList<>();
+        for (String h : header) out.add(known.get(h.trim().toLowerCase(Locale.ROOT)));
+        return out;
+    }
+
+    private static String get(Map<String, String> f, String key) {
+        String v = f.get(key);
+        return v == null ? "" : v.trim();
+    }
+
+    private static boolean bool(Map<String, String> f, String key, boolean dflt) {
+        String v = get(f, key);
+        return v.isEmpty() ? dflt : Boolean.parseBoolean(v);
+    }
+
+    private static Integer positiveOrNull(String s) {
+        if (s.isEmpty()) return null;
+        try {
+            int v = Integer.parseInt(s);
+            return v <= 0 ? null : v;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String str(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static boolean blankFrom(List<String> rec, int from) {
+        for (int i = from; i < rec.size(); i++) if (!rec.get(i).isBlank()) return false;
+        return true;
+    }
+
+    private static String abbreviate(String s) {
+        return s.length() <= 40 ? s : s.substring(0, 39) + "~";
+    }
+
+    private static String stripBom(String s) {
+        return !s.isEmpty() && s.charAt(0) == '\uFEFF' ? s.substring(1) : s;
+    }
+
+    // 1 文字ずつ読む状態機械。引用符内のカンマ・改行と "" のエスケープを扱う
+    private static final class RecordReader {
+        private final BufferedReader in;
+        private long line = 1;
+        private long recordLine = 1;
+        private long unterminated = 0;
+        private boolean firstQuoted = false;
+        private boolean eof = false;
+
+        RecordReader(Reader in) {
+            this.in = in instanceof BufferedReader b ? b : new BufferedReader(in, 64 * 1024);
+        }
+
+        long recordLine() {
+            return recordLine;
+        }
+
+        long unterminatedQuoteLine() {
+            return unterminated;
+        }
+
+        // 直前に返したレコードの先頭フィールドが引用符で始まっていたか
+        boolean firstFieldQuoted() {
+            return firstQuoted;
+        }
+
+        List<String> next() throws IOException {
+            if (eof) return null;
+            recordLine = line;
+            firstQuoted = false;
+            List<String> fields = new ArrayList<>();
+            StringBuilder cur = new StringBuilder();
+            boolean inQuotes = false;
+            boolean any = false;
+
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    eof = true;
+                    if (inQuotes) unterminated = recordLine;
+                    if (!any && fields.isEmpty()) return null;
+                    fields.add(cur.toString());
+                    return fields;
+                }
+                any = true;
+                if (inQuotes) {
+                    if (c == '"') {
+                        in.mark(1);
+                        int d = in.read();
+                        if (d == '"') {
+                            cur.append('"');
+                        } else {
+                            inQuotes = false;
+                            if (d >= 0) in.reset();
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        cur.append((char) c);
+                    }
+                    continue;
+                }
+                switch (c) {
+                    // 引用符はフィールド先頭でだけ特別扱いする (旧 csv の -o ProxyCommand="..." をそのまま読むため)
+                    case '"' -> {
+                        if (cur.length() == 0) {
+                            inQuotes = true;
+                            if (fields.isEmpty()) firstQuoted = true;
+                        } else {
+                            cur.append('"');
+                        }
+                    }
+                    case ',' -> {
+                        fields.add(cur.toString());
+                        cur.setLength(0);
+                    }
+                    case '\r' -> {
+                        in.mark(1);
+                        if (in.read() != '\n') in.reset();
+                        line++;
+                        fields.add(cur.toString());
+                        return fields;
+                    }
+                    case '\n' -> {
+                        line++;
+                        fields.add(cur.toString());
+                        return fields;
+                    }
+                    default -> cur.append((char) c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// セッションのグループ (フォルダ) とタグの索引。
+// group は "prod/customerA/tokyo" のような '/' 区切りのパス、tags は "," 区切り。
+// タグは TAGS 配下の仮想グループ ("#" + タグ名) として扱う。
+// 一括読み込みでは build で作り直し (別スレッドでよい)、1 件の保存・削除は add / remove でその場で直す (FX スレッド)。
+// ツリー表示はここから必要な階層だけを取り出す。
+public final class SessionGroups {
+    public static final String ROOT = "";
+    public static final String TAGS = "#";
+    // 大文字小文字だけが違うフォルダも別のものとして並べる
+    private static final Comparator<String> GROUP_ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    public record Group(String path, String name, int count) {
+        public boolean isTag() {
+            return path.startsWith(TAGS);
+        }
+
+        @Override public String toString() { return name + " (" + count + ")"; }
+    }
+
+    private final Map<String, List<String>> subgroups = new HashMap<>();
+    private final Map<String, List<Session>> members = new HashMap<>();
+    private final Map<String, Integer> counts = new HashMap<>();
+    // タグの表示名 (最初に現れた綴り)。大文字小文字を区別しない
+    private final Map<String, String> tagNames = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private SessionGroups() {}
+
+    // sessions は名前順。各グループ内の並びもその順になる。group / tags は正規化済みであること
+    public static SessionGroups build(Collection<Session> sessions) {
+        SessionGroups g = new SessionGroups();
+        Map<String, Set<String>> children = new HashMap<>();
+
+        for (Session s : sessions) {
+            String path = path(s);
+            g.members.computeIfAbsent(path, k -> new ArrayList<>()).add(s);
+            g.counts.merge(ROOT, 1, Integer::sum);
+
+            // 親フォルダを順に登録し、件数を積み上げる
+            int from = 0;
+            while (!path.isEmpty()) {
+                int slash = path.indexOf('/', from);
+                String prefix = slash < 0 ? path : path.substring(0, slash);
+                String parent = from == 0 ? ROOT : path.substring(0, from - 1);
+                children.computeIfAbsent(parent, k -> new LinkedHashSet<>()).add(prefix);
+                g.counts.merge(prefix, 1, Integer::sum);
+                if (slash < 0) break;
+                from = slash + 1;
+            }
+
+            String tags = s.tags();
+            if (tags == null || tags.isEmpty()) continue;
+            g.counts.merge(TAGS, 1, Integer::sum);
+            for (String t : tags.split(",")) {
+                String name = g.tagNames.computeIfAbsent(t, k -> k);
+                String tagPath = TAGS + name.toLowerCase(Locale.ROOT);
+                g.members.computeIfAbsent(tagPath, k -> new ArrayList<>()).add(s);
+                g.counts.merge(tagPath, 1, Integer::sum);
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> e : children.entrySet()) {
+            List<String> sorted = new ArrayList<>(e.getValue());
+            sorted.sort(GROUP_ORDER);
+            g.subgroups.put(e.getKey(), sorted);
+        }
+        List<String> tagPaths = new ArrayList<>();
+        for (String name : g.tagNames.values()) tagPaths.add(TAGS + name.toLowerCase(Locale.ROOT));
+        if (!tagPaths.isEmpty()) g.subgroups.put(TAGS, tagPaths);
+        return g;
+    }
+
+    // 1 件追加する。同名 (大文字小文字無視) のセッションは先に remove しておくこと
+    public void add(Session s) {
+        String path = path(s);
+        insert(members.computeIfAbsent(path, k -> new ArrayList<>()), s);
+        counts.merge(ROOT, 1, Integer::sum);
+
+        int from = 0;
+        while (!path.isEmpty()) {
+            int slash = path.indexOf('/', from);
+            String prefix = slash < 0 ? path : path.substring(0, slash);
+            String parent = from == 0 ? ROOT : path.substring(0, from - 1);
+            if (counts.merge(prefix, 1, Integer::sum) == 1) insertGroup(parent, prefix);
+            if (slash < 0) break;
+            from = slash + 1;
+        }
+
+        String tags = s.tags();
+        if (tags == null || tags.isEmpty()) return;
+        counts.merge(TAGS, 1, Integer::sum);
+        for (String t : tags.split(",")) {
+            String tagPath = TAGS + tagNames.computeIfAbsent(t, k -> k).toLowerCase(Locale.ROOT);
+            insert(members.computeIfAbsent(tagPath, k -> new ArrayList<>()), s);
+            if (counts.merge(tagPath, 1, Integer::sum) == 1) insertGroup(TAGS, tagPath);
+        }
+    }
+
+    // 1 件取り除く。空になったフォルダ・タグも消す
+    public void remove(Session s) {
+        String path = path(s);
+        if (!delete(path, s)) return;
+        decrement(ROOT);
+
+        int from = 0;
+        while (!path.isEmpty()) {
+            int slash = path.indexOf('/', from);
+            String prefix = slash < 0 ? path : path.substring(0, slash);
+            String parent = from == 0 ? ROOT : path.substring(0, from - 1);
+            if (decrement(prefix)) removeGroup(parent, prefix);
+            if (slash < 0) break;
+            from = slash + 1;
+        }
+
+        String tags = s.tags();
+        if (tags == null || tags.isEmpty()) return;
+        decrement(TAGS);
+        for (String t : tags.split(",")) {
+            String tagPath = TAGS + t.toLowerCase(Locale.ROOT);
+            delete(tagPath, s);
+            if (decrement(tagPath)) {
+                removeGroup(TAGS, tagPath);
+                tagNames.remove(t);
+            }
+        }
+    }
+
+    // s が直接属するグループ (フォルダ 1 つとタグごとの仮想グループ)
+    public static List<String> memberPaths(Session s) {
+        List<String> out = new ArrayList<>();
+        out.add(path(s));
+        String tags = s.tags();
+        if (tags == null || tags.isEmpty()) return out;
+        for (String t : tags.split(",")) out.add(TAGS + t.toLowerCase(Locale.ROOT));
+        return out;
+    }
+
+    private static void insert(List<Session> list, Session s) {
+        int i = Collections.binarySearch(list, s, SessionRegistry.ORDER);
+        if (i >= 0) list.set(i, s);
+        else list.add(-i - 1, s);
+    }
+
+    private boolean delete(String path, Session s) {
+        List<Session> list = members.get(path);
+        if (list == null) return false;
+        int i = Collections.binarySearch(list, s, SessionRegistry.ORDER);
+        if (i < 0) return false;
+        list.remove(i);
+        if (list.isEmpty()) members.remove(path);
+        return true;
+    }
+
+    // 0 になったら true
+    private boolean decrement(String path) {
+        return counts.computeIfPresent(path, (k, n) -> n <= 1 ? null : n - 1) == null;
+    }
+
+    private void insertGroup(String parent, String path) {
+        List<String> list = subgroups.computeIfAbsent(parent, k -> new ArrayList<>());
+        int i = Collections.binarySearch(list, path, GROUP_ORDER);
+        if (i < 0) list.add(-i - 1, path);
+    }
+
+    private void removeGroup(String parent, String path) {
+        List<String> list = subgroups.get(parent);
+        if (list == null) return;
+        int i = Collections.binarySearch(list, path, GROUP_ORDER);
+        if (i >= 0) list.remove(i);
+        if (list.isEmpty()) subgroups.remove(parent);
+    }
+
+    public boolean hasTags() {
+        return counts.containsKey(TAGS);
+    }
+
+    public int count(String path) {
+        return counts.getOrDefault(path, 0);
+    }
+
+    public int groupCount() {
+        int n = 0;
+        for (List<String> l : subgroups.values()) n += l.size();
+        return n;
+    }
+
+    public Group group(String path) {
+        if (path.equals(TAGS)) return new Group(TAGS, "Tags", count(TAGS));
+        if (path.startsWith(TAGS)) {
+            String tag = path.substring(TAGS.length());
+            return new Group(path, "#" + tagNames.getOrDefault(tag, tag), count(path));
+        }
+        int slash = path.lastIndexOf('/');
+        return new Group(path, slash < 0 ? path : path.substring(slash + 1), count(path));
+    }
+
+    public List<Group> childGroups(String path) {
+        List<String> l = subgroups.get(path);
+        if (l == null) return List.of();
+        List<Group> out = new ArrayList<>(l.size());
+        for (String p : l) out.add(group(p));
+        return out;
+    }
+
+    // そのグループ直下のセッション
+    public List<Session> sessionsIn(String path) {
+        return members.getOrDefault(path, List.of());
+    }
+
+    // 配下すべてのセッション (重複なし)
+    public List<Session> allIn(String path) {
+        Set<Session> out = new LinkedHashSet<>();
+        collect(path, out);
+        return new ArrayList<>(out);
+    }
+
+    private void collect(String path, Set<Session> out) {
+        out.addAll(sessionsIn(path));
+        for (String child : subgroups.getOrDefault(path, List.of())) collect(child, out);
+    }
+
+    // 保存・取り込み時に normalizeGroup 済みの値をそのまま使う
+    public static String path(Session s) {
+        return s.group() == null ? ROOT : s.group();
+    }
+
+    // 空の階層や前後の空白・'\' 区切りを整える
+    public static String normalizeGroup(String group) {
+        if (group == null || group.isBlank()) return "";
+        StringBuilder sb = new StringBuilder();
+        for (String part : group.replace('\\', '/').split("/")) {
+            String p = part.trim();
+            // 先頭の '#' はタグの仮想グループと紛らわしいので落とす
+            if (sb.isEmpty()) while (p.startsWith("#")) p = p.substring(1).trim();
+            if (p.isEmpty()) continue;
+            if (!sb.isEmpty()) sb.append('/');
+            sb.append(p);
+        }
+        return sb.toString();
+    }
+
+    // 重複 (大文字小文字無視) と空要素を除いたカンマ区切り。'#' は付けずに保存する
+    public static String normalizeTags(String tags) {
+        if (tags == null || tags.isBlank()) return "";
+        Set<String> seen = new LinkedHashSet<>();
+        List<String> out = new ArrayList<>();
+        for (String part : tags.split("[,;]")) {
+            String t = part.trim();
+            while (t.startsWith("#")) t = t.substring(1).trim();
+            if (t.isEmpty() || !seen.add(t.toLowerCase(Locale.ROOT))) continue;
+            out.add(t);
+        }
+        return String.join(",", out);
+    }
+}
@@ -0,0 +1,187 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// JSON Lines (1 行 1 オブジェクト) でセッションを読み書きする。キーは SessionCsv.COLUMNS と同じ。
+// 値は文字列・数値・真偽値・null のみを受け付ける平坦なオブジェクト。
+public final class SessionJsonl {
+
+    private SessionJsonl() {}
+
+    private static final Set<String> BOOLEANS = Set.of("useBastion", "fullscreen", "multimon", "span", "useRdGateway",
+            "rdGatewayUseCurrentUser", "rdGatewayShareCreds");
+    private static final Set<String> NUMBERS = Set.of("rdpPort", "width", "height");
+
+    public static int read(Reader in, Consumer<Session> sink, Consumer<SessionCsv.RowError> errors) throws IOException {
+        BufferedReader r = in instanceof BufferedReader b ? b : new BufferedReader(in, 64 * 1024);
+        int count = 0;
+        long lineNo = 0;
+        String line;
+        while ((line = r.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank()) continue;
+            try {
+                sink.accept(SessionCsv.fromFields(new Parser(line).object()));
+                count++;
+            } catch (IllegalArgumentException e) {
+                errors.accept(new SessionCsv.RowError(lineNo, e.getMessage()));
+            }
+        }
+        return count;
+    }
+
+    public static void write(Writer out, Iterable<Session> sessions) throws IOException {
+        for (Session s : sessions) writeRow(out, s);
+        out.flush();
+    }
+
+    public static void writeRow(Writer out, Session s) throws IOException {
+        StringBuilder sb = new StringBuilder(256).append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> e : SessionCsv.toFields(s).entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            quote(sb, e.getKey());
+            sb.append(':');
+            String v = e.getValue();
+            if (BOOLEANS.contains(e.getKey())) sb.append(v);
+            else if (NUMBERS.contains(e.getKey())) sb.append(v.isEmpty() ? "null" : v);
+            else quote(sb, v);
+        }
+        sb.append("}\n");
+        out.write(sb.toString());
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    // 1 行分の平坦な JSON オブジェクトを文字列の Map にする。構文エラーは IllegalArgumentException
+    private static final class Parser {
+        private final String s;
+        private int i = 0;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Map<String, String> object() {
+            Map<String, String> m = new HashMap<>();
+            ws();
+            expect('{');
+            ws();
+            if (peek() == '}') {
+                i++;
+                return end(m);
+            }
+            while (true) {
+                ws();
+                String key = string();
+                ws();
+                expect(':');
+                ws();
+                m.put(key, value());
+                ws();
+                char c = next();
+                if (c == '}') return end(m);
+                if (c != ',') throw error("expected ',' or '}'");
+            }
+        }
+
+        private Map<String, String> end(Map<String, String> m) {
+            ws();
+            if (i < s.length()) throw error("trailing characters");
+            return m;
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') return string();
+            if (c == '{' || c == '[') throw error("nested values are not supported");
+            int start = i;
+            while (i < s.length() && ",} \t".indexOf(s.charAt(i)) < 0) i++;
+            String lit = s.substring(start, i);
+            if (lit.equals("null")) return "";
+            if (lit.equals("true") || lit.equals("false")) return lit;
+            if (lit.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) return lit;
+            throw error("invalid literal '" + lit + "'");
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = next();
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append(e);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (i + 4 > s.length()) throw error("bad \\u escape");
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("bad \\u escape");
+                        }
+                        i += 4;
+                    }
+                    default -> throw error("bad escape '\\" + e + "'");
+                }
+            }
+        }
+
+        private void ws() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        private char peek() {
+            if (i >= s.length()) throw error("unexpected end of line");
+            return s.charAt(i);
+        }
+
+        private char next() {
+            char c = peek();
+            i++;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw error("expected '" + c + "'");
+        }
+
+        private IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException("JSON " + msg + " at column " + (i + 1));
+        }
+    }
+}
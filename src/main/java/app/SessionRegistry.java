@@ -0,0 +1,112 @@
+package app;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// セッション一覧の索引。名前 (大文字小文字を区別しない) のハッシュ索引と、
+// 名前順に保った ObservableList を同時に管理する。
+// 変更は二分探索で挿入位置を求めるだけで、全体の再ソートはしない。
+// ListView と共有するため FX スレッドからのみ操作すること。
+public final class SessionRegistry {
+    public static final Comparator<Session> ORDER = Comparator.comparing(Session::name, String.CASE_INSENSITIVE_ORDER);
+
+    private final ObservableList<Session> items = FXCollections.observableArrayList();
+    private final Map<String, Session> byName = new HashMap<>();
+
+    public ObservableList<Session> items() {
+        return items;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public Session find(String name) {
+        return name == null ? null : byName.get(key(name));
+    }
+
+    public int indexOf(String name) {
+        if (name == null || !byName.containsKey(key(name))) return -1;
+        int i = search(name);
+        return i >= 0 ? i : -1;
+    }
+
+    // 追加または同名 (大文字小文字無視) の置き換え。返り値は一覧上の位置
+    public int put(Session s) {
+        String k = key(s.name());
+        Session prev = byName.put(k, s);
+        if (prev != null) {
+            int i = search(prev.name());
+            // 名前の大小文字だけが変わった場合も並び順は同じなので、その場で置き換える
+            items.set(i, s);
+            return i;
+        }
+        int i = -(search(s.name()) + 1);
+        items.add(i, s);
+        return i;
+    }
+
+    public Session remove(String name) {
+        if (name == null) return null;
+        Session prev = byName.remove(key(name));
+        if (prev != null) items.remove(search(prev.name()));
+        return prev;
+    }
+
+    // 一括読み込み (起動時・インポート後)。後勝ちで重複名をまとめ、ソートは一度だけ
+    public void setAll(Collection<Session> all) {
+        byName.clear();
+        for (Session s : all) byName.put(key(s.name()), s);
+        List<Session> sorted = new ArrayList<>(byName.values());
+        sorted.sort(ORDER);
+        items.setAll(sorted);
+    }
+
+    // 起動時の分割読み込み用。chunk は名前順で、既存のどれよりも後ろに並ぶこと。
+    // 前提が崩れている場合は 1 件ずつ put にフォールバックする
+    public void appendSorted(List<Session> chunk) {
+        boolean ordered = items.isEmpty() || chunk.isEmpty() || ORDER.compare(items.get(items.size() - 1), chunk.get(0)) < 0;
+        if (!ordered) {
+            for (Session s : chunk) put(s);
+            return;
+        }
+        List<Session> add = new ArrayList<>(chunk.size());
+        for (Session s : chunk) {
+            // 名前順なので同名 (大文字小文字違い) は直前の要素になる。後勝ちで置き換える
+            if (byName.put(key(s.name()), s) == null) add.add(s);
+            else add.set(add.size() - 1, s);
+        }
+        items.addAll(add);
+    }
+
+    private int search(String name) {
+        return Collections.binarySearch(items, null, (a, ignored) -> String.CASE_INSENSITIVE_ORDER.compare(a.name(), name));
+    }
+
+    // String.CASE_INSENSITIVE_ORDER / equalsIgnoreCase と同じ畳み込み
+    static String key(String name) {
+        StringBuilder sb = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (f != c && sb == null) {
+                sb = new StringBuilder(name.length());
+                sb.append(name, 0, i);
+            }
+            if (sb != null) sb.append(f);
+        }
+        return sb == null ? name : sb.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package app;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// セッション定義の永続化。1 件単位で更新でき、全件の書き直しを前提にしない
+public interface SessionRepository extends AutoCloseable {
+
+    List<Session> loadAll() throws IOException;
+
+    Optional<Session> find(String name);
+
+    // 同名 (大文字小文字を区別しない) があれば置き換える。内容が同じなら何も書かない
+    void upsert(Session s) throws IOException;
+
+    // 一括取り込み用。まとめて 1 回で書き込む
+    void upsertAll(Collection<Session> sessions) throws IOException;
+
+    void delete(String name) throws IOException;
+
+    int size();
+
+    void compact() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,117 @@
+package app;
+
+import javafx.application.Platform;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// 検索ボックスの裏側。インデックス構築と検索は FX スレッド外で行い、
+// 新しい入力が来たら古い検索は途中で打ち切る (世代番号で判定)。
+// 結果は最新の入力に対するものだけが FX スレッドに渡される。
+// インデックスの再構築も 1 本のスレッドにまとめ、構築中に一覧が変わったらその構築を打ち切って最新の一覧だけを作り直す。
+public final class SessionSearch implements AutoCloseable {
+    private static final int LIMIT = Integer.getInteger("rdp.launcher.searchLimit", 2000);
+
+    public record Result(String query, List<Session> sessions, int indexed, long elapsedMicros) {
+    }
+
+    private final Consumer<Result> onResult;
+    private final Executor fx;
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("rdp-launcher-search-index").factory());
+    private final AtomicReference<List<Session>> pendingIndex = new AtomicReference<>();
+    private final AtomicLong indexBuilds = new AtomicLong();
+    private final ExecutorService queries = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("rdp-launcher-search").factory());
+    private final AtomicLong queryGen = new AtomicLong();
+    private final AtomicLong indexGen = new AtomicLong();
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+    private volatile SessionSearchIndex index = SessionSearchIndex.EMPTY;
+    private volatile String query = "";
+
+    public SessionSearch(Consumer<Result> onResult) {
+        this(onResult, Platform::runLater);
+    }
+
+    // テスト用。fx は結果を渡すスレッド
+    SessionSearch(Consumer<Result> onResult, Executor fx) {
+        this.onResult = onResult;
+        this.fx = fx;
+    }
+
+    public String query() {
+        return query;
+    }
+
+    public boolean active() {
+        return !query.isBlank();
+    }
+
+    // 一覧が変わったら呼ぶ。構築待ちがあれば差し替えるだけで、実行中の構築は世代番号を見て途中で抜ける
+    public void reindex(List<Session> snapshot) {
+        indexGen.incrementAndGet();
+        if (pendingIndex.getAndSet(snapshot) == null) indexer.execute(this::buildPending);
+    }
+
+    private void buildPending() {
+        List<Session> snapshot = pendingIndex.getAndSet(null);
+        if (snapshot == null) return;
+        long gen = indexGen.get();
+        SessionSearchIndex built = SessionSearchIndex.build(snapshot, () -> indexGen.get() != gen);
+        if (built == null || indexGen.get() != gen) return;
+        index = built;
+        indexBuilds.incrementAndGet();
+        if (active()) submit(query);
+    }
+
+    // 採用されたインデックス構築の回数
+    long indexBuilds() {
+        return indexBuilds.get();
+    }
+
+    // 最終接続時刻 (ランキングの加点に使う)
+    public void recordUse(String sessionName, long epochMillis) {
+        lastUsed.merge(SessionRegistry.key(sessionName), epochMillis, Math::max);
+    }
+
+    public void recordUse(Map<String, Long> history) {
+        history.forEach((k, v) -> lastUsed.merge(k, v, Math::max));
+    }
+
+    public void search(String text) {
+        query = text == null ? "" : text;
+        submit(query);
+    }
+
+    private void submit(String q) {
+        long gen = queryGen.incrementAndGet();
+        if (q.isBlank()) return;
+        queries.execute(() -> {
+            if (queryGen.get() != gen) return;
+            long t0 = System.nanoTime();
+            SessionSearchIndex idx = index;
+            List<Session> found = idx.search(q, lastUsed, System.currentTimeMillis(), LIMIT, () -> queryGen.get() != gen);
+            if (found == null) return;
+            Result r = new Result(q, found, idx.size(), (System.nanoTime() - t0) / 1000);
+            fx.execute(() -> {
+                if (queryGen.get() == gen) onResult.accept(r);
+            });
+        });
+    }
+
+    @Override
+    public void close() {
+        queryGen.incrementAndGet();
+        indexGen.incrementAndGet();
+        indexer.shutdownNow();
+        queries.shutdownNow();
+    }
+}
@@ -0,0 +1,302 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// セッション検索用の不変インデックス。
+// name / rdpHost / sshAlias / jumpHosts / rdGatewayHost / group / tags を小文字で連結し、3 文字組 (trigram) の転置リストを持つ。
+// 3 文字以上のトークンは転置リストで候補を絞り (部分一致 → 打ち間違いの順)、
+// それでもほとんど当たらない (FUZZY_BELOW 件未満の) 場合だけ残りを部分列 (fuzzy) 一致で走査する。
+// 構築は重いのでバックグラウンドで行い、検索側は出来上がったものを差し替えて使う。
+public final class SessionSearchIndex {
+    public static final SessionSearchIndex EMPTY = build(List.of());
+
+    private static final char SEP = '\u0001';
+    private static final int CHECK_EVERY = 1024;
+    private static final int MAX_SCORE = 4095;
+    // 部分一致・打ち間違いでこれだけ当たれば、全件の部分列一致は走査しない (どうせ下位に並ぶだけで 1 フレームを超える)
+    private static final int FUZZY_BELOW = 100;
+
+    private final Session[] sessions;
+    private final String[] keys;
+    private final String[] hay;
+    private final int[] nameLen;
+    // 含まれる文字のビット集合。部分列一致が不可能なものを文字列を見ずに除外する
+    private final long[] charMask;
+    private final Map<Long, int[]> postings;
+
+    private SessionSearchIndex(Session[] sessions, String[] keys, String[] hay, int[] nameLen, long[] charMask,
+                               Map<Long, int[]> postings) {
+        this.sessions = sessions;
+        this.keys = keys;
+        this.hay = hay;
+        this.nameLen = nameLen;
+        this.charMask = charMask;
+        this.postings = postings;
+    }
+
+    public int size() {
+        return sessions.length;
+    }
+
+    // sessions は表示順 (名前順)。同点のときはこの順を保つ
+    public static SessionSearchIndex build(List<Session> list) {
+        return build(list, () -> false);
+    }
+
+    // cancelled が true になったら null を返す (構築中に一覧がまた変わった場合)
+    public static SessionSearchIndex build(List<Session> list, BooleanSupplier cancelled) {
+        int n = list.size();
+        Session[] sessions = list.toArray(new Session[0]);
+        String[] keys = new String[n];
+        String[] hay = new String[n];
+        int[] nameLen = new int[n];
+        long[] charMask = new long[n];
+        Map<Long, Postings> tmp = new HashMap<>();
+
+        for (int doc = 0; doc < n; doc++) {
+            if ((doc & (CHECK_EVERY - 1)) == 0 && cancelled.getAsBoolean()) return null;
+            Session s = sessions[doc];
+            keys[doc] = SessionRegistry.key(s.name());
+            String name = lower(s.name());
+            nameLen[doc] = name.length();
+            String h = name + SEP + lower(s.rdpHost()) + SEP + lower(s.sshAlias())
+                    + SEP + lower(s.jumpHosts()) + SEP + lower(s.rdGatewayHost())
+                    + SEP + lower(s.group()) + SEP + lower(s.tags());
+            hay[doc] = h;
+            charMask[doc] = mask(h);
+
+            for (int i = 0; i + 3 <= h.length(); i++) {
+                char a = h.charAt(i), b = h.charAt(i + 1), c = h.charAt(i + 2);
+                if (a == SEP || b == SEP || c == SEP) continue;
+                tmp.computeIfAbsent(trigram(a, b, c), k -> new Postings()).add(doc);
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(tmp.size() * 2);
+        for (Map.Entry<Long, Postings> e : tmp.entrySet()) {
+            postings.put(e.getKey(), e.getValue().toArray());
+        }
+        return new SessionSearchIndex(sessions, keys, hay, nameLen, charMask, postings);
+    }
+
+    // 順位付きの結果 (最大 limit 件)。cancelled が true になったら null を返す。
+    // lastUsed は SessionRegistry.key(name) -> 最終接続時刻 (epoch ms)
+    public List<Session> search(String query, Map<String, Long> lastUsed, long nowMillis, int limit, BooleanSupplier cancelled) {
+        String[] tokens = lower(query).trim().split("\\s+");
+        if (tokens.length == 0 || tokens[0].isEmpty()) return List.of();
+
+        long[] masks = new long[tokens.length];
+        for (int i = 0; i < tokens.length; i++) masks[i] = mask(tokens[i]);
+
+        int n = sessions.length;
+        Hits hits = new Hits(Math.min(n, 1024));
+
+        // 最も長いトークンで候補を絞る
+        int pivot = 0;
+        for (int i = 1; i < tokens.length; i++) if (tokens[i].length() > tokens[pivot].length()) pivot = i;
+        String p = tokens[pivot];
+        int[] counts = null;
+        if (p.length() >= 3) {
+            counts = new int[n];
+            int grams = p.length() - 2;
+            for (int i = 0; i < grams; i++) {
+                int[] docs = postings.get(trigram(p.charAt(i), p.charAt(i + 1), p.charAt(i + 2)));
+                if (docs == null) continue;
+                for (int d : docs) counts[d]++;
+            }
+            if (cancelled.getAsBoolean()) return null;
+
+            // 1) trigram が全部そろうもの (ほぼ部分一致)。これで足りれば打ち切る
+            for (int doc = 0; doc < n; doc++) {
+                if (counts[doc] < grams) continue;
+                hits.add(score(doc, tokens, masks, pivot, counts[doc], grams, lastUsed, nowMillis), doc);
+            }
+            if (hits.size >= limit) return rank(hits, limit);
+            if (cancelled.getAsBoolean()) return null;
+
+            // 2) 半分以上そろうもの (打ち間違い)
+            int need = Math.max(1, (grams + 1) / 2);
+            for (int doc = 0; doc < n; doc++) {
+                int c = counts[doc];
+                if (c < need || c >= grams) continue;
+                hits.add(score(doc, tokens, masks, pivot, c, grams, lastUsed, nowMillis), doc);
+            }
+            if (hits.size >= Math.min(limit, FUZZY_BELOW)) return rank(hits, limit);
+
+            // 3) 残りは部分列一致だけを見る
+            for (int doc = 0; doc < n; doc++) {
+                if ((doc & (CHECK_EVERY - 1)) == 0 && cancelled.getAsBoolean()) return null;
+                if (counts[doc] >= need) continue;
+                hits.add(score(doc, tokens, masks, pivot, 0, 0, lastUsed, nowMillis), doc);
+            }
+            return rank(hits, limit);
+        }
+
+        // 短い入力は全件を走査する
+        for (int doc = 0; doc < n; doc++) {
+            if ((doc & (CHECK_EVERY - 1)) == 0 && cancelled.getAsBoolean()) return null;
+            hits.add(score(doc, tokens, masks, -1, 0, 0, lastUsed, nowMillis), doc);
+        }
+        return rank(hits, limit);
+    }
+
+    // pivot 番目のトークンの trigram 一致数は転置リストで数えた値 (shared / grams) を使う
+    private int score(int doc, String[] tokens, long[] masks, int pivot, int shared, int grams, Map<String, Long> lastUsed, long nowMillis) {
+        String h = hay[doc];
+        int total = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            int s = (charMask[doc] & masks[i]) == masks[i] ? tokenScore(h, nameLen[doc], tokens[i]) : 0;
+            if (s <= 0) s = i == pivot ? rescueScore(shared, grams) : trigramScore(h, tokens[i]);
+            if (s <= 0) return 0;
+            total += s;
+        }
+        Long last = lastUsed.get(keys[doc]);
+        if (last != null) total += recencyBonus(nowMillis - last);
+        return total;
+    }
+
+    // 完全部分一致 > 単語先頭 > 部分列一致。名前に当たったものを優先する
+    private static int tokenScore(String h, int nameLen, String t) {
+        int idx = h.indexOf(t);
+        if (idx >= 0) {
+            int s = 100;
+            if (idx == 0 || !Character.isLetterOrDigit(h.charAt(idx - 1))) s += 20;
+            if (idx < nameLen) s += 30;
+            if (idx == 0 && t.length() == nameLen) s += 50;
+            return s;
+        }
+
+        // 部分列一致。飛ばした文字数が多いほど低くする
+        int first = -1, j = 0;
+        for (int i = 0; i < h.length() && j < t.length(); i++) {
+            char c = h.charAt(i);
+            if (c == SEP) {
+                // フィールドをまたいだ一致は数えない
+                j = 0;
+                continue;
+            }
+            if (c == t.charAt(j)) {
+                if (j == 0) first = i;
+                j++;
+                if (j == t.length()) {
+                    int gaps = (i - first + 1) - t.length();
+                    int s = Math.max(5, 60 - gaps * 4);
+                    if (first < nameLen) s += 15;
+                    return s;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // 打ち間違い (1 文字違い・入れ替わりなど) の救済。trigram の半分以上が一致すれば弱く採用する
+    private static int rescueScore(int shared, int grams) {
+        if (grams < 2 || shared * 2 < grams) return 0;
+        return 2 + shared * 20 / grams;
+    }
+
+    private static int trigramScore(String h, String t) {
+        int grams = t.length() - 2, shared = 0;
+        for (int i = 0; i < grams; i++) {
+            if (containsGram(h, t.charAt(i), t.charAt(i + 1), t.charAt(i + 2))) shared++;
+        }
+        return rescueScore(shared, grams);
+    }
+
+    private static boolean containsGram(String h, char a, char b, char c) {
+        for (int i = h.indexOf(a); i >= 0 && i + 2 < h.length(); i = h.indexOf(a, i + 1)) {
+            if (h.charAt(i + 1) == b && h.charAt(i + 2) == c) return true;
+        }
+        return false;
+    }
+
+    private static int recencyBonus(long ageMillis) {
+        long days = ageMillis / 86_400_000L;
+        if (days < 1) return 40;
+        if (days < 7) return 25;
+        if (days < 30) return 10;
+        return 0;
+    }
+
+    // 上位 limit 件だけを並べる。得点のヒストグラムで足切り点を求め、それ以上のものだけをソートする
+    private List<Session> rank(Hits hits, int limit) {
+        long[] v = hits.packed;
+        int size = hits.size;
+        if (size > limit) {
+            int[] histogram = new int[MAX_SCORE + 1];
+            for (int i = 0; i < size; i++) histogram[Math.min(MAX_SCORE, hits.score(i))]++;
+            int cutoff = MAX_SCORE, seen = 0;
+            while (cutoff > 0 && (seen += histogram[cutoff]) < limit) cutoff--;
+            int kept = 0;
+            for (int i = 0; i < size; i++) if (hits.score(i) >= cutoff) v[kept++] = v[i];
+            size = kept;
+        }
+        Arrays.sort(v, 0, size);
+        int m = Math.min(size, limit);
+        List<Session> out = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) out.add(sessions[(int) v[i]]);
+        return out;
+    }
+
+    // (得点, doc) を昇順ソートで高得点・名前順になるよう long に詰めて持つ
+    private static final class Hits {
+        long[] packed;
+        int size;
+
+        Hits(int capacity) {
+            packed = new long[Math.max(16, capacity)];
+        }
+
+        void add(int score, int doc) {
+            if (score <= 0) return;
+            if (size == packed.length) packed = Arrays.copyOf(packed, size * 2);
+            packed[size++] = ((long) (Integer.MAX_VALUE - score) << 32) | doc;
+        }
+
+        int score(int i) {
+            return Integer.MAX_VALUE - (int) (packed[i] >>> 32);
+        }
+    }
+
+    private static long mask(String s) {
+        long m = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == SEP) continue;
+            if (c >= 'a' && c <= 'z') m |= 1L << (c - 'a');
+            else if (c >= '0' && c <= '9') m |= 1L << (26 + c - '0');
+            else m |= 1L << (36 + c % 28);
+        }
+        return m;
+    }
+
+    private static long trigram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static String lower(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            // 同じセッション内で同じ trigram が繰り返しても 1 回だけ数える
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(docs, size);
+        }
+    }
+}
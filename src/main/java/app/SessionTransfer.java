@@ -0,0 +1,89 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// セッションの一括インポート / エクスポート。拡張子 .jsonl / .ndjson は JSON Lines、それ以外は CSV
+public final class SessionTransfer {
+
+    private SessionTransfer() {}
+
+    private static final int BATCH = 1000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    public record Result(int rows, int errorCount, List<SessionCsv.RowError> errors, long elapsedNanos) {
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public long rowsPerSecond() {
+            return elapsedNanos <= 0 ? rows : rows * 1_000_000_000L / elapsedNanos;
+        }
+    }
+
+    public static boolean isJsonLines(Path file) {
+        String n = file.getFileName().toString().toLowerCase();
+        return n.endsWith(".jsonl") || n.endsWith(".ndjson");
+    }
+
+    // BATCH 件ずつリポジトリに書き込むので、巨大なファイルでもメモリに全件を持たない
+    public static Result importFile(Path file, SessionRepository repo) throws IOException {
+        long t0 = System.nanoTime();
+        List<Session> batch = new ArrayList<>(BATCH);
+        List<SessionCsv.RowError> errors = new ArrayList<>();
+        int[] errorCount = {0};
+        IOException[] writeFailure = {null};
+
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Consumer<Session> sink = s -> {
+                batch.add(s);
+                if (batch.size() >= BATCH && writeFailure[0] == null) {
+                    try {
+                        repo.upsertAll(batch);
+                    } catch (IOException e) {
+                        writeFailure[0] = e;
+                    }
+                    batch.clear();
+                }
+            };
+            Consumer<SessionCsv.RowError> onError = e -> {
+                errorCount[0]++;
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add(e);
+            };
+
+            int rows = isJsonLines(file)
+                    ? SessionJsonl.read(r, sink, onError)
+                    : SessionCsv.read(r, sink, onError);
+            if (writeFailure[0] != null) throw writeFailure[0];
+            repo.upsertAll(batch);
+            return new Result(rows, errorCount[0], errors, System.nanoTime() - t0);
+        }
+    }
+
+    // 一時ファイルに書いてから置き換える
+    public static Result exportFile(Path file, Iterable<Session> sessions) throws IOException {
+        long t0 = System.nanoTime();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int rows = 0;
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            boolean jsonl = isJsonLines(file);
+            if (!jsonl) SessionCsv.writeHeader(w);
+            for (Session s : sessions) {
+                if (jsonl) SessionJsonl.writeRow(w, s);
+                else SessionCsv.writeRow(w, s);
+                rows++;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        return new Result(rows, 0, List.of(), System.nanoTime() - t0);
+    }
+}
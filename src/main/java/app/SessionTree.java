@@ -0,0 +1,352 @@
+package app;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// グループ / タグのツリー表示。
+// フォルダの子要素は初めて展開されたときに作る (閉じたままのフォルダは TreeItem を持たない)。
+// 一括読み込み・インポートでは SessionGroups を別スレッドで作り直し (10 万件で 100 ms 以上かかる)、
+// FX スレッドでは展開状態を引き継いでルートを差し替えるだけにする。
+// 1 件の保存・削除は update で索引と作成済みの TreeItem だけをその場で直す。
+// FX スレッドからのみ操作すること。
+public final class SessionTree {
+    private final TreeView<Object> view = new TreeView<>();
+    private final Consumer<String> log;
+    private final AtomicLong generation = new AtomicLong();
+    private long applied = 0;
+    private SessionGroups groups = SessionGroups.build(List.of());
+    private long materialized = 0;
+    // 作り直しの途中で選択を求められた場合は、差し替え後に選択する
+    private Session pendingSelect;
+    private boolean restoring = false;
+    private Runnable onNextApply;
+
+    public SessionTree(Consumer<String> log) {
+        this.log = log;
+        view.setShowRoot(false);
+        view.setRoot(new GroupItem(SessionGroups.ROOT));
+    }
+
+    public TreeView<Object> view() {
+        return view;
+    }
+
+    // 差し替えに伴う選択の付け直し中 (フォームを読み直す必要はない)
+    public boolean restoring() {
+        return restoring;
+    }
+
+    public SessionGroups groups() {
+        return groups;
+    }
+
+    // これまでに作った TreeItem の数 (起動時に全件を作っていないことの確認用)
+    public long materialized() {
+        return materialized;
+    }
+
+    // 次にツリーが差し替わったときに 1 回だけ呼ぶ (起動計測用)
+    public void onNextApply(Runnable r) {
+        onNextApply = r;
+    }
+
+    // sorted は名前順の一覧のスナップショット
+    public void refresh(List<Session> sorted) {
+        long gen = generation.incrementAndGet();
+        Thread.ofVirtual().name("rdp-launcher-tree").start(() -> {
+            long t0 = System.nanoTime();
+            SessionGroups built = SessionGroups.build(sorted);
+            long buildNanos = System.nanoTime() - t0;
+            Platform.runLater(() -> {
+                if (generation.get() == gen) apply(gen, built, buildNanos, sorted.size());
+            });
+        });
+    }
+
+    // 1 件の追加 (prev == null)・置き換え・削除 (next == null) を反映する。
+    // 作り直しの途中 (まだ差し替わっていない) なら何もせず false を返すので、呼び出し側で refresh すること
+    public boolean update(Session prev, Session next) {
+        if (applied == 0 || applied != generation.get()) return false;
+        List<String> oldPaths = prev == null ? List.of() : SessionGroups.memberPaths(prev);
+        List<String> newPaths = next == null ? List.of() : SessionGroups.memberPaths(next);
+        if (prev != null) groups.remove(prev);
+        if (next != null) groups.add(next);
+
+        // 親から順に並べ、増減したフォルダ・タグを先に付け替えてから件数と中身を直す
+        Set<String> touched = new LinkedHashSet<>();
+        for (String p : oldPaths) withAncestors(p, touched);
+        for (String p : newPaths) withAncestors(p, touched);
+        boolean sameOrder = prev != null && next != null && SessionRegistry.ORDER.compare(prev, next) == 0;
+
+        restoring = true;
+        try {
+            for (String p : touched) {
+                GroupItem item = existingGroup(p);
+                if (item == null) continue;
+                item.setValue(groups.group(p));
+                if (!item.loaded) continue;
+                item.syncGroups();
+                boolean was = oldPaths.contains(p), is = newPaths.contains(p);
+                if (was && is && sameOrder) {
+                    item.replaceSession(prev, next);
+                } else {
+                    if (was) item.removeSession(prev);
+                    if (is) item.insertSession(next);
+                }
+            }
+        } finally {
+            restoring = false;
+        }
+        return true;
+    }
+
+    private void apply(long gen, SessionGroups built, long buildNanos, int sessions) {
+        Set<String> expanded = new HashSet<>();
+        collectExpanded(view.getRoot(), expanded);
+        TreeItem<Object> sel = view.getSelectionModel().getSelectedItem();
+        Object selected = sel == null ? null : sel.getValue();
+
+        long t0 = System.nanoTime();
+        long before = materialized;
+        boolean first = applied == 0;
+        applied = gen;
+        groups = built;
+        restoring = true;
+        try {
+            view.setRoot(new GroupItem(SessionGroups.ROOT));
+            for (String path : expanded) {
+                TreeItem<Object> item = findGroup(path);
+                if (item != null) item.setExpanded(true);
+            }
+
+            if (pendingSelect == null && selected instanceof Session s) {
+                selectNow(s);
+            } else if (pendingSelect == null && selected instanceof SessionGroups.Group g) {
+                TreeItem<Object> item = findGroup(g.path());
+                if (item != null) view.getSelectionModel().select(item);
+            }
+        } finally {
+            restoring = false;
+        }
+        // 明示的に求められた選択はフォームにも反映させる
+        if (pendingSelect != null) {
+            Session s = pendingSelect;
+            pendingSelect = null;
+            selectNow(s);
+        }
+
+        if (onNextApply != null) {
+            Runnable r = onNextApply;
+            onNextApply = null;
+            r.run();
+        }
+        if (first) {
+            log.accept("[INFO] Session tree: " + sessions + " session(s), " + groups.groupCount() + " group(s), "
+                    + (materialized - before) + " item(s) created (build " + TimeUnit.NANOSECONDS.toMillis(buildNanos)
+                    + " ms, apply " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) + " ms)");
+        }
+    }
+
+    public Session selectedSession() {
+        TreeItem<Object> item = view.getSelectionModel().getSelectedItem();
+        return item != null && item.getValue() instanceof Session s ? s : null;
+    }
+
+    public SessionGroups.Group selectedGroup() {
+        TreeItem<Object> item = view.getSelectionModel().getSelectedItem();
+        return item != null && item.getValue() instanceof SessionGroups.Group g ? g : null;
+    }
+
+    public void select(Session s) {
+        if (applied != generation.get()) pendingSelect = s;
+        else selectNow(s);
+    }
+
+    // 親フォルダを開いて (必要なら子を作って) 選択する
+    private void selectNow(Session s) {
+        TreeItem<Object> parent = findGroup(SessionGroups.path(s));
+        if (parent == null) return;
+        for (TreeItem<Object> p = parent; p != null && p != view.getRoot(); p = p.getParent()) p.setExpanded(true);
+        for (TreeItem<Object> child : parent.getChildren()) {
+            if (child.getValue() instanceof Session cs && cs.name().equalsIgnoreCase(s.name())) {
+                view.getSelectionModel().select(child);
+                int row = view.getRow(child);
+                if (row >= 0) view.scrollTo(row);
+                return;
+            }
+        }
+    }
+
+    public void clearSelection() {
+        pendingSelect = null;
+        view.getSelectionModel().clearSelection();
+    }
+
+    private TreeItem<Object> findGroup(String path) {
+        TreeItem<Object> item = view.getRoot();
+        for (String step : steps(path)) {
+            TreeItem<Object> next = null;
+            for (TreeItem<Object> child : item.getChildren()) {
+                if (child.getValue() instanceof SessionGroups.Group g && g.path().equals(step)) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null) return null;
+            item = next;
+        }
+        return item;
+    }
+
+    // 作成済みの TreeItem だけをたどる (閉じたままのフォルダの子は作らない)
+    private GroupItem existingGroup(String path) {
+        GroupItem item = (GroupItem) view.getRoot();
+        for (String step : steps(path)) {
+            if (!item.loaded) return null;
+            GroupItem next = null;
+            for (TreeItem<Object> child : item.getChildren()) {
+                if (!(child instanceof GroupItem g)) break;
+                if (g.path.equals(step)) {
+                    next = g;
+                    break;
+                }
+            }
+            if (next == null) return null;
+            item = next;
+        }
+        return item;
+    }
+
+    // タグは TAGS 直下の 1 階層、フォルダは '/' ごとに 1 階層ずつ下りる
+    private static List<String> steps(String path) {
+        List<String> steps = new ArrayList<>();
+        if (path.isEmpty()) return steps;
+        if (path.startsWith(SessionGroups.TAGS)) {
+            steps.add(SessionGroups.TAGS);
+            if (!path.equals(SessionGroups.TAGS)) steps.add(path);
+        } else {
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) steps.add(path.substring(0, i));
+            steps.add(path);
+        }
+        return steps;
+    }
+
+    private static void withAncestors(String path, Set<String> out) {
+        out.add(SessionGroups.ROOT);
+        out.addAll(steps(path));
+    }
+
+    private static void collectExpanded(TreeItem<Object> item, Set<String> out) {
+        if (!(item instanceof GroupItem g) || !g.loaded) return;
+        if (item.isExpanded() && !g.path.isEmpty()) out.add(g.path);
+        for (TreeItem<Object> child : g.getChildren()) collectExpanded(child, out);
+    }
+
+    private final class GroupItem extends TreeItem<Object> {
+        private final String path;
+        private boolean loaded = false;
+
+        GroupItem(String path) {
+            super(groups.group(path));
+            this.path = path;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+
+        @Override
+        public ObservableList<TreeItem<Object>> getChildren() {
+            ObservableList<TreeItem<Object>> children = super.getChildren();
+            if (!loaded) {
+                loaded = true;
+                List<TreeItem<Object>> items = new ArrayList<>();
+                for (SessionGroups.Group g : groups.childGroups(path)) items.add(new GroupItem(g.path()));
+                if (path.isEmpty() && groups.hasTags()) items.add(new GroupItem(SessionGroups.TAGS));
+                for (Session s : groups.sessionsIn(path)) items.add(new TreeItem<>(s));
+                materialized += items.size();
+                children.setAll(items);
+            }
+            return children;
+        }
+
+        // 先頭のフォルダ (ルートなら Tags も) の並びを索引に合わせる。残るものは展開状態ごと使い回す
+        void syncGroups() {
+            ObservableList<TreeItem<Object>> children = getChildren();
+            int n = groupCount(children);
+            List<String> want = new ArrayList<>();
+            for (SessionGroups.Group g : groups.childGroups(path)) want.add(g.path());
+            if (path.isEmpty() && groups.hasTags()) want.add(SessionGroups.TAGS);
+
+            boolean same = n == want.size();
+            for (int i = 0; same && i < n; i++) same = ((GroupItem) children.get(i)).path.equals(want.get(i));
+            if (same) return;
+
+            Map<String, TreeItem<Object>> have = new HashMap<>();
+            for (int i = 0; i < n; i++) have.put(((GroupItem) children.get(i)).path, children.get(i));
+            List<TreeItem<Object>> items = new ArrayList<>(want.size());
+            for (String p : want) {
+                TreeItem<Object> item = have.get(p);
+                if (item == null) {
+                    item = new GroupItem(p);
+                    materialized++;
+                }
+                items.add(item);
+            }
+            children.remove(0, n);
+            children.addAll(0, items);
+        }
+
+        // 名前が変わらない置き換えは値だけ差し替える (選択を保つ)
+        void replaceSession(Session prev, Session next) {
+            int i = indexOfSession(prev);
+            if (i >= 0) getChildren().get(i).setValue(next);
+            else insertSession(next);
+        }
+
+        void removeSession(Session s) {
+            int i = indexOfSession(s);
+            if (i >= 0) getChildren().remove(i);
+        }
+
+        void insertSession(Session s) {
+            int i = indexOfSession(s);
+            if (i >= 0) {
+                getChildren().get(i).setValue(s);
+                return;
+            }
+            getChildren().add(-i - 1, new TreeItem<>(s));
+            materialized++;
+        }
+
+        // フォルダの後ろに名前順で並ぶセッションを二分探索する。見つからなければ -(挿入位置) - 1
+        private int indexOfSession(Session s) {
+            ObservableList<TreeItem<Object>> children = getChildren();
+            int from = groupCount(children);
+            int i = Collections.binarySearch(children.subList(from, children.size()), null,
+                    (item, ignored) -> SessionRegistry.ORDER.compare((Session) item.getValue(), s));
+            return i >= 0 ? from + i : -(from + (-i - 1)) - 1;
+        }
+
+        private static int groupCount(List<TreeItem<Object>> children) {
+            int n = 0;
+            while (n < children.size() && children.get(n) instanceof GroupItem) n++;
+            return n;
+        }
+    }
+}
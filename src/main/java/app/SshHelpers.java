@@ -2,9 +2,7 @@ package app;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,13 +13,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 public final class SshHelpers {
 
     private SshHelpers() {}
 
-    public record SshStartResult(int pid, String outLog, String errLog) {}
+    public record SshStartResult(int pid, String outLog, String errLog, long readyMillis) {
+        SshStartResult withReadyMillis(long ms) {
+            return new SshStartResult(pid, outLog, errLog, ms);
+        }
+    }
+
+    // askpass の入力待ちを含むため長めに取る
+    private static final Duration READY_TIMEOUT = Duration.ofSeconds(120);
 
     private static final Pattern NEEDS_INPUT = Pattern.compile(
             "(?i)(password|passphrase|keyboard-interactive|verification code|one-time|otp|enter.*pass|permission denied)"
@@ -38,72 +44,229 @@ public final class SshHelpers {
             String rdpHost,
             int rdpPort
     ) throws IOException, InterruptedException {
+        String forward = localBind + ":" + localPort + ":" + rdpHost + ":" + rdpPort;
+        return startSmart(appDir, appKnownHosts, localBind, localPort, sshAlias, jumpHosts, sshOptions,
+                List.of("-L", forward));
+    }
+
+    // 踏み台チェーンごとに 1 本張る SOCKS (-D) マスター。RDP 転送はアプリ内でこの上に載せる
+    public static SshStartResult startSshMasterSmart(
+            Path appDir,
+            Path appKnownHosts,
+            String localBind,
+            int socksPort,
+            String sshAlias,
+            String jumpHosts,
+            String sshOptions
+    ) throws IOException, InterruptedException {
+        return startSmart(appDir, appKnownHosts, localBind, socksPort, sshAlias, jumpHosts, sshOptions,
+                List.of("-D", localBind + ":" + socksPort));
+    }
+
+    private static final AuthStrategyCache AUTH_CACHE = new AuthStrategyCache();
+    private static final AtomicLong ASKPASS_TAGS = new AtomicLong();
+
+    public static AuthStrategyCache.Stats authStats() {
+        return AUTH_CACHE.stats();
+    }
+
+    private static SshStartResult startSmart(
+            Path appDir,
+            Path appKnownHosts,
+            String localBind,
+            int localPort,
+            String sshAlias,
+            String jumpHosts,
+            String sshOptions,
+            List<String> forwardArgs
+    ) throws IOException, InterruptedException {
+        // 起動を諦めた (タイムアウト・失敗・接続のキャンセル) ときに表示中の askpass ダイアログを閉じる
+        String tag = "ssh-" + ASKPASS_TAGS.incrementAndGet();
+        try {
+            return startSmart(appDir, appKnownHosts, localBind, localPort, sshAlias, jumpHosts, sshOptions, forwardArgs, tag);
+        } finally {
+            AskPassServer.cancelPrompts(tag);
+        }
+    }
+
+    private static SshStartResult startSmart(
+            Path appDir,
+            Path appKnownHosts,
+            String localBind,
+            int localPort,
+            String sshAlias,
+            String jumpHosts,
+            String sshOptions,
+            List<String> forwardArgs,
+            String askpassTag
+    ) throws IOException, InterruptedException {
 
         Files.createDirectories(appDir);
 
+        TunnelPool.ChainKey key = TunnelPool.ChainKey.of(sshAlias, jumpHosts, sshOptions);
+        AuthStrategyCache.Strategy cached = AUTH_CACHE.lookup(key);
+        boolean batch = cached == null || cached.mode() == AuthStrategyCache.Mode.BATCH;
+        String preferred = cached == null ? null : cached.method();
+
         SshStartResult r1 = startTunnelHidden(
-                appDir, appKnownHosts, localBind, localPort, sshAlias, jumpHosts, sshOptions, rdpHost, rdpPort,
-                true,
-                null
+                appKnownHosts, sshAlias, jumpHosts, sshOptions, forwardArgs,
+                batch,
+                batch ? null : resolveAskPassProgram().toAbsolutePath().toString(),
+                askpassTag,
+                preferred
         );
 
-        Thread.sleep(300);
-        if (isProcessAlive(r1.pid())) return r1;
+        TunnelReadiness.Result ready1 = awaitOrStop(r1, localBind, localPort);
+        if (ready1.ready()) {
+            if (!batch) AUTH_CACHE.recordSavedHandshake();
+            return learned(key, batch, r1, ready1);
+        }
+        stopSshIfNeeded(r1.pid());
+        // 前回の方式が通らなくなったら忘れて最初から判定し直す
+        if (cached != null) AUTH_CACHE.invalidate(key);
+
+        if (ready1.state() == TunnelReadiness.State.TIMEOUT) {
+            throw new IOException("SSH tunnel did not open a local port: "
+                    + localBind + ":" + localPort + "\n" + ready1.errTail());
+        }
+
+        String tail = ready1.errTail();
+        if (!batch) {
+            // 入力済みのパスワード / OTP が拒否されたかキャンセルされた。二重に聞き直さない
+            throw new IOException("SSH tunnel start failed (askpass).\n" + tail);
+        }
 
-        String tail = tailTextFile(r1.errLog(), 120);
-        if (NEEDS_INPUT.matcher(tail).find()) {
+        // 認証自体は通っている (転送失敗など) なら askpass で再試行しても意味がない
+        if (NEEDS_INPUT.matcher(tail).find() && AuthStrategyCache.authenticatedMethod(tail) == null) {
             Path askpassCmd = resolveAskPassProgram();
-            askpassCmd.toFile().deleteOnExit();
 
             SshStartResult r2 = startTunnelHidden(
-                    appDir, appKnownHosts, localBind, localPort, sshAlias, jumpHosts, sshOptions, rdpHost, rdpPort,
+                    appKnownHosts, sshAlias, jumpHosts, sshOptions, forwardArgs,
                     false,
-                    askpassCmd.toAbsolutePath().toString()
+                    askpassCmd.toAbsolutePath().toString(),
+                    askpassTag,
+                    null
             );
 
-            Thread.sleep(300);
-            if (isProcessAlive(r2.pid())) return r2;
+            TunnelReadiness.Result ready2 = awaitOrStop(r2, localBind, localPort);
+            if (ready2.ready()) return learned(key, false, r2, ready2);
+            stopSshIfNeeded(r2.pid());
 
-            String tail2 = tailTextFile(r2.errLog(), 160);
             String outTail2 = tailTextFile(r2.outLog(), 80);
             throw new IOException("SSH tunnel start failed (askpass).\nSTDERR:\n"
-                    + tail2 + "\nSTDOUT:\n" + outTail2);
+                    + ready2.errTail() + "\nSTDOUT:\n" + outTail2);
         }
 
         throw new IOException("SSH tunnel start failed.\n" + tail);
     }
 
+    private static SshStartResult learned(
+            TunnelPool.ChainKey key, boolean batch, SshStartResult r, TunnelReadiness.Result ready) {
+        // 踏み台 (-J) の子 ssh には PreferredAuthentications が効かないので、方式は最終ホストの分だけ覚える
+        String method = AuthStrategyCache.authenticatedMethod(tailTextFile(r.errLog(), 200));
+        AUTH_CACHE.remember(key, batch ? AuthStrategyCache.Mode.BATCH : AuthStrategyCache.Mode.INTERACTIVE, method);
+        return r.withReadyMillis(ready.elapsedMillis());
+    }
+
+    // 接続がキャンセルされた場合は起動済みの ssh を止めてから中断を伝える
+    private static TunnelReadiness.Result awaitOrStop(SshStartResult r, String localBind, int localPort)
+            throws IOException, InterruptedException {
+        try {
+            return TunnelReadiness.await(r.pid(), r.errLog(), localBind, localPort, READY_TIMEOUT);
+        } catch (InterruptedException e) {
+            stopSshIfNeeded(r.pid());
+            throw e;
+        }
+    }
+
     private static SshStartResult startTunnelHidden(
-            Path appDir,
             Path appKnownHosts,
-            String localBind,
-            int localPort,
             String sshAlias,
             String jumpHosts,
             String sshOptions,
-            String rdpHost,
-            int rdpPort,
+            List<String> forwardArgs,
             boolean batchMode,
-            String askpassCmd
+            String askpassCmd,
+            String askpassTag,
+            String preferredAuth
     ) throws IOException, InterruptedException {
 
-        String forward = localBind + ":" + localPort + ":" + rdpHost + ":" + rdpPort;
+        SshLogs.Pair logs = SshLogs.allocate(sshAlias);
+        String outLog = logs.outLog();
+        String errLog = logs.errLog();
+
+        List<String> extra = new ArrayList<>();
+        // 成功した認証方式を err ログから拾うため (ユーザー指定の LogLevel があればそちらを優先)
+        if (!containsOption(sshOptions, "loglevel")) {
+            extra.add("-o"); extra.add("LogLevel=VERBOSE");
+        }
+        if (preferredAuth != null && !containsOption(sshOptions, "preferredauthentications")) {
+            extra.add("-o"); extra.add("PreferredAuthentications=" + preferredAuth);
+        }
+
+        List<String> args = buildSshArgs(appKnownHosts, sshAlias, jumpHosts, sshOptions, forwardArgs, batchMode, extra);
+        Map<String, String> env = askPassEnv(batchMode, askpassCmd, askpassTag);
+
+        HiddenExec.StartResult sr;
+        try {
+            sr = HiddenExec.startHiddenWithLogs(
+                    "ssh.exe",
+                    args,
+                    outLog,
+                    errLog,
+                    env
+            );
+        } catch (IOException e) {
+            SshLogs.release(errLog);
+            throw e;
+        }
+        // ssh が動いている間 (マスターは保持期間中も) はログを間引かない
+        SshLogs.owner(errLog, sr.pid());
+
+        return new SshStartResult(sr.pid(), outLog, errLog, -1);
+    }
+
+    // PortForwarder.sshStdio 用: 接続ごとに ssh -W host:port を起動するコマンド
+    public static List<String> stdioForwardCommand(
+            Path appKnownHosts,
+            String sshAlias,
+            String jumpHosts,
+            String sshOptions,
+            String rdpHost,
+            int rdpPort
+    ) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("ssh.exe");
+        cmd.addAll(buildSshArgs(appKnownHosts, sshAlias, jumpHosts, sshOptions,
+                List.of("-W", rdpHost + ":" + rdpPort), false, List.of()));
+        return cmd;
+    }
 
-        String tempDir = System.getenv("TEMP");
-        String outLog = Paths.get(tempDir, "rdp-launcher-ssh-out.log").toString();
-        String errLog = Paths.get(tempDir, "rdp-launcher-ssh-err.log").toString();
+    // askpassTag: 接続の片付け時に AskPassServer.cancelPrompts で待ちを打ち切るための識別子
+    public static Map<String, String> stdioForwardEnv(String askpassTag) throws IOException {
+        return askPassEnv(false, resolveAskPassProgram().toAbsolutePath().toString(), askpassTag);
+    }
 
+    private static List<String> buildSshArgs(
+            Path appKnownHosts,
+            String sshAlias,
+            String jumpHosts,
+            String sshOptions,
+            List<String> forwardArgs,
+            boolean batchMode,
+            List<String> extraOptions
+    ) {
         List<String> args = new ArrayList<>();
-        args.add("-N");
+        if (!forwardArgs.contains("-W")) args.add("-N");
         args.add("-T");
-        args.add("-L");
-        args.add(forward);
+        args.addAll(forwardArgs);
 
         args.add("-o"); args.add("ExitOnForwardFailure=yes");
         args.add("-o"); args.add("ConnectTimeout=10");
         args.add("-o"); args.add("StrictHostKeyChecking=accept-new");
         args.add("-o"); args.add("UserKnownHostsFile=" + appKnownHosts.toAbsolutePath());
         args.add("-o"); args.add("BatchMode=" + (batchMode ? "yes" : "no"));
+        args.addAll(extraOptions);
 
         if (jumpHosts != null && !jumpHosts.isBlank() && !containsProxyJumpOption(sshOptions)) {
             args.add("-J");
@@ -112,23 +275,18 @@ public final class SshHelpers {
 
         args.addAll(splitSshOptions(sshOptions));
         args.add(sshAlias);
+        return args;
+    }
 
+    private static Map<String, String> askPassEnv(boolean batchMode, String askpassCmd, String askpassTag) {
         Map<String, String> env = new HashMap<>();
         if (!batchMode && askpassCmd != null) {
             env.put("SSH_ASKPASS", askpassCmd);
             env.put("SSH_ASKPASS_REQUIRE", "force");
             env.put("DISPLAY", "1");
+            if (askpassTag != null) env.put(AskPassServer.TAG_ENV, askpassTag);
         }
-
-        HiddenExec.StartResult sr = HiddenExec.startHiddenWithLogs(
-                "ssh.exe",
-                args,
-                outLog,
-                errLog,
-                env
-        );
-
-        return new SshStartResult(sr.pid(), outLog, errLog);
+        return env;
     }
 
     private static boolean containsProxyJumpOption(String sshOptions) {
@@ -139,7 +297,11 @@ public final class SshHelpers {
                 || normalized.contains("proxycommand");
     }
 
-    private static String normalizeJumpHosts(String jumpHosts) {
+    private static boolean containsOption(String sshOptions, String name) {
+        return sshOptions != null && sshOptions.toLowerCase().contains(name);
+    }
+
+    static String normalizeJumpHosts(String jumpHosts) {
         String[] parts = jumpHosts.split(",");
         List<String> cleaned = new ArrayList<>();
         for (String part : parts) {
@@ -150,16 +312,20 @@ public final class SshHelpers {
     }
 
     private static Path createAskPassCmd() throws IOException {
-        String javaw = Paths.get(System.getProperty("java.home"), "bin", "javaw.exe").toString();
-        String cp = System.getProperty("java.class.path");
         String appExe = ProcessHandle.current().info().command().orElse("");
+        List<String> askPass = askPassCommand();
 
         Path cmd = Files.createTempFile("rdp-launcher-askpass-", ".cmd");
         String command;
-        if (isPackagedAppExe(appExe)) {
+        if (askPass != null) {
+            StringBuilder sb = new StringBuilder();
+            for (String a : askPass) sb.append('"').append(a).append("\" ");
+            command = sb + "%*";
+        } else if (isPackagedAppExe(appExe)) {
             command = "\"" + appExe + "\" %*";
         } else {
-            command = "\"" + javaw + "\" -cp \"" + cp + "\" app.AskPassMain %*";
+            String javaw = Paths.get(System.getProperty("java.home"), "bin", "javaw.exe").toString();
+            command = "\"" + javaw + "\" -cp \"" + System.getProperty("java.class.path") + "\" app.AskPassMain %*";
         }
 
         String content = "@echo off\r\n" + command + "\r\n";
@@ -167,6 +333,31 @@ public final class SshHelpers {
         return cmd;
     }
 
+    // JavaFX を読み込まない AskPassMain を javaw で直接起動する。
+    // jlink / jpackage のイメージではアプリのモジュールがランタイムに含まれているので -m だけでよく、
+    // 専用の AppCDS アーカイブがあれば使う。javaw が無いランタイムでは null (アプリの exe 経由に戻す)
+    static List<String> askPassCommand() {
+        Path home = Paths.get(System.getProperty("java.home"));
+        Path javaw = home.resolve("bin").resolve("javaw.exe");
+        if (!Files.isRegularFile(javaw)) return null;
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(javaw.toString());
+        cmd.addAll(AskPassMain.JVM_OPTIONS);
+        Path jsa = home.resolve("lib").resolve(AskPassMain.CDS_ARCHIVE);
+        if (Files.isRegularFile(jsa)) cmd.add("-XX:SharedArchiveFile=" + jsa);
+
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null && !modulePath.isBlank()) {
+            cmd.addAll(List.of("--module-path", modulePath, "-m", "app/app.AskPassMain"));
+        } else if (AskPassMain.class.getModule().isNamed()) {
+            cmd.addAll(List.of("-m", "app/app.AskPassMain"));
+        } else {
+            cmd.addAll(List.of("-cp", System.getProperty("java.class.path"), "app.AskPassMain"));
+        }
+        return cmd;
+    }
+
     public static void stopSshIfNeeded(int pid) throws IOException, InterruptedException {
         if (pid <= 0) return;
         HiddenExec.runHiddenAndWait("taskkill.exe", List.of("/PID", String.valueOf(pid), "/T", "/F"));
@@ -181,22 +372,10 @@ public final class SshHelpers {
     }
 
     public static boolean waitLocalPortOpen(String host, int port, Duration timeout) {
-        long deadline = System.nanoTime() + timeout.toNanos();
-        while (System.nanoTime() < deadline) {
-            if (canConnect(host, port, 300)) return true;
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException ignored) {
-            }
-        }
-        return false;
-    }
-
-    private static boolean canConnect(String host, int port, int timeoutMs) {
-        try (Socket s = new Socket()) {
-            s.connect(new InetSocketAddress(host, port), timeoutMs);
-            return true;
-        } catch (IOException e) {
+        try {
+            return TunnelReadiness.waitPortOpen(host, port, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
@@ -209,13 +388,7 @@ public final class SshHelpers {
 
     public static String tailTextFile(String path, int maxLines) {
         if (path == null || path.isBlank()) return "";
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(path), Charset.defaultCharset());
-            if (lines.size() <= maxLines) return String.join(System.lineSeparator(), lines);
-            return String.join(System.lineSeparator(), lines.subList(lines.size() - maxLines, lines.size()));
-        } catch (Exception e) {
-            return "";
-        }
+        return LogTail.lastLines(Paths.get(path), maxLines);
     }
 
     public static List<String> splitSshOptions(String s) {
@@ -252,10 +425,25 @@ public final class SshHelpers {
         return out;
     }
 
+    private static volatile Path processAskPassCmd;
+
     private static Path resolveAskPassProgram() throws IOException {
         // Use a tiny .cmd shim consistently. OpenSSH for Windows handles this
         // more reliably than passing the packaged GUI exe directly as SSH_ASKPASS.
-        return createAskPassCmd();
+        if (AskPassServer.enabled()) {
+            try {
+                return AskPassServer.shared().clientShim();
+            } catch (IOException ignored) {
+                // サーバーが立たなければ従来の JVM 起動 shim
+            }
+        }
+        Path p = processAskPassCmd;
+        if (p == null || !Files.exists(p)) {
+            p = createAskPassCmd();
+            p.toFile().deleteOnExit();
+            processAskPassCmd = p;
+        }
+        return p;
     }
 
     private static boolean isPackagedAppExe(String command) {
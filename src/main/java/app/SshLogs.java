@@ -0,0 +1,142 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+// ssh の stdout / stderr を接続ごとの別ファイルに出す。古いファイルは件数で間引き、各ファイルはサイズでローテーションする
+public final class SshLogs {
+
+    private SshLogs() {}
+
+    public record Pair(String outLog, String errLog) {}
+
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    // -Drdp.launcher.sshLogKeep=40 : ディレクトリに残すログファイル数
+    private static final int KEEP = Integer.getInteger("rdp.launcher.sshLogKeep", 40);
+    // -Drdp.launcher.sshLogMaxKb=1024 : ログ 1 本をローテーションするサイズ
+    private static final long MAX_BYTES = Long.getLong("rdp.launcher.sshLogMaxKb", 1024) * 1024;
+    private static final int GENERATIONS = 3;
+
+    // 使用中のログの base ("ssh-...-N") と、まだ使われているかの判定。prune はこれに当たるファイルを消さない。
+    // allocate した時点で登録し、owner で持ち主 (ssh のプロセスや接続) を結び付ける。持ち主が終わったものは prune のときに外す
+    private static final Map<String, BooleanSupplier> LIVE = new ConcurrentHashMap<>();
+
+    public static Path dir() {
+        String temp = System.getenv("TEMP");
+        if (temp == null || temp.isBlank()) temp = System.getProperty("java.io.tmpdir");
+        return Paths.get(temp, "rdp-launcher-logs");
+    }
+
+    public static Pair allocate(String label) throws IOException {
+        Path dir = dir();
+        Files.createDirectories(dir);
+        prune(dir);
+
+        String base = "ssh-" + sanitize(label) + "-" + LocalDateTime.now().format(STAMP) + "-" + SEQ.incrementAndGet();
+        LIVE.put(base, () -> true);
+        return new Pair(dir.resolve(base + ".out.log").toString(), dir.resolve(base + ".err.log").toString());
+    }
+
+    // log (allocate が返したどちらか) を、alive が false になるまで prune から守る
+    public static void owner(String log, BooleanSupplier alive) {
+        LIVE.replace(base(Path.of(log)), alive);
+    }
+
+    public static void owner(String log, int pid) {
+        owner(log, () -> SshHelpers.isProcessAlive(pid));
+    }
+
+    // 使われなかったログ (起動に失敗した) を prune の対象に戻す
+    public static void release(String log) {
+        LIVE.remove(base(Path.of(log)));
+    }
+
+    // ssh の出力をパイプで受けてログに書く。長時間動くマスターでも MAX_BYTES ごとにローテーションし、GENERATIONS 世代まで残す
+    public static void pump(InputStream in, String log) throws IOException {
+        RotatingLogFile.pump(in, Path.of(log), MAX_BYTES);
+    }
+
+    // 書き込み中 (Windows ではロックされている) のファイルは移動に失敗するので、そのまま追記を続ける
+    public static void rotateIfNeeded(Path log, long maxBytes) {
+        try {
+            if (!Files.exists(log) || Files.size(log) < maxBytes) return;
+        } catch (IOException e) {
+            return;
+        }
+        rotate(log);
+    }
+
+    static void rotate(Path log) {
+        try {
+            for (int i = GENERATIONS - 1; i >= 1; i--) {
+                Path from = generation(log, i);
+                if (Files.exists(from)) Files.move(from, generation(log, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(log, generation(log, 1), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Path generation(Path log, int n) {
+        return log.resolveSibling(log.getFileName() + "." + n);
+    }
+
+    static void prune(Path dir) {
+        LIVE.values().removeIf(alive -> !alive.getAsBoolean());
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "ssh-*")) {
+            for (Path p : ds) if (!LIVE.containsKey(base(p))) files.add(p);
+        } catch (IOException e) {
+            return;
+        }
+        if (files.size() <= KEEP) return;
+
+        files.sort(Comparator.comparing(SshLogs::modified).reversed());
+        for (Path p : files.subList(KEEP, files.size())) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException ignored) {
+                // 使用中
+            }
+        }
+    }
+
+    // "ssh-x-20240101-120000-7.err.log.2" -> "ssh-x-20240101-120000-7"
+    private static String base(Path log) {
+        String name = log.getFileName().toString();
+        int i = name.indexOf(".out.log");
+        if (i < 0) i = name.indexOf(".err.log");
+        return i < 0 ? name : name.substring(0, i);
+    }
+
+    private static FileTime modified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String sanitize(String label) {
+        String s = label == null ? "" : label.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (s.length() > 40) s = s.substring(0, 40);
+        return s.isEmpty() ? "session" : s;
+    }
+}
@@ -0,0 +1,62 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// 接続パイプラインの各段の所要時間 (time-to-desktop の内訳)
+public final class StageTimer {
+
+    @FunctionalInterface
+    public interface Listener {
+        void stage(String stage, long nanos, boolean ok);
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private final Listener listener;
+
+    public StageTimer() {
+        this(null);
+    }
+
+    public StageTimer(Listener listener) {
+        this.listener = listener;
+    }
+
+    public <T> T time(String stage, Callable<T> body) throws Exception {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            T v = body.call();
+            ok = true;
+            return v;
+        } finally {
+            long nanos = System.nanoTime() - t0;
+            record(stage, nanos);
+            if (listener != null) listener.stage(stage, nanos, ok);
+        }
+    }
+
+    public synchronized void record(String stage, long nanos) {
+        stages.merge(stage, nanos, Long::sum);
+    }
+
+    public synchronized Map<String, Long> stagesNanos() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (var e : stages.entrySet()) {
+            sb.append(e.getKey()).append('=').append(TimeUnit.NANOSECONDS.toMillis(e.getValue())).append("ms ");
+        }
+        sb.append("total=").append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos())).append("ms");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package app;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 起動の各段階 (JVM 起動からの経過時間) を記録する。
+// launch: Application.start 開始 / first-frame: 最初の描画 / sessions-read: セッションの読み込み完了 (別スレッド)
+// sessions-shown: 一覧への反映完了 / interactive: ツリーの表示まで終わり操作できる状態
+// -Drdp.launcher.startupExit=true のときは interactive で 1 行出力して終了する (起動ベンチマーク用)
+public final class StartupTrace {
+    public static final boolean EXIT_WHEN_INTERACTIVE = Boolean.getBoolean("rdp.launcher.startupExit");
+
+    private final long originNanos;
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    public StartupTrace() {
+        // JVM (プロセス) の起動時刻が取れればそこから、取れなければ生成時点から測る
+        long sinceProcessStart = ProcessHandle.current().info().startInstant()
+                .map(t -> Duration.between(t, Instant.now()).toNanos())
+                .orElse(0L);
+        this.originNanos = System.nanoTime() - Math.max(0, sinceProcessStart);
+    }
+
+    public synchronized void mark(String stage) {
+        marks.putIfAbsent(stage, System.nanoTime() - originNanos);
+    }
+
+    public synchronized long millis(String stage) {
+        Long v = marks.get(stage);
+        return v == null ? -1 : TimeUnit.NANOSECONDS.toMillis(v);
+    }
+
+    // ConnectMetrics の "_startup" 行として Metrics ダイアログ / Prometheus に出す
+    public synchronized void record(ConnectMetrics metrics) {
+        marks.forEach((stage, nanos) -> metrics.recordInternal("_startup", stage, nanos, true));
+    }
+
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        marks.forEach((stage, nanos) -> {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(stage).append('=').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms");
+        });
+        return sb.toString();
+    }
+}
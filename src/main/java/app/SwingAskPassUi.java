@@ -0,0 +1,82 @@
+package app;
+
+import javax.swing.*;
+import java.awt.*;
+
+// Swing のダイアログ。Windows 以外や、ネイティブのダイアログが使えない場合に使う
+public final class SwingAskPassUi implements AskPassUi {
+    private static final String TITLE = "SSH Authentication";
+
+    @Override
+    public String name() {
+        return "swing";
+    }
+
+    @Override
+    public String ask(AskPassPrompt prompt) {
+        if (!prompt.secret()) {
+            JDialog dummy = owner();
+            int r = JOptionPane.showConfirmDialog(dummy, prompt.text(), TITLE,
+                    JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            dummy.dispose();
+            return prompt.confirmAnswer(r == JOptionPane.YES_OPTION);
+        }
+        return promptPassword(prompt.text());
+    }
+
+    static String promptPassword(String prompt) {
+        try {
+            JDialog dummy = owner();
+
+            JPasswordField pf = new JPasswordField(24);
+            JPanel p = passwordPanel(prompt, pf);
+
+            int r = JOptionPane.showConfirmDialog(
+                    dummy,
+                    p,
+                    TITLE,
+                    JOptionPane.OK_CANCEL_OPTION,
+                    JOptionPane.PLAIN_MESSAGE
+            );
+            dummy.dispose();
+
+            if (r != JOptionPane.OK_OPTION) return null;
+
+            char[] chars = pf.getPassword();
+            if (chars == null) return "";
+            return new String(chars);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // 最前面っぽくする
+    private static JDialog owner() {
+        JDialog dummy = new JDialog((Frame) null, true);
+        dummy.setAlwaysOnTop(true);
+        dummy.setLocationRelativeTo(null);
+        return dummy;
+    }
+
+    private static JPanel passwordPanel(String prompt, JPasswordField pf) {
+        JPanel p = new JPanel(new BorderLayout(8, 8));
+        p.add(new JLabel(prompt), BorderLayout.NORTH);
+        p.add(pf, BorderLayout.CENTER);
+        return p;
+    }
+
+    // showConfirmDialog と同じ部品を作り、pack でネイティブ側まで初期化してから捨てる
+    @Override
+    public void warmUp() {
+        try {
+            JOptionPane pane = new JOptionPane(passwordPanel("Password:", new JPasswordField(24)),
+                    JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION);
+            JDialog d = pane.createDialog(null, TITLE);
+            d.setAlwaysOnTop(true);
+            d.pack();
+            d.dispose();
+        } catch (Exception ignored) {
+            // ヘッドレス環境などでは呼び出し側のクラスだけで学習する
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package app;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 接続ワークフロー用の仮想スレッド実行器。mstsc の終了待ちなどでブロックしてもプラットフォームスレッドを占有しない。
+public final class TaskRunner {
+
+    public record Metrics(
+            long submitted,
+            int active,
+            int peakActive,
+            long completed,
+            long failed,
+            long avgQueueWaitMicros,
+            long maxQueueWaitMicros,
+            long avgLatencyMillis,
+            long maxLatencyMillis
+    ) {
+        @Override public String toString() {
+            return "tasks=" + submitted + " active=" + active + " peak=" + peakActive
+                    + " failed=" + failed
+                    + " queueWait(avg/max)=" + avgQueueWaitMicros + "/" + maxQueueWaitMicros + "us"
+                    + " latency(avg/max)=" + avgLatencyMillis + "/" + maxLatencyMillis + "ms";
+        }
+    }
+
+    private final ExecutorService exec;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public TaskRunner(String threadName) {
+        this.exec = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadName + "-", 0).factory());
+    }
+
+    public Future<?> submit(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        long queued = System.nanoTime();
+        submitted.incrementAndGet();
+        return exec.submit(() -> {
+            long start = System.nanoTime();
+            started.incrementAndGet();
+            record(queueWaitNanos, maxQueueWaitNanos, start - queued);
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            boolean ok = false;
+            try {
+                T v = task.call();
+                ok = true;
+                return v;
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+                if (!ok) failed.incrementAndGet();
+                record(latencyNanos, maxLatencyNanos, System.nanoTime() - start);
+            }
+        });
+    }
+
+    public Scope scope() {
+        return new Scope();
+    }
+
+    public Metrics metrics() {
+        long n = Math.max(1, completed.get());
+        long s = Math.max(1, started.get());
+        return new Metrics(
+                submitted.get(),
+                active.get(),
+                peakActive.get(),
+                completed.get(),
+                failed.get(),
+                queueWaitNanos.get() / s / 1000,
+                maxQueueWaitNanos.get() / 1000,
+                latencyNanos.get() / n / 1_000_000,
+                maxLatencyNanos.get() / 1_000_000
+        );
+    }
+
+    public void shutdownNow() {
+        exec.shutdownNow();
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    // 子タスクの束。どれかが失敗するか親が中断されると残りを中断し、join() / close() は全子タスクが抜けるまで待つ
+    // (StructuredTaskScope と同じく、スコープを出た後に子タスクが親の後片付けと競合しないようにする)。
+    public final class Scope implements AutoCloseable {
+        private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        // 親の分を 1 つ登録しておき、子タスクごとに 1 つ足す。全子タスクが抜けると親の arrive で phase が進む
+        private final Phaser pending = new Phaser(1);
+        private volatile boolean shutdown = false;
+
+        public <T> Future<T> fork(Callable<T> task) {
+            pending.register();
+            try {
+                return submit(() -> {
+                    Thread self = Thread.currentThread();
+                    running.add(self);
+                    try {
+                        if (shutdown) throw new CancellationException("Scope is shut down");
+                        return task.call();
+                    } catch (Throwable t) {
+                        if (firstFailure.compareAndSet(null, t)) shutdown();
+                        throw t;
+                    } finally {
+                        running.remove(self);
+                        pending.arriveAndDeregister();
+                    }
+                });
+            } catch (RuntimeException e) {
+                pending.arriveAndDeregister();
+                throw e;
+            }
+        }
+
+        // 全子タスクの終了を待ち、最初の失敗原因を投げる。中断された場合も子タスクを止めて抜けるまで待つ
+        public void join() throws InterruptedException, ExecutionException {
+            int phase = pending.arrive();
+            try {
+                pending.awaitAdvanceInterruptibly(phase);
+            } catch (InterruptedException e) {
+                shutdown();
+                pending.awaitAdvance(phase);
+                throw e;
+            }
+            Throwable cause = firstFailure.get();
+            if (cause != null) throw new ExecutionException(cause.getMessage(), cause);
+        }
+
+        // 未完了の子タスクを中断し、抜けるまで待つ
+        @Override
+        public void close() {
+            shutdown();
+            pending.awaitAdvance(pending.arrive());
+        }
+
+        private void shutdown() {
+            shutdown = true;
+            for (Thread t : running) t.interrupt();
+        }
+    }
+}
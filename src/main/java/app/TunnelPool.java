@@ -0,0 +1,207 @@
+package app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 踏み台チェーン (sshAlias, jumpHosts, sshOptions) ごとに認証済み ssh -D マスターを 1 本保持する。
+// Win32-OpenSSH は ControlMaster を持たないため、後続の RDP 転送は SOCKS 経由でこのマスターに相乗りする。
+// SOCKS ポートは -L と違って転送先を限定しないため、保持中は同じ PC の他のプロセスからも踏み台経由で任意の宛先に届く。
+public final class TunnelPool {
+
+    public record ChainKey(String sshAlias, String jumpHosts, String sshOptions) {
+        public static ChainKey of(String sshAlias, String jumpHosts, String sshOptions) {
+            return new ChainKey(
+                    norm(sshAlias).toLowerCase(Locale.ROOT),
+                    SshHelpers.normalizeJumpHosts(norm(jumpHosts)).toLowerCase(Locale.ROOT),
+                    String.join(" ", SshHelpers.splitSshOptions(sshOptions))
+            );
+        }
+
+        @Override public String toString() {
+            String chain = jumpHosts.isEmpty() ? sshAlias : jumpHosts + "," + sshAlias;
+            return sshOptions.isEmpty() ? chain : chain + " [" + sshOptions + "]";
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int live) {}
+
+    @FunctionalInterface
+    public interface MasterStarter {
+        SshHelpers.SshStartResult start(int socksPort) throws IOException, InterruptedException;
+    }
+
+    private static final class Master {
+        final ChainKey key;
+        final int pid;
+        final int socksPort;
+        final String errLog;
+        int refs = 0;
+        long idleSinceNanos = System.nanoTime();
+        // 停止が決まったもの。refs と同じくこのオブジェクトのロック下で読み書きし、以降は貸し出さない
+        boolean evicted = false;
+
+        Master(ChainKey key, int pid, int socksPort, String errLog) {
+            this.key = key;
+            this.pid = pid;
+            this.socksPort = socksPort;
+            this.errLog = errLog;
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final Master master;
+        private final boolean reused;
+        private boolean closed = false;
+
+        private Lease(Master master, boolean reused) {
+            this.master = master;
+            this.reused = reused;
+        }
+
+        public ChainKey key() { return master.key; }
+        public int pid() { return master.pid; }
+        public int socksPort() { return master.socksPort; }
+        public String errLog() { return master.errLog; }
+        public boolean reused() { return reused; }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+            release(master);
+        }
+    }
+
+    private final String localBind;
+    private final Duration idleTtl;
+    private final Map<ChainKey, Master> masters = new ConcurrentHashMap<>();
+    private final Map<ChainKey, Object> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rdp-launcher-tunnel-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public TunnelPool(String localBind, Duration idleTtl) {
+        this.localBind = localBind;
+        this.idleTtl = idleTtl;
+        long periodMs = Math.max(1000, Math.min(idleTtl.toMillis() / 2, 15_000));
+        evictor.scheduleWithFixedDelay(this::evictIdle, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static Duration configuredIdleTtl() {
+        return Duration.ofSeconds(Long.getLong("rdp.launcher.sshIdleTtlSeconds", 300));
+    }
+
+    public boolean enabled() {
+        return !idleTtl.isZero() && !idleTtl.isNegative();
+    }
+
+    public Lease acquire(ChainKey key, MasterStarter starter) throws IOException, InterruptedException {
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Master m = masters.get(key);
+            if (m != null && healthy(m) && retain(m)) {
+                hits.incrementAndGet();
+                return new Lease(m, true);
+            }
+            if (m != null) evict(m);
+
+            misses.incrementAndGet();
+            int socksPort = SshHelpers.findFreePort(localBind);
+            SshHelpers.SshStartResult sr = starter.start(socksPort);
+
+            Master fresh = new Master(key, sr.pid(), socksPort, sr.errLog());
+            fresh.refs = 1;
+            masters.put(key, fresh);
+            return new Lease(fresh, false);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), masters.size());
+    }
+
+    public void shutdown() {
+        evictor.shutdownNow();
+        for (Master m : new ArrayList<>(masters.values())) {
+            evict(m);
+        }
+    }
+
+    // healthy() の確認 (最大 250 ms) の間に evictIdle が停止を決めていたら貸し出さない
+    private boolean retain(Master m) {
+        synchronized (m) {
+            if (m.evicted) return false;
+            m.refs++;
+            return true;
+        }
+    }
+
+    private void release(Master m) {
+        boolean stopNow;
+        synchronized (m) {
+            m.refs = Math.max(0, m.refs - 1);
+            m.idleSinceNanos = System.nanoTime();
+            stopNow = m.refs == 0 && !enabled() && !m.evicted;
+            if (stopNow) m.evicted = true;
+        }
+        if (stopNow) evict(m);
+    }
+
+    // refs == 0 の確認と停止の決定を同じロック下で行い、その間に貸し出されたマスターを止めないようにする
+    private void evictIdle() {
+        long now = System.nanoTime();
+        List<Master> victims = new ArrayList<>();
+        for (Master m : masters.values()) {
+            synchronized (m) {
+                if (m.evicted) continue;
+                boolean idleExpired = m.refs == 0 && now - m.idleSinceNanos >= idleTtl.toNanos();
+                if (idleExpired || !SshHelpers.isProcessAlive(m.pid)) {
+                    m.evicted = true;
+                    victims.add(m);
+                }
+            }
+        }
+        for (Master m : victims) evict(m);
+    }
+
+    private boolean healthy(Master m) {
+        return SshHelpers.isProcessAlive(m.pid)
+                && TunnelReadiness.probe(new InetSocketAddress(localBind, m.socksPort), 250);
+    }
+
+    private void evict(Master m) {
+        synchronized (m) {
+            m.evicted = true;
+        }
+        if (!masters.remove(m.key, m)) return;
+        evictions.incrementAndGet();
+        try {
+            SshHelpers.stopSshIfNeeded(m.pid);
+        } catch (IOException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim();
+    }
+}
@@ -0,0 +1,124 @@
+package app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+// ssh -L の待ち受け開始 / ssh の終了をイベントで検知する。
+// 固定 sleep の代わりに ProcessHandle.onExit() を待ち、その合間に非ブロッキング connect を打つ。
+public final class TunnelReadiness {
+
+    private TunnelReadiness() {}
+
+    public enum State { READY, FAILED, TIMEOUT }
+
+    public record Result(State state, long elapsedNanos, String errTail) {
+        public boolean ready() {
+            return state == State.READY;
+        }
+
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+    }
+
+    private static final long MIN_BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 50;
+    private static final int PROBE_TIMEOUT_MS = 250;
+    private static final int ERR_TAIL_CHARS = 16 * 1024;
+
+    private static final Pattern FORWARD_FAILED = Pattern.compile(
+            "(?i)(port forwarding failed|cannot listen to port|bind \\[?[^\\s]*\\]?: )"
+    );
+
+    public static Result await(int pid, String errLog, String host, int port, Duration timeout)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+
+        // pid <= 0 はポートだけ監視する。pid があるのにハンドルが取れない場合は既に終了している
+        CompletableFuture<ProcessHandle> exited;
+        if (pid <= 0) {
+            exited = new CompletableFuture<>();
+        } else {
+            Optional<ProcessHandle> ph = ProcessHandle.of(pid);
+            exited = ph.map(ProcessHandle::onExit).orElseGet(() -> CompletableFuture.completedFuture(null));
+        }
+
+        ErrTail tail = new ErrTail(errLog);
+        InetSocketAddress addr = new InetSocketAddress(host, port);
+        long backoff = MIN_BACKOFF_MS;
+
+        while (true) {
+            if (exited.isDone()) {
+                return new Result(State.FAILED, System.nanoTime() - start, tail.poll());
+            }
+            if (probe(addr, PROBE_TIMEOUT_MS)) {
+                return new Result(State.READY, System.nanoTime() - start, "");
+            }
+            if (FORWARD_FAILED.matcher(tail.poll()).find()) {
+                return new Result(State.FAILED, System.nanoTime() - start, tail.poll());
+            }
+
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return new Result(State.TIMEOUT, System.nanoTime() - start, tail.poll());
+            }
+
+            // ssh が落ちたら待機を打ち切って即座に FAILED を返す
+            try {
+                exited.get(Math.min(backoff, remainingMs), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ignored) {
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    public static boolean waitPortOpen(String host, int port, Duration timeout) throws InterruptedException {
+        return await(-1, null, host, port, timeout).ready();
+    }
+
+    static boolean probe(InetSocketAddress addr, int timeoutMs) {
+        try (SocketChannel ch = SocketChannel.open()) {
+            ch.configureBlocking(false);
+            if (ch.connect(addr)) return true;
+
+            try (Selector sel = Selector.open()) {
+                ch.register(sel, SelectionKey.OP_CONNECT);
+                if (sel.select(timeoutMs) == 0) return false;
+                return ch.finishConnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // stderr ログを前回位置から差分だけ読み、末尾 ERR_TAIL_CHARS 文字を保持する
+    private static final class ErrTail {
+        private final LogTail.Follower follower;
+        private final StringBuilder buf = new StringBuilder();
+
+        ErrTail(String path) {
+            this.follower = (path == null || path.isBlank()) ? null : new LogTail.Follower(Path.of(path), false);
+        }
+
+        String poll() {
+            if (follower == null) return "";
+            for (String line : follower.poll()) {
+                buf.append(line).append(System.lineSeparator());
+            }
+            if (buf.length() > ERR_TAIL_CHARS) buf.delete(0, buf.length() - ERR_TAIL_CHARS);
+            return buf.toString();
+        }
+    }
+}
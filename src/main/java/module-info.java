@@ -1,5 +1,7 @@
+// JavaFX は UI の起動 (--add-modules javafx.controls) でだけ解決する。askpass (AskPassMain) の起動では読み込まない
 module app {
-    requires javafx.controls;
+    requires static javafx.controls;
     requires java.desktop;
+    requires jdk.httpserver;
     exports app;
 }
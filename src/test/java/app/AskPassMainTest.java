@@ -0,0 +1,40 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AskPassMainTest {
+
+    @Test
+    void explicitHeadlessPropertyWins() {
+        assertTrue(AskPassMain.isHeadless("true", "Windows 11", null, null));
+        assertFalse(AskPassMain.isHeadless("false", "Linux", null, null));
+    }
+
+    @Test
+    void windowsAndMacAlwaysHaveADisplay() {
+        assertFalse(AskPassMain.isHeadless(null, "Windows 11", null, null));
+        assertFalse(AskPassMain.isHeadless(null, "Mac OS X", null, null));
+    }
+
+    @Test
+    void otherSystemsNeedX11OrWayland() {
+        assertTrue(AskPassMain.isHeadless(null, "Linux", null, ""));
+        assertFalse(AskPassMain.isHeadless(null, "Linux", ":0", null));
+        assertFalse(AskPassMain.isHeadless("", "Linux", null, "wayland-0"));
+    }
+
+    @Test
+    void headlessFallsBackToConsoleUi() {
+        String prev = System.getProperty("java.awt.headless");
+        System.setProperty("java.awt.headless", "true");
+        try {
+            assertTrue(AskPassMain.selectUi("swing") instanceof ConsoleAskPassUi);
+        } finally {
+            if (prev == null) System.clearProperty("java.awt.headless");
+            else System.setProperty("java.awt.headless", prev);
+        }
+    }
+}
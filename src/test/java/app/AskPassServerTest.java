@@ -0,0 +1,123 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AskPassServerTest {
+
+    private static final String SHIM = "rdp-launcher-askpass-123.cmd";
+
+    @AfterEach
+    void tearDown() {
+        AskPassServer.setPrompter(null);
+        AskPassServer.shutdown();
+    }
+
+    @Test
+    void extractsPromptFromCmdCommandLine() {
+        String cmdline = "C:\\WINDOWS\\system32\\cmd.exe /c \"\"C:\\Temp\\" + SHIM + "\" \"user@host's password: \"\"";
+        assertEquals("user@host's password: ", AskPassServer.promptFromCommandLine(cmdline, SHIM));
+    }
+
+    @Test
+    void keepsCharactersThatBreakCmdParsing() {
+        String prompt = "(a\" & calc.exe & \"b) 100% %PATH% ^x! <y> | z: ";
+        String cmdline = "C:\\WINDOWS\\system32\\cmd.exe /c \"\"C:\\Temp\\" + SHIM + "\" " + quote(prompt) + "\"\r\n";
+        assertEquals(prompt, AskPassServer.promptFromCommandLine(cmdline, SHIM));
+    }
+
+    @Test
+    void keepsMultiLineHostKeyPrompt() {
+        String prompt = "The authenticity of host 'h (10.0.0.1)' can't be established.\r\n"
+                + "ED25519 key fingerprint is SHA256:abc.\r\n"
+                + "Are you sure you want to continue connecting (yes/no/[fingerprint])? ";
+        String cmdline = "C:\\WINDOWS\\system32\\cmd.exe /c \"\"C:\\Temp\\" + SHIM + "\" " + quote(prompt) + "\"";
+        String got = AskPassServer.promptFromCommandLine(cmdline, SHIM);
+        assertEquals(prompt, got);
+        assertEquals(AskPassPrompt.Kind.HOST_KEY, AskPassPrompt.of(got, null).kind());
+    }
+
+    @Test
+    void backslashesBeforeQuotesFollowMsvcRules() {
+        String prompt = "Enter passphrase for key 'C:\\Users\\me\\.ssh\\id \"x\\\\\"': ";
+        String cmdline = "cmd.exe /c \"\"C:\\Temp\\" + SHIM + "\" " + quote(prompt) + "\"";
+        assertEquals(prompt, AskPassServer.promptFromCommandLine(cmdline, SHIM));
+    }
+
+    @Test
+    void cancelPromptsReleasesWaitingRequest() throws Exception {
+        CountDownLatch asked = new CountDownLatch(1);
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        AskPassServer.setPrompter(p -> {
+            asked.countDown();
+            try {
+                Thread.sleep(30_000);
+                return "late";
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+                throw e;
+            }
+        });
+
+        AskPassServer server = AskPassServer.shared();
+        Path shim = server.clientShim();
+        String token = token(shim);
+        String cmdline = "cmd.exe /c \"\"C:\\Temp\\" + shim.getFileName() + "\" \"user@host's password: \"\"";
+        String body = "cmdline=" + URLEncoder.encode(cmdline, StandardCharsets.UTF_8) + "&kind=&tag=conn-7";
+
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/askpass"))
+                .header("X-Askpass-Token", token)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        CompletableFuture<HttpResponse<String>> res = HttpClient.newHttpClient()
+                .sendAsync(req, HttpResponse.BodyHandlers.ofString());
+
+        assertTrue(asked.await(5, TimeUnit.SECONDS));
+        AskPassServer.cancelPrompts("conn-7");
+
+        assertEquals(404, res.get(5, TimeUnit.SECONDS).statusCode());
+        assertTrue(interrupted.get(1, TimeUnit.SECONDS));
+        assertEquals(1, server.stats().cancelled());
+    }
+
+    // Win32-OpenSSH (MSVC の規則) と同じ引用
+    private static String quote(String arg) {
+        StringBuilder sb = new StringBuilder("\"");
+        int slashes = 0;
+        for (char c : arg.toCharArray()) {
+            if (c == '\\') {
+                slashes++;
+                continue;
+            }
+            if (c == '"') sb.append("\\".repeat(slashes * 2 + 1));
+            else sb.append("\\".repeat(slashes));
+            slashes = 0;
+            sb.append(c);
+        }
+        sb.append("\\".repeat(slashes * 2));
+        return sb.append('"').toString();
+    }
+
+    private static String token(Path shim) throws Exception {
+        Matcher m = Pattern.compile("X-Askpass-Token: ([0-9a-f]+)").matcher(Files.readString(shim));
+        assertTrue(m.find());
+        return m.group(1);
+    }
+}
@@ -0,0 +1,65 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectMetricsTest {
+
+    @Test
+    void sessionsAreAlsoCountedInAll() {
+        ConnectMetrics m = new ConnectMetrics();
+        m.record("web", "tunnel", ms(10), true);
+        m.record("db", "tunnel", ms(30), false);
+
+        ConnectMetrics.Row all = row(m, ConnectMetrics.ALL, "tunnel");
+        assertEquals(1, all.ok());
+        assertEquals(1, all.failed());
+        assertEquals(2, all.latency().count());
+        assertEquals(1, row(m, "web", "tunnel").latency().count());
+    }
+
+    @Test
+    void underscoreSessionNamesAreOrdinarySessions() {
+        ConnectMetrics m = new ConnectMetrics();
+        m.record("_lab", "mstsc", ms(5), true);
+        assertEquals(1, row(m, ConnectMetrics.ALL, "mstsc").latency().count());
+    }
+
+    @Test
+    void internalRowsStayOutOfAll() {
+        ConnectMetrics m = new ConnectMetrics();
+        m.recordInternal("_startup", "interactive", ms(800), true);
+        m.record("web", "interactive", ms(5), true);
+
+        assertEquals(1, row(m, "_startup", "interactive").latency().count());
+        assertEquals(1, row(m, ConnectMetrics.ALL, "interactive").latency().count());
+    }
+
+    @Test
+    void exportsAllRowsFirst() {
+        ConnectMetrics m = new ConnectMetrics();
+        m.record("web", "tunnel", ms(10), true);
+        List<ConnectMetrics.Row> rows = m.snapshot();
+        assertEquals(ConnectMetrics.ALL, rows.get(0).session());
+
+        String prom = m.toPrometheus();
+        assertTrue(prom.contains("rdp_launcher_stage_latency_seconds{session=\"web\",stage=\"tunnel\",quantile=\"0.95\"}"));
+        assertTrue(prom.contains("rdp_launcher_stage_total{session=\"_all\",stage=\"tunnel\",result=\"ok\"} 1"));
+        assertTrue(m.toJson().contains("\"session\":\"web\",\"stage\":\"tunnel\",\"ok\":1,\"failed\":0,\"count\":1"));
+    }
+
+    private static long ms(long v) {
+        return TimeUnit.MILLISECONDS.toNanos(v);
+    }
+
+    private static ConnectMetrics.Row row(ConnectMetrics m, String session, String stage) {
+        return m.snapshot().stream()
+                .filter(r -> r.session().equals(session) && r.stage().equals(stage))
+                .findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,202 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ssh.exe / taskkill.exe / mstsc.exe をスタブに差し替えて、別ユーザーの踏み台経由接続を同時に何十本も張る
+class ConnectionConcurrencyTest {
+
+    private static final int SESSIONS = 32;
+
+    @TempDir
+    Path dir;
+
+    private final StubLauncher launcher = new StubLauncher();
+    private final RecordingStore store = new RecordingStore();
+    private final Queue<String> log = new ConcurrentLinkedQueue<>();
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() {
+        HiddenExec.setLauncher(launcher);
+        CredentialManager.setStore(store);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connection != null) connection.shutdown();
+        launcher.killAll();
+        HiddenExec.setLauncher(null);
+        CredentialManager.setStore(new InMemoryCredentialStore());
+    }
+
+    @Test
+    void concurrentBastionConnectsKeepSeparateCredentials() throws Exception {
+        // 同じ踏み台チェーンの 32 本が 1 つの ssh -D マスターを共有することも確かめる
+        connection = new Connection("127.0.0.1", stubMstsc().toString(), dir.resolve("app"), dir.resolve("known_hosts"), "socks");
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < SESSIONS; i++) {
+            connection.connect(session(i), "user" + i, "", "pass" + i, ui());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (store.writes() < SESSIONS && System.nanoTime() < deadline) Thread.sleep(10);
+        int peak = connection.activeCount();
+        while (connection.activeCount() > 0 && System.nanoTime() < deadline) Thread.sleep(20);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        List<String> errors = log.stream().filter(l -> l.startsWith("[ERROR]") || l.startsWith("[WARN]")).toList();
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertEquals(0, connection.activeCount());
+        assertEquals(SESSIONS, store.hosts().size(), store.hosts().toString());
+        assertTrue(store.hosts().stream().allMatch(h -> h.startsWith("127.0.0.") && !h.equals("127.0.0.1")), store.hosts().toString());
+        assertEquals(List.of(), store.overwrites());
+        assertEquals(Map.of(), store.live());
+        assertEquals(1, launcher.masters());
+        System.out.println("[INFO] " + SESSIONS + " concurrent connects (peak live " + peak + ") done in " + elapsedMs + " ms; "
+                + connection.metrics().snapshot().stream()
+                .filter(r -> r.stage().equals("connect") && r.session().equals(ConnectMetrics.ALL))
+                .findFirst().map(Object::toString).orElse(""));
+    }
+
+    private static Session session(int i) {
+        return new Session("s" + i, true, "bastion", "", "", false, "", false, false,
+                "10.0.0." + (i + 1), 3389, "", "", false, 1280, 720, false, false, "", "", "");
+    }
+
+    // mstsc の代わりに少し待って終わるだけのスクリプト (接続が重なるように)
+    private Path stubMstsc() throws IOException {
+        if (DirectProcessLauncherTest.WINDOWS) {
+            return Files.writeString(dir.resolve("mstsc.cmd"), "@ping -n 2 127.0.0.1 >NUL\r\n");
+        }
+        Path p = Files.writeString(dir.resolve("mstsc.sh"), "#!/bin/sh\nsleep 0.5\n");
+        p.toFile().setExecutable(true);
+        return p;
+    }
+
+    private Connection.Ui ui() {
+        return new Connection.Ui() {
+            @Override public void log(String s) { log.add(s); }
+            @Override public void status(String s) {}
+            @Override public void alert(String s) { log.add("[ERROR] alert: " + s); }
+            @Override public void setInputsDisabled(boolean disabled) {}
+            @Override public void setConnected(boolean connected) {}
+            @Override public void runOnFx(Runnable r) { r.run(); }
+            @Override public void clearPassword() {}
+        };
+    }
+
+    // ssh.exe -D は SOCKS ポートで待ち受けるだけの FakeSsh、taskkill.exe はその pid を止めるだけにする
+    static final class StubLauncher implements ProcessLauncher {
+        private final Map<Long, Process> started = new ConcurrentHashMap<>();
+        private final Set<String> masterPorts = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public int runAndWait(String exe, List<String> args) {
+            if (exe.startsWith("taskkill")) {
+                Process p = started.remove(Long.parseLong(args.get(args.indexOf("/PID") + 1)));
+                if (p != null) p.destroyForcibly();
+            }
+            return 0;
+        }
+
+        @Override
+        public int[] runAllAndWait(List<HiddenExec.Command> commands) {
+            return new int[commands.size()];
+        }
+
+        @Override
+        public HiddenExec.StartResult startWithLogs(String exe, List<String> args, String outLog, String errLog,
+                                                    Map<String, String> extraEnv) throws IOException {
+            String bind = args.get(args.indexOf("-D") + 1);
+            String port = bind.substring(bind.lastIndexOf(':') + 1);
+            masterPorts.add(port);
+            Files.writeString(Path.of(outLog), "", StandardCharsets.UTF_8);
+            Files.writeString(Path.of(errLog), "debug1: Authenticated to bastion ([10.0.0.254]:22) using \"publickey\".\n",
+                    StandardCharsets.UTF_8);
+            Process p = FakeSsh.command("listen", port, "0").start();
+            started.put(p.pid(), p);
+            return new HiddenExec.StartResult(Math.toIntExact(p.pid()), outLog, errLog);
+        }
+
+        int masters() {
+            return masterPorts.size();
+        }
+
+        void killAll() {
+            for (Process p : new ArrayList<>(started.values())) p.destroyForcibly();
+        }
+    }
+
+    // 書き込みの時点で同じキーを別ユーザーが保持していたら「上書き」として記録する
+    static final class RecordingStore implements CredentialStore {
+        private final Map<String, String> live = new ConcurrentHashMap<>();
+        private final Set<String> hosts = ConcurrentHashMap.newKeySet();
+        private final Queue<String> overwrites = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public CredentialManager.BatchResult addAll(Collection<String> hs, String username, String password) {
+            Map<String, Integer> r = new LinkedHashMap<>();
+            for (String h : hs) {
+                String prev = live.put(h, username);
+                if (prev != null && !prev.equals(username)) overwrites.add(h + ": " + prev + " -> " + username);
+                hosts.add(h);
+                r.put(h, 0);
+            }
+            return new CredentialManager.BatchResult(r, 0);
+        }
+
+        @Override
+        public CredentialManager.BatchResult deleteAll(Collection<String> hs) {
+            Map<String, Integer> r = new LinkedHashMap<>();
+            for (String h : hs) r.put(h, live.remove(h) != null ? 0 : 1);
+            return new CredentialManager.BatchResult(r, 0);
+        }
+
+        int writes() {
+            return hosts.size();
+        }
+
+        Set<String> hosts() {
+            return Set.copyOf(hosts);
+        }
+
+        List<String> overwrites() {
+            return List.copyOf(overwrites);
+        }
+
+        Map<String, String> live() {
+            return Map.copyOf(live);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// cmdkey.exe の代わりに、1 往復ごとに一定の遅れを返すスタブの起動方式で一括登録・削除を測る
+class CredentialBatchTest {
+
+    private static final long ROUND_TRIP_MS = 40;
+
+    private final StubCmdkey stub = new StubCmdkey();
+
+    @AfterEach
+    void tearDown() {
+        HiddenExec.setLauncher(null);
+        CredentialManager.setStore(new InMemoryCredentialStore());
+    }
+
+    @Test
+    void addAndDeleteTakeOneRoundTripPerBatch() throws Exception {
+        HiddenExec.setLauncher(stub);
+        CredentialManager.setStore(new CmdkeyCredentialStore());
+        List<String> hosts = List.of("127.0.0.2", "rdp01.example", "RDP01.example", "rdp02.example");
+
+        LatencyHistogram add = new LatencyHistogram();
+        LatencyHistogram delete = new LatencyHistogram();
+        for (int i = 0; i < 10; i++) {
+            CredentialManager.BatchResult r = CredentialManager.addAll(hosts, "user", "p@ss word");
+            add.recordNanos(r.elapsedNanos());
+            assertEquals(List.of("127.0.0.2", "rdp01.example", "rdp02.example"), r.succeeded());
+
+            r = CredentialManager.deleteAll(hosts);
+            delete.recordNanos(r.elapsedNanos());
+            assertEquals(3, r.succeeded().size());
+        }
+
+        assertEquals(20, stub.roundTrips);
+        assertEquals(60, stub.commands);
+        LatencyHistogram.Snapshot a = add.snapshot();
+        assertTrue(a.p95Micros() < TimeUnit.MILLISECONDS.toMicros(2 * ROUND_TRIP_MS), a.toString());
+        System.out.println("[INFO] per-batch latency (3 keys, " + ROUND_TRIP_MS + " ms/round trip): add " + a
+                + " / delete " + delete.snapshot());
+    }
+
+    @Test
+    void reportsPerHostExitCodes() throws Exception {
+        HiddenExec.setLauncher(stub);
+        CredentialManager.setStore(new CmdkeyCredentialStore());
+        stub.failTarget = "TERMSRV/bad.example";
+
+        CredentialManager.BatchResult r = CredentialManager.addAll(List.of("good.example", "bad.example"), "u", "p");
+
+        assertEquals(Map.of("good.example", 0, "bad.example", 1), r.exitCodes());
+        assertEquals(List.of("bad.example"), r.failed());
+        assertEquals(1, stub.roundTrips);
+    }
+
+    @Test
+    void fallsBackToCmdkeyWhenStoreFails() throws Exception {
+        HiddenExec.setLauncher(stub);
+        CredentialManager.setStore(new CredentialStore() {
+            @Override public String name() { return "broken"; }
+            @Override public CredentialManager.BatchResult addAll(Collection<String> hosts, String u, String p) {
+                throw new UnsupportedOperationException("no native API");
+            }
+            @Override public CredentialManager.BatchResult deleteAll(Collection<String> hosts) {
+                throw new UnsupportedOperationException("no native API");
+            }
+        });
+
+        CredentialManager.BatchResult r = CredentialManager.addAll(List.of("rdp01.example"), "u", "p");
+
+        assertEquals(List.of("rdp01.example"), r.succeeded());
+        assertEquals("cmdkey", CredentialManager.store().name());
+        assertEquals(1, stub.roundTrips);
+    }
+
+    private static final class StubCmdkey implements ProcessLauncher {
+        int roundTrips;
+        int commands;
+        String failTarget;
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public int runAndWait(String exe, List<String> args) throws IOException, InterruptedException {
+            return runAllAndWait(List.of(new HiddenExec.Command(exe, args)))[0];
+        }
+
+        @Override
+        public synchronized int[] runAllAndWait(List<HiddenExec.Command> cmds) throws InterruptedException {
+            roundTrips++;
+            commands += cmds.size();
+            Thread.sleep(ROUND_TRIP_MS);
+            List<Integer> exits = new ArrayList<>();
+            for (HiddenExec.Command c : cmds) {
+                boolean fail = failTarget != null && c.args().stream().anyMatch(a -> a.endsWith(failTarget));
+                exits.add(fail ? 1 : 0);
+            }
+            return exits.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        @Override
+        public HiddenExec.StartResult startWithLogs(String exe, List<String> args, String outLog, String errLog,
+                                                    Map<String, String> extraEnv) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DirectProcessLauncherTest {
+
+    static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    // 指定した終了コードで終わるだけのコマンド
+    static HiddenExec.Command exit(int code) {
+        return WINDOWS
+                ? new HiddenExec.Command("cmd.exe", List.of("/c", "exit", String.valueOf(code)))
+                : new HiddenExec.Command("/bin/sh", List.of("-c", "exit " + code));
+    }
+
+    @Test
+    void runAndWaitReturnsExitCode() throws Exception {
+        HiddenExec.Command c = exit(3);
+        assertEquals(3, new DirectProcessLauncher().runAndWait(c.exe(), c.args()));
+    }
+
+    @Test
+    void runAllAndWaitKeepsInputOrder() throws Exception {
+        int[] exits = new DirectProcessLauncher().runAllAndWait(List.of(exit(0), exit(5), exit(1), exit(7)));
+        assertArrayEquals(new int[]{0, 5, 1, 7}, exits);
+    }
+}
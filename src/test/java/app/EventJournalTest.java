@@ -0,0 +1,164 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasAppended() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (EventJournal j = new EventJournal(file)) {
+            for (int i = 0; i < 3; i++) j.append(event(i, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        List<ConnectionEvent> got = readAll(file);
+        assertEquals(List.of(event(0, ConnectionEvent.Type.MSTSC_STARTED), event(1, ConnectionEvent.Type.MSTSC_STARTED),
+                event(2, ConnectionEvent.Type.MSTSC_STARTED)), got);
+    }
+
+    @Test
+    void tornTailIsTruncatedSoLaterRecordsStayReadable() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(1, ConnectionEvent.Type.MSTSC_STARTED));
+            j.append(event(2, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        // 書き込み途中で落ちた: 最後のレコードが途中で切れている
+        long full = Files.size(file);
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            c.truncate(full - 7);
+        }
+
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(3, ConnectionEvent.Type.MSTSC_EXITED));
+        }
+        assertEquals(List.of(1L, 3L), ids(readAll(file)));
+    }
+
+    @Test
+    void twoInstancesOnTheSameFileDoNotOverwriteEachOther() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (EventJournal a = new EventJournal(file); EventJournal b = new EventJournal(file)) {
+            a.append(event(1, ConnectionEvent.Type.MSTSC_STARTED));
+            b.append(event(2, ConnectionEvent.Type.MSTSC_STARTED));
+            a.append(event(3, ConnectionEvent.Type.MSTSC_STARTED));
+            b.append(event(4, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(readAll(file)));
+    }
+
+    @Test
+    void corruptRecordIsDetectedByCrc() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(1, ConnectionEvent.Type.MSTSC_STARTED));
+            j.append(event(2, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        // 2 件目の本体の末尾 (detail) の 1 バイトを書き換える。長さは正しいので CRC でしか気づけない
+        long size = Files.size(file);
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            c.write(ByteBuffer.wrap(new byte[]{'#'}), size - 1);
+        }
+        assertEquals(List.of(1L), ids(readAll(file)));
+
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(3, ConnectionEvent.Type.FAILED));
+        }
+        assertEquals(List.of(1L, 3L), ids(readAll(file)));
+    }
+
+    @Test
+    void oldFormatIsMigratedOnOpen() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x52444A31);
+            for (int i = 1; i <= 2; i++) writeV1(out, event(i, ConnectionEvent.Type.CONNECT_REQUESTED));
+            out.write(new byte[]{0, 0, 0}); // 旧形式でも書きかけの末尾は捨てる
+        }
+        assertEquals(List.of(1L, 2L), ids(readAll(file)));
+
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(3, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer h = ByteBuffer.allocate(4);
+            c.read(h);
+            assertEquals(0x52444A32, h.flip().getInt());
+        }
+        assertEquals(List.of(1L, 2L, 3L), ids(readAll(file)));
+    }
+
+    @Test
+    void notAJournalIsMovedAside() throws Exception {
+        Path file = dir.resolve("events.bin");
+        Files.writeString(file, "hello, not a journal");
+        try (EventJournal j = new EventJournal(file)) {
+            j.append(event(1, ConnectionEvent.Type.MSTSC_STARTED));
+        }
+        assertEquals(List.of(1L), ids(readAll(file)));
+        assertTrue(Files.exists(dir.resolve("events.bin.bad")));
+    }
+
+    @Test
+    void timeToDesktopReportsP95() throws Exception {
+        Path file = dir.resolve("events.bin");
+        try (EventJournal j = new EventJournal(file)) {
+            for (long i = 1; i <= 100; i++) {
+                j.append(new ConnectionEvent(7, i, ConnectionEvent.Type.MSTSC_STARTED, 0, i * 1_000_000L, 0, "web", null));
+            }
+        }
+        EventJournal.Percentiles p = EventJournal.timeToDesktop(file, null);
+        assertEquals(100, p.count());
+        assertEquals(50, p.p50Millis());
+        assertEquals(95, p.p95Millis());
+        assertEquals(99, p.p99Millis());
+        assertEquals(100, p.maxMillis());
+    }
+
+    private static ConnectionEvent event(long id, ConnectionEvent.Type type) {
+        return new ConnectionEvent(42, id, type, 1_700_000_000_000_000_000L + id, id * 1_000_000, id, "web-" + id, "detail " + id);
+    }
+
+    private static void writeV1(DataOutputStream out, ConnectionEvent e) throws IOException {
+        byte[] session = e.session().getBytes(StandardCharsets.UTF_8);
+        byte[] detail = e.detail().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + 8 * 5 + 2 + 2 + session.length + detail.length);
+        out.writeByte(e.type().ordinal());
+        out.writeLong(e.runId());
+        out.writeLong(e.connectionId());
+        out.writeLong(e.epochNanos());
+        out.writeLong(e.sinceStartNanos());
+        out.writeLong(e.value());
+        out.writeShort(session.length);
+        out.write(session);
+        out.writeShort(detail.length);
+        out.write(detail);
+    }
+
+    private static List<ConnectionEvent> readAll(Path file) throws IOException {
+        List<ConnectionEvent> out = new ArrayList<>();
+        EventJournal.read(file, out::add);
+        return out;
+    }
+
+    private static List<Long> ids(List<ConnectionEvent> events) {
+        return events.stream().map(ConnectionEvent::connectionId).toList();
+    }
+}
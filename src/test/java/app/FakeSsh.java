@@ -0,0 +1,55 @@
+package app;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// テスト用の ssh の代役。別プロセスとして起動する:
+//   listen <port> <delayMs>      delayMs 後に 127.0.0.1:port で待ち受け、stdout に "LISTENING" を書く
+//   bindfail <port> <errLog>     ssh と同じ形の bind エラーを errLog に書いて待ち続ける
+//   exit <code>                  すぐに終了する
+//   hang                         何もせず待ち続ける
+final class FakeSsh {
+
+    public static void main(String[] args) throws Exception {
+        switch (args[0]) {
+            case "listen" -> {
+                Thread.sleep(Long.parseLong(args[2]));
+                try (ServerSocket ss = new ServerSocket(Integer.parseInt(args[1]), 50, InetAddress.getLoopbackAddress())) {
+                    System.out.println("LISTENING");
+                    System.out.flush();
+                    while (true) {
+                        try (Socket ignored = ss.accept()) {
+                        }
+                    }
+                }
+            }
+            case "bindfail" -> {
+                Files.writeString(Path.of(args[2]),
+                        "bind [127.0.0.1]:" + args[1] + ": Address already in use\n"
+                                + "channel_setup_fwd_listener_tcpip: cannot listen to port: " + args[1] + "\n",
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            case "exit" -> System.exit(Integer.parseInt(args[1]));
+            default -> Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    static ProcessBuilder command(String... args) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String[] cmd = new String[args.length + 4];
+        cmd[0] = java;
+        cmd[1] = "-cp";
+        cmd[2] = System.getProperty("java.class.path");
+        cmd[3] = FakeSsh.class.getName();
+        System.arraycopy(args, 0, cmd, 4, args.length);
+        return new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.DISCARD);
+    }
+
+    private FakeSsh() {}
+}
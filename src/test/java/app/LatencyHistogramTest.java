@@ -0,0 +1,66 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptySnapshotIsZero() {
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0), new LatencyHistogram().snapshot());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 1; v <= 10; v++) h.recordMicros(v);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(10, s.count());
+        assertEquals(5, s.p50Micros());
+        assertEquals(10, s.p95Micros());
+        assertEquals(10, s.maxMicros());
+        assertEquals(5, s.meanMicros());
+    }
+
+    @Test
+    void bucketsCoverEveryValueWithinOneSixteenth() {
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456, 86_400_000_000L}) {
+            int i = LatencyHistogram.index(v);
+            long upper = LatencyHistogram.upperBound(i);
+            assertTrue(upper >= v, v + " above its bucket " + upper);
+            assertTrue(upper - v <= Math.max(0, v / 16), v + " -> " + upper);
+            if (i > 0) assertTrue(LatencyHistogram.upperBound(i - 1) < v, "previous bucket already covers " + v);
+        }
+    }
+
+    @Test
+    void percentilesMatchExactValuesWithinBucketError() {
+        Random r = new Random(1);
+        LatencyHistogram h = new LatencyHistogram();
+        long[] v = new long[50_000];
+        for (int i = 0; i < v.length; i++) {
+            // 数 ms ～ 数秒の裾の重い分布
+            v[i] = (long) (2_000 * Math.exp(r.nextGaussian() * 1.2));
+            h.recordMicros(v[i]);
+        }
+        Arrays.sort(v);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertNear(exact(v, 0.50), s.p50Micros());
+        assertNear(exact(v, 0.95), s.p95Micros());
+        assertNear(exact(v, 0.99), s.p99Micros());
+        assertEquals(v[v.length - 1], s.maxMicros());
+    }
+
+    private static long exact(long[] sorted, double q) {
+        return sorted[(int) Math.ceil(q * sorted.length) - 1];
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 16 + 1, "expected ~" + expected + " got " + actual);
+    }
+}
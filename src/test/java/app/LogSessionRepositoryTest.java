@@ -0,0 +1,166 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSessionRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void upsertAndDeleteSurviveReopen() throws Exception {
+        Path file = dir.resolve("sessions.db");
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            repo.upsert(Sessions.of("web", "10.0.0.1", "", ""));
+            repo.upsert(Sessions.of("db", "10.0.0.2", "", ""));
+            repo.upsert(Sessions.of("web", "10.0.0.9", "", ""));
+            repo.delete("db");
+        }
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            assertEquals(1, repo.size());
+            assertEquals("10.0.0.9", repo.find("WEB").orElseThrow().rdpHost());
+        }
+    }
+
+    @Test
+    void keysFoldCaseLikeTheSessionList() throws Exception {
+        // 'ı' (点なし i) は String.CASE_INSENSITIVE_ORDER では 'I' と同じ。一覧と同じく 1 件として扱う
+        try (LogSessionRepository repo = LogSessionRepository.open(dir.resolve("sessions.db"), null)) {
+            repo.upsert(Sessions.of("sıte", "10.0.0.1", "", ""));
+            repo.upsert(Sessions.of("SITE", "10.0.0.2", "", ""));
+            assertEquals(1, repo.size());
+            assertEquals("10.0.0.2", repo.find("site").orElseThrow().rdpHost());
+
+            SessionRegistry registry = new SessionRegistry();
+            registry.put(Sessions.of("sıte", "10.0.0.1", "", ""));
+            registry.put(Sessions.of("SITE", "10.0.0.2", "", ""));
+            assertEquals(registry.size(), repo.size());
+        }
+    }
+
+    @Test
+    void tornTailIsDroppedOnOpen() throws Exception {
+        Path file = dir.resolve("sessions.db");
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            repo.upsert(Sessions.of("a", "10.0.0.1", "", ""));
+            repo.upsert(Sessions.of("b", "10.0.0.2", "", ""));
+        }
+        long size = Files.size(file);
+        try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            c.truncate(size - 3);
+        }
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            assertEquals(List.of("a"), repo.loadAll().stream().map(Session::name).toList());
+            repo.upsert(Sessions.of("c", "10.0.0.3", "", ""));
+        }
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            assertEquals(List.of("a", "c"), repo.loadAll().stream().map(Session::name).toList());
+        }
+    }
+
+    @Test
+    void headerLeftEmptyByACrashIsTreatedAsNew() throws Exception {
+        Path file = dir.resolve("sessions.db");
+        Path csv = dir.resolve("sessions.csv");
+        Files.writeString(csv, "name,rdpHost,rdpPort\nweb,10.0.0.1,3389\n");
+        for (byte[] left : List.of(new byte[0], new byte[] {0x52, 0x44})) {
+            Files.write(file, left);
+            try (LogSessionRepository repo = LogSessionRepository.open(file, csv)) {
+                assertEquals(List.of("web"), repo.loadAll().stream().map(Session::name).toList());
+                repo.upsert(Sessions.of("db", "10.0.0.2", "", ""));
+            }
+            try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+                assertEquals(2, repo.size());
+            }
+        }
+    }
+
+    // 旧版はカンマを引用せずに書いていた。複数モニター・-J a,b・踏み台 2 段の行をそのまま取り込めること
+    private static final String LEGACY_HEADER = "name,useBastion,sshAlias,sshOptions,rdpHost,rdpPort,username,domain,"
+            + "fullscreen,width,height,multimon,span,jumpHosts,useRdGateway,rdGatewayHost,rdGatewayUseCurrentUser,"
+            + "rdGatewayShareCreds,selectedMonitors";
+
+    @Test
+    void migratesUnquotedLegacyCsv() throws Exception {
+        Path csv = dir.resolve("sessions.csv");
+        Files.writeString(csv, LEGACY_HEADER + "\r\n"
+                + "web,false,,,10.0.0.1,3389,user,CORP,true,,,true,false,,false,,false,true,0,1,2\r\n"
+                + "db,true,bastion,-J a,b -o ProxyJump=c,d,10.0.0.2,3390,admin,,false,1280,720,false,false,b1,b2,true,gw.example.com,true,false,\r\n"
+                + "plain,false,,,10.0.0.3,3389,,,false,,,false,false,,false,,false,true,\r\n");
+        Path file = dir.resolve("sessions.db");
+        try (LogSessionRepository repo = LogSessionRepository.open(file, csv)) {
+            assertEquals(3, repo.size());
+            Session web = repo.find("web").orElseThrow();
+            assertTrue(web.multimon());
+            assertEquals("0,1,2", web.selectedMonitors());
+            assertEquals("CORP", web.domain());
+
+            Session db = repo.find("db").orElseThrow();
+            assertEquals("-J a,b -o ProxyJump=c,d", db.sshOptions());
+            assertEquals("10.0.0.2", db.rdpHost());
+            assertEquals(3390, db.rdpPort());
+            assertEquals(1280, db.width());
+            assertEquals("b1,b2", db.jumpHosts());
+            assertTrue(db.useRdGateway());
+            assertEquals("gw.example.com", db.rdGatewayHost());
+
+            assertEquals("", repo.find("plain").orElseThrow().selectedMonitors());
+        }
+    }
+
+    @Test
+    void legacyRowsThatCannotBeMigratedKeepTheCsvAuthoritative() throws Exception {
+        Path csv = dir.resolve("sessions.csv");
+        Files.writeString(csv, LEGACY_HEADER + "\n"
+                + "web,false,,,10.0.0.1,3389,user,,true,,,true,false,,false,,false,true,0,1,2\n"
+                + "broken,false,,,10.0.0.2,notaport,x,y,z,,,,,,,,,,,,\n");
+        Path file = dir.resolve("sessions.db");
+        IOException e = assertThrows(IOException.class, () -> LogSessionRepository.open(file, csv));
+        assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        assertFalse(Files.exists(file));
+
+        // 直せば次の起動で取り込み直せる
+        Files.writeString(csv, LEGACY_HEADER + "\n"
+                + "web,false,,,10.0.0.1,3389,user,,true,,,true,false,,false,,false,true,0,1,2\n");
+        try (LogSessionRepository repo = LogSessionRepository.open(file, csv)) {
+            assertEquals(1, repo.size());
+        }
+    }
+
+    @Test
+    void loadsAndLooksUpAtScale() throws Exception {
+        Path file = dir.resolve("sessions.db");
+        List<Session> all = Sessions.generate(100_000);
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            long t0 = System.nanoTime();
+            repo.upsertAll(all);
+            System.out.println("[INFO] upsertAll 100k: " + (System.nanoTime() - t0) / 1_000_000 + " ms, "
+                    + Files.size(file) / 1024 + " KB");
+        }
+
+        long t0 = System.nanoTime();
+        try (LogSessionRepository repo = LogSessionRepository.open(file, null)) {
+            long openMs = (System.nanoTime() - t0) / 1_000_000;
+            assertEquals(all.size(), repo.size());
+
+            long t1 = System.nanoTime();
+            for (int i = 0; i < all.size(); i += 7) assertTrue(repo.find(all.get(i).name().toUpperCase()).isPresent());
+            long lookupNs = (System.nanoTime() - t1) / (all.size() / 7);
+            System.out.println("[INFO] open (replay) 100k: " + openMs + " ms, find: " + lookupNs + " ns/op");
+            assertEquals(all.get(99_999), repo.loadAll().get(99_999));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSinkRingTest {
+
+    @Test
+    void countsWhatTheTextAreaKeeps() {
+        // TextArea は \r や制御文字を捨てる。数える長さがずれると古い行を削るときに残す行まで欠ける
+        assertEquals("[INFO] a", LogSink.visible("[INFO] a\r"));
+        assertEquals("x\ny\tz[0m", LogSink.visible("x\r\ny\t\u001bz[0m\u007f"));
+        String plain = "[INFO] plain";
+        assertTrue(plain == LogSink.visible(plain));
+    }
+
+    @Test
+    void pollsInOfferOrder() {
+        LogSink.Ring ring = new LogSink.Ring(8);
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 5; i++) assertTrue(ring.offer("l" + i));
+        for (int i = 0; i < 5; i++) assertEquals("l" + i, ring.poll());
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void rejectsWhenFullAndRecoversAfterPoll() {
+        LogSink.Ring ring = new LogSink.Ring(4);
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer("l" + i));
+        assertFalse(ring.offer("overflow"));
+        assertEquals("l0", ring.poll());
+        assertTrue(ring.offer("l4"));
+        List<String> rest = new ArrayList<>();
+        String s;
+        while ((s = ring.poll()) != null) rest.add(s);
+        assertEquals(List.of("l1", "l2", "l3", "l4"), rest);
+    }
+
+    @Test
+    void concurrentProducersLoseNothingWhileDrained() throws Exception {
+        LogSink.Ring ring = new LogSink.Ring(1 << 10);
+        int producers = 4, perProducer = 20_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(id + ":" + i)) Thread.onSpinWait();
+                }
+            }));
+        }
+
+        // FX スレッド役: 1 スレッドだけが読む
+        Set<String> seen = new HashSet<>();
+        int[] next = new int[producers];
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            String s = ring.poll();
+            if (s == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertTrue(seen.add(s), "duplicate " + s);
+            // 同じ生産者の行は順番どおりに届く
+            int sep = s.indexOf(':');
+            int p = Integer.parseInt(s.substring(0, sep));
+            assertEquals(next[p]++, Integer.parseInt(s.substring(sep + 1)));
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(ring.isEmpty());
+    }
+}
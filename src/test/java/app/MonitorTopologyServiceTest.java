@@ -0,0 +1,113 @@
+package app;
+
+import javafx.geometry.Rectangle2D;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MonitorTopologyServiceTest {
+
+    private static final List<Rectangle2D> TWO = List.of(new Rectangle2D(0, 0, 1920, 1080), new Rectangle2D(1920, 0, 2560, 1440));
+    private static final List<Rectangle2D> ONE = List.of(new Rectangle2D(0, 0, 1920, 1080));
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<String> log = new ArrayList<>();
+
+    @Test
+    void reusesResultForSameScreens() throws Exception {
+        StubProbe probe = new StubProbe(List.of("1", "0"));
+        MonitorTopologyService service = new MonitorTopologyService(probe, Runnable::run, log::add);
+
+        var first = service.monitors(TWO);
+        assertSame(first, service.monitors(List.copyOf(TWO)));
+        assertEquals(1, probe.calls.get());
+        assertEquals(List.of("1", "0"), ids(first.get()));
+        assertEquals(2, first.get().get(1).labelNumber());
+
+        service.monitors(ONE);
+        assertEquals(2, probe.calls.get());
+        service.invalidate();
+        service.monitors(ONE);
+        assertEquals(3, probe.calls.get());
+    }
+
+    @Test
+    void failedProbeIsRetriedAfterShortDelay() throws Exception {
+        StubProbe probe = new StubProbe(null);
+        MonitorTopologyService service = new MonitorTopologyService(probe, Runnable::run, log::add, now::get);
+
+        // 取れなかった間は画面の並び順を ID にする
+        assertEquals(List.of("0", "1"), ids(service.monitors(TWO).get()));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        service.monitors(TWO);
+        assertEquals(1, probe.calls.get());
+
+        probe.ids = List.of("2", "1");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(List.of("2", "1"), ids(service.monitors(TWO).get()));
+        assertEquals(2, probe.calls.get());
+
+        // 取れた結果は時間が経っても使い回す
+        now.addAndGet(TimeUnit.HOURS.toNanos(1));
+        service.monitors(TWO);
+        assertEquals(2, probe.calls.get());
+    }
+
+    @Test
+    void partialIdsCountAsFailure() throws Exception {
+        StubProbe probe = new StubProbe(List.of("0"));
+        MonitorTopologyService service = new MonitorTopologyService(probe, Runnable::run, log::add, now::get);
+
+        assertEquals(List.of("0", "1"), ids(service.monitors(TWO).get()));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        service.monitors(TWO);
+        assertEquals(2, probe.calls.get());
+    }
+
+    @Test
+    void parsesMstscListOutput() {
+        String out = "Monitor list:\r\n"
+                + "0: 1920 x 1080; (0, 0, 1919, 1079)\r\n"
+                + "  2: 2560 x 1440; (1920, 0, 4479, 1439)\r\n"
+                + "2: duplicate\r\n"
+                + "1: 1280 x 1024; (-1280, 0, -1, 1023)\r\n";
+        assertEquals(List.of("0", "2", "1"), MstscMonitorProbe.parse(out, 3));
+        assertEquals(List.of("0", "2"), MstscMonitorProbe.parse(out, 2));
+        assertEquals(List.of(), MstscMonitorProbe.parse("", 2));
+        assertEquals(List.of(), MstscMonitorProbe.parse("Remote Desktop Connection\r\nNo monitors", 2));
+    }
+
+    private static List<String> ids(List<MonitorSelectionSupport.MonitorOption> monitors) {
+        return monitors.stream().map(MonitorSelectionSupport.MonitorOption::rdpId).toList();
+    }
+
+    // ids が null なら mstsc の起動失敗と同じく例外を投げる
+    private static final class StubProbe implements MonitorProbe {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile List<String> ids;
+
+        StubProbe(List<String> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public List<String> monitorIds(int expectedCount) throws IOException {
+            calls.incrementAndGet();
+            if (ids == null) throw new IOException("mstsc not found");
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortForwarderTest {
+
+    private final List<AutoCloseable> closing = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable c : closing) c.close();
+    }
+
+    @Test
+    void relaysBothDirectionsThroughDirectUpstream() throws Exception {
+        int echo = echoServer();
+        PortForwarder f = forwarder(PortForwarder.direct("127.0.0.1", echo));
+
+        byte[] sent = randomBytes(3 * 1024 * 1024);
+        assertArrayEquals(sent, roundTrip(f.port(), sent));
+        assertEquals(sent.length, f.stats().bytesUp());
+        assertEquals(1, f.stats().connections());
+    }
+
+    @Test
+    void relaysThroughSocksUpstream() throws Exception {
+        int echo = echoServer();
+        int socks = socksServer();
+        PortForwarder f = forwarder(PortForwarder.socks("127.0.0.1", socks, "127.0.0.1", echo));
+
+        byte[] sent = randomBytes(256 * 1024);
+        assertArrayEquals(sent, roundTrip(f.port(), sent));
+    }
+
+    @Test
+    void socksRejectsHostNamesLongerThan255Bytes() throws Exception {
+        // 長さ 1 バイトに収まらない名前は、SOCKS サーバーに繋ぐ前に弾く
+        int socks = socksServer();
+        String host = "a".repeat(256) + ".example.com";
+        IOException e = assertThrows(IOException.class, () -> PortForwarder.socks("127.0.0.1", socks, host, 3389).open());
+        assertTrue(e.getMessage().contains("1-255 bytes"), e.getMessage());
+    }
+
+    @Test
+    void deferredUpstreamWaitsForTunnel() throws Exception {
+        int echo = echoServer();
+        CompletableFuture<PortForwarder.Upstream> tunnel = new CompletableFuture<>();
+        PortForwarder f = forwarder(PortForwarder.deferred(tunnel));
+
+        byte[] sent = randomBytes(1024);
+        CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> {
+            try {
+                return roundTrip(f.port(), sent);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        tunnel.complete(PortForwarder.direct("127.0.0.1", echo));
+        assertArrayEquals(sent, received.get());
+    }
+
+    @Test
+    void failedTunnelClosesClient() throws Exception {
+        CompletableFuture<PortForwarder.Upstream> tunnel = new CompletableFuture<>();
+        PortForwarder f = forwarder(PortForwarder.deferred(tunnel));
+        tunnel.completeExceptionally(new IOException("ssh exited"));
+
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), f.port())) {
+            assertEquals(-1, s.getInputStream().read());
+        }
+        assertThrows(IOException.class, () -> PortForwarder.deferred(tunnel).open());
+    }
+
+    private PortForwarder forwarder(PortForwarder.Upstream upstream) throws IOException {
+        PortForwarder f = new PortForwarder("127.0.0.1", 0, upstream);
+        closing.add(f);
+        return f;
+    }
+
+    private static byte[] roundTrip(int port, byte[] sent) throws IOException {
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    s.getOutputStream().write(sent);
+                    s.shutdownOutput();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            byte[] got = s.getInputStream().readAllBytes();
+            writer.join();
+            return got;
+        }
+    }
+
+    private int echoServer() throws IOException {
+        return serve(s -> {
+            s.getInputStream().transferTo(s.getOutputStream());
+            s.shutdownOutput();
+        });
+    }
+
+    // CONNECT だけを受け付ける SOCKS5 (認証なし)
+    private int socksServer() throws IOException {
+        return serve(s -> {
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            byte[] hello = new byte[3];
+            in.readFully(hello);
+            out.write(new byte[]{5, 0});
+            byte[] head = new byte[5];
+            in.readFully(head);
+            byte[] host = new byte[head[4] & 0xff];
+            in.readFully(host);
+            int port = in.readUnsignedShort();
+            try (Socket target = new Socket(new String(host), port)) {
+                out.write(new byte[]{5, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+                Thread up = Thread.ofVirtual().start(() -> {
+                    try {
+                        in.transferTo(target.getOutputStream());
+                        target.shutdownOutput();
+                    } catch (IOException ignored) {
+                    }
+                });
+                target.getInputStream().transferTo(out);
+                s.shutdownOutput();
+                up.join();
+            }
+        });
+    }
+
+    private interface Handler {
+        void handle(Socket s) throws Exception;
+    }
+
+    private int serve(Handler h) throws IOException {
+        ServerSocket ss = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        closing.add(ss);
+        Thread.ofVirtual().start(() -> {
+            while (!ss.isClosed()) {
+                try {
+                    Socket s = ss.accept();
+                    Thread.ofVirtual().start(() -> {
+                        try (s) {
+                            h.handle(s);
+                        } catch (Exception ignored) {
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        return ss.getLocalPort();
+    }
+
+    private static byte[] randomBytes(int n) {
+        byte[] b = new byte[n];
+        new Random(n).nextBytes(b);
+        return b;
+    }
+}
@@ -0,0 +1,86 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RotatingLogFileTest {
+
+    private static final long MAX = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pumpedOutputIsCappedAndRotated() throws Exception {
+        Path log = dir.resolve("ssh-test.err.log");
+        byte[] data = lines(10_000);   // 約 5 倍の量
+
+        RotatingLogFile.pump(new ByteArrayInputStream(data), log, MAX).join();
+
+        assertTrue(Files.size(log) <= MAX, "current log exceeds the cap: " + Files.size(log));
+        for (int i = 1; i <= 3; i++) {
+            Path gen = log.resolveSibling(log.getFileName() + "." + i);
+            assertTrue(Files.exists(gen), "missing generation " + i);
+            assertTrue(Files.size(gen) <= MAX);
+        }
+        assertFalse(Files.exists(log.resolveSibling(log.getFileName() + ".4")));
+
+        // 最新の出力は現行ファイルの末尾に残る
+        assertTrue(LogTail.lastLines(log, 1).endsWith("line 9999"));
+        System.out.println("[INFO] " + data.length + " bytes pumped, current=" + Files.size(log) + " bytes");
+    }
+
+    @Test
+    void writersOfTheSamePathShareOneRotation() throws Exception {
+        Path log = dir.resolve("ssh-stdio.err.log");
+        Thread a = RotatingLogFile.pump(slow(lines(3_000)), log, MAX);
+        Thread b = RotatingLogFile.pump(slow(lines(3_000)), log, MAX);
+        a.join();
+        b.join();
+
+        assertTrue(Files.size(log) <= MAX);
+        long total = Files.size(log);
+        for (int i = 1; i <= 3; i++) {
+            Path gen = log.resolveSibling(log.getFileName() + "." + i);
+            if (Files.exists(gen)) total += Files.size(gen);
+        }
+        assertTrue(total <= 4 * MAX);
+    }
+
+    @Test
+    void smallOutputIsNotRotated() throws Exception {
+        Path log = dir.resolve("ssh-small.out.log");
+        RotatingLogFile.pump(new ByteArrayInputStream(lines(10)), log, MAX).join();
+
+        assertEquals(new String(lines(10), StandardCharsets.UTF_8), Files.readString(log));
+        assertFalse(Files.exists(log.resolveSibling(log.getFileName() + ".1")));
+    }
+
+    private static byte[] lines(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append("debug3: channel 0: rcvd adjust ").append("x".repeat(i % 20)).append(" line ").append(i).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // パイプと同じく少しずつ届く入力
+    private static InputStream slow(byte[] data) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 512));
+            }
+        };
+    }
+}
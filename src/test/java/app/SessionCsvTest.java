@@ -0,0 +1,116 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCsvTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsAwkwardValues() throws Exception {
+        List<Session> in = List.of(
+                Sessions.of("#1 primary", "10.0.0.1", "prod/tokyo", "web"),
+                Sessions.of("comma, \"quoted\"", "10.0.0.2", "", ""),
+                Sessions.of(" padded ", "10.0.0.3", "", "multi\nline"),
+                new Session("opts", true, "bastion", "j1,j2", "-o ProxyCommand=\"nc %h %p\"", true, "gw.example",
+                        false, true, "10.0.0.4", 3390, "user", "CORP", true, null, null, true, false, "0,1", "dev", "a b"));
+
+        StringWriter w = new StringWriter();
+        SessionCsv.write(w, in);
+        Parsed p = parse(w.toString());
+
+        assertEquals(List.of(), p.errors);
+        assertEquals(4, p.sessions.size());
+        assertEquals("#1 primary", p.sessions.get(0).name());
+        assertEquals("comma, \"quoted\"", p.sessions.get(1).name());
+        // 前後の空白は読み込み時に落とす
+        assertEquals("padded", p.sessions.get(2).name());
+        assertEquals(in.get(3), p.sessions.get(3));
+    }
+
+    @Test
+    void jsonLinesRoundTrips() throws Exception {
+        List<Session> in = Sessions.generate(50);
+        StringWriter w = new StringWriter();
+        SessionJsonl.write(w, in);
+        List<Session> out = new ArrayList<>();
+        List<SessionCsv.RowError> errors = new ArrayList<>();
+        assertEquals(50, SessionJsonl.read(new StringReader(w.toString()), out::add, errors::add));
+        assertEquals(List.of(), errors);
+        assertEquals(in, out);
+    }
+
+    @Test
+    void reportsRowsWithTooManyFields() throws Exception {
+        Parsed p = parse("name,rdpHost,rdpPort\r\n"
+                + "web,10.0.0.1,3389\r\n"
+                + "db,10.0.0.2,3389,extra\r\n"
+                + "app,10.0.0.3,3389,,\r\n");
+        assertEquals(List.of("web", "app"), p.names());
+        assertEquals(1, p.errors.size());
+        assertEquals(3, p.errors.get(0).line());
+        assertTrue(p.errors.get(0).message().startsWith("Too many fields: 4"), p.errors.get(0).message());
+    }
+
+    @Test
+    void reportsSkippedCommentRowsButImportsQuotedHashNames() throws Exception {
+        Parsed p = parse("name,rdpHost,rdpPort\n"
+                + "# exported 2026-10-01\n"
+                + "\"#ops\",10.0.0.9,3389\n"
+                + "web,10.0.0.1,3389\n");
+        assertEquals(List.of("#ops", "web"), p.names());
+        assertEquals(1, p.errors.size());
+        assertEquals(2, p.errors.get(0).line());
+        assertTrue(p.errors.get(0).message().startsWith("Skipped comment row"));
+    }
+
+    @Test
+    void headerColumnsMayBeReorderedAndUnknownOnesIgnored() throws Exception {
+        Parsed p = parse("\uFEFFName,owner,rdpPort,rdpHost\nweb,alice,3390,10.0.0.1\n");
+        assertEquals(List.of(), p.errors);
+        Session s = p.sessions.get(0);
+        assertEquals("web", s.name());
+        assertEquals(3390, s.rdpPort());
+        assertEquals("10.0.0.1", s.rdpHost());
+    }
+
+    @Test
+    void exportThenImportKeepsEverySession() throws Exception {
+        Path csv = dir.resolve("sessions.csv");
+        List<Session> all = Sessions.generate(5_000);
+        SessionTransfer.exportFile(csv, all);
+        assertTrue(Files.readString(csv, StandardCharsets.UTF_8).startsWith(SessionCsv.HEADER));
+
+        try (LogSessionRepository repo = LogSessionRepository.open(dir.resolve("sessions.db"), null)) {
+            SessionTransfer.Result r = SessionTransfer.importFile(csv, repo);
+            assertEquals(5_000, r.rows());
+            assertEquals(0, r.errorCount());
+            assertEquals(all, repo.loadAll());
+        }
+    }
+
+    private record Parsed(List<Session> sessions, List<SessionCsv.RowError> errors) {
+        List<String> names() {
+            return sessions.stream().map(Session::name).toList();
+        }
+    }
+
+    private static Parsed parse(String csv) throws Exception {
+        Parsed p = new Parsed(new ArrayList<>(), new ArrayList<>());
+        SessionCsv.read(new StringReader(csv), p.sessions::add, p.errors::add);
+        return p;
+    }
+}
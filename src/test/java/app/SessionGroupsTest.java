@@ -0,0 +1,78 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SessionGroupsTest {
+
+    @Test
+    void addAndRemoveMatchAFullRebuild() {
+        Random rnd = new Random(7);
+        SessionRegistry reg = new SessionRegistry();
+        List<Session> start = Sessions.generate(500);
+        reg.setAll(start);
+        SessionGroups groups = SessionGroups.build(List.copyOf(reg.items()));
+
+        String[] folders = {"", "prod/tokyo", "prod/osaka", "Prod/tokyo", "qa/new/site", "dev"};
+        String[] tags = {"", "web", "web,db", "db,cache", "solo"};
+        for (int step = 0; step < 2_000; step++) {
+            Session prev = reg.items().get(rnd.nextInt(reg.size()));
+            Session next;
+            switch (rnd.nextInt(3)) {
+                case 0 -> next = null;
+                case 1 -> next = Sessions.of(prev.name(), prev.rdpHost(),
+                        folders[rnd.nextInt(folders.length)], tags[rnd.nextInt(tags.length)]);
+                default -> {
+                    next = Sessions.of("new-" + step, "10.9.0.1",
+                            folders[rnd.nextInt(folders.length)], tags[rnd.nextInt(tags.length)]);
+                    prev = null;
+                }
+            }
+            if (prev != null) {
+                reg.remove(prev.name());
+                groups.remove(prev);
+            }
+            if (next != null) {
+                reg.put(next);
+                groups.add(next);
+            }
+        }
+
+        assertEquals(dump(SessionGroups.build(List.copyOf(reg.items()))), dump(groups));
+    }
+
+    @Test
+    void removingTheLastMemberDropsFolderAndTag() {
+        Session only = Sessions.of("web", "10.0.0.1", "prod/tokyo", "solo");
+        Session other = Sessions.of("db", "10.0.0.2", "", "");
+        SessionGroups groups = SessionGroups.build(List.of(other, only));
+
+        groups.remove(only);
+
+        assertEquals(List.of(), groups.childGroups(SessionGroups.ROOT));
+        assertFalse(groups.hasTags());
+        assertEquals(1, groups.count(SessionGroups.ROOT));
+        assertEquals(List.of(other), groups.sessionsIn(SessionGroups.ROOT));
+    }
+
+    // ルートから辿れるすべてのグループの表示名・件数・直下のセッション
+    private static Map<String, List<Object>> dump(SessionGroups g) {
+        Map<String, List<Object>> out = new LinkedHashMap<>();
+        walk(g, SessionGroups.ROOT, out);
+        if (g.hasTags()) walk(g, SessionGroups.TAGS, out);
+        return out;
+    }
+
+    private static void walk(SessionGroups g, String path, Map<String, List<Object>> out) {
+        out.put(path, List.of(g.group(path), g.childGroups(path), new ArrayList<>(g.sessionsIn(path))));
+        for (SessionGroups.Group child : g.childGroups(path)) walk(g, child.path(), out);
+    }
+}
@@ -0,0 +1,78 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// FXCollections の ObservableList は FX ツールキットを起動しなくても使える
+class SessionRegistryTest {
+
+    @Test
+    void putKeepsNameOrderAndIndex() {
+        SessionRegistry reg = new SessionRegistry();
+        List<Session> all = new ArrayList<>(Sessions.generate(2_000));
+        Collections.shuffle(all, new Random(1));
+        for (Session s : all) reg.put(s);
+
+        List<Session> expected = new ArrayList<>(all);
+        expected.sort(SessionRegistry.ORDER);
+        assertEquals(expected, reg.items());
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertEquals(i, reg.indexOf(expected.get(i).name()));
+            assertSame(expected.get(i), reg.find(expected.get(i).name().toUpperCase()));
+        }
+    }
+
+    @Test
+    void putReplacesSameNameIgnoringCase() {
+        SessionRegistry reg = new SessionRegistry();
+        reg.put(Sessions.of("web", "10.0.0.1", "", ""));
+        reg.put(Sessions.of("db", "10.0.0.2", "", ""));
+
+        Session renamed = Sessions.of("WEB", "10.0.0.9", "", "");
+        assertEquals(1, reg.put(renamed));
+        assertEquals(2, reg.size());
+        assertSame(renamed, reg.find("Web"));
+        assertSame(renamed, reg.items().get(1));
+    }
+
+    @Test
+    void removeDropsFromListAndIndex() {
+        SessionRegistry reg = new SessionRegistry();
+        reg.setAll(Sessions.generate(100));
+        Session victim = reg.items().get(42);
+
+        assertSame(victim, reg.remove(victim.name().toUpperCase()));
+        assertEquals(99, reg.size());
+        assertNull(reg.find(victim.name()));
+        assertEquals(-1, reg.indexOf(victim.name()));
+        assertNull(reg.remove(victim.name()));
+    }
+
+    @Test
+    void appendSortedFallsBackToPutWhenChunkIsOutOfOrder() {
+        List<Session> all = new ArrayList<>(Sessions.generate(300));
+        all.sort(SessionRegistry.ORDER);
+        SessionRegistry reg = new SessionRegistry();
+        reg.appendSorted(all.subList(100, 200));
+        reg.appendSorted(all.subList(200, 300));
+        reg.appendSorted(all.subList(0, 100));
+        assertEquals(all, reg.items());
+    }
+
+    @Test
+    void setAllKeepsLastOfDuplicateNames() {
+        SessionRegistry reg = new SessionRegistry();
+        Session last = Sessions.of("Web", "10.0.0.2", "", "");
+        reg.setAll(List.of(Sessions.of("web", "10.0.0.1", "", ""), Sessions.of("app", "10.0.0.3", "", ""), last));
+        assertEquals(2, reg.size());
+        assertSame(last, reg.find("WEB"));
+    }
+}
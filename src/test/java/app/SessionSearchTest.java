@@ -0,0 +1,71 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionSearchTest {
+
+    private static final long FRAME_MICROS = 16_000;
+
+    @Test
+    void searchAt100kStaysWithinOneFrame() {
+        List<Session> all = new ArrayList<>(Sessions.generate(100_000));
+        all.sort(SessionRegistry.ORDER);
+        SessionSearchIndex index = SessionSearchIndex.build(all);
+        List<String> queries = List.of("p", "pr", "prod", "prod web tok", "tokoy", "db-osaka-0004", "wbtky");
+
+        for (String q : queries) {
+            // JIT が落ち着くまで回し、前のテストのごみを片付けてから測る
+            for (int i = 0; i < 100; i++) index.search(q, Map.of(), 0, 2000, () -> false);
+            System.gc();
+            long[] micros = new long[15];
+            for (int i = 0; i < micros.length; i++) {
+                long t0 = System.nanoTime();
+                assertNotNull(index.search(q, Map.of(), 0, 2000, () -> false));
+                micros[i] = (System.nanoTime() - t0) / 1000;
+            }
+            Arrays.sort(micros);
+            long median = micros[micros.length / 2];
+            System.out.println("[INFO] search 100k '" + q + "': median " + median + " us");
+            assertTrue(median < FRAME_MICROS, q + ": " + median + " us");
+        }
+    }
+
+    @Test
+    void buildStopsWhenCancelled() {
+        assertNull(SessionSearchIndex.build(Sessions.generate(10_000), () -> true));
+    }
+
+    @Test
+    void rapidReindexBuildsOnlyTheLatestSnapshots() throws Exception {
+        BlockingQueue<SessionSearch.Result> results = new LinkedBlockingQueue<>();
+        try (SessionSearch search = new SessionSearch(results::add, Runnable::run)) {
+            search.search("tokyo");
+            List<Session> all = Sessions.generate(100_000);
+            for (int n = 2_000; n <= all.size(); n += 2_000) search.reindex(all.subList(0, n));
+
+            SessionSearch.Result r;
+            do {
+                r = results.poll(30, TimeUnit.SECONDS);
+                assertNotNull(r);
+            } while (r.indexed() != all.size());
+
+            assertEquals("tokyo", r.query());
+            assertTrue(r.sessions().stream().allMatch(s -> s.name().contains("tokyo")));
+            System.out.println("[INFO] reindex: 50 requests, " + search.indexBuilds() + " builds");
+            assertTrue(search.indexBuilds() < 50, "builds=" + search.indexBuilds());
+        }
+    }
+}
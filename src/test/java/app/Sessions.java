@@ -0,0 +1,43 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// テスト・ベンチマーク用のセッション定義
+final class Sessions {
+
+    private static final String[] ENVS = {"prod", "stg", "dev", "qa"};
+    private static final String[] ROLES = {"web", "db", "app", "batch", "cache", "proxy", "jump", "ad"};
+    private static final String[] SITES = {"tokyo", "osaka", "nagoya", "fukuoka", "sapporo"};
+
+    private Sessions() {}
+
+    static Session of(String name, String rdpHost, String group, String tags) {
+        return new Session(name, false, "", "", "", false, "", false, false,
+                rdpHost, 3389, "", "", false, 1280, 720, false, false, "", group, tags);
+    }
+
+    static Session viaBastion(String name, String sshAlias, String jumpHosts, String rdpHost) {
+        return new Session(name, true, sshAlias, jumpHosts, "", false, "", false, false,
+                rdpHost, 3389, "", "", false, 1280, 720, false, false, "", "", "");
+    }
+
+    // CMDB から取り込んだような名前 ("prod-web-tokyo-00042") を n 件。group は "prod/tokyo" の形
+    static List<Session> generate(int n) {
+        List<Session> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String env = ENVS[i % ENVS.length];
+            String role = ROLES[(i / ENVS.length) % ROLES.length];
+            String site = SITES[(i / (ENVS.length * ROLES.length)) % SITES.length];
+            String name = String.format("%s-%s-%s-%05d", env, role, site, i);
+            String host = "10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255);
+            Session s = (i % 3 == 0)
+                    ? new Session(name, true, "bastion-" + site, "", "", false, "", false, false,
+                            host, 3389, "user" + (i % 50), "CORP", false, 1920, 1080, false, false, "", env + "/" + site, role + " " + env)
+                    : new Session(name, false, "", "", "", false, "", false, false,
+                            host, 3389, "", "", false, 1280, 720, false, false, "", env + "/" + site, role);
+            out.add(s);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,48 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SshLogsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pruneKeepsLogsOfRunningTunnels() throws Exception {
+        // 長く動いているマスターのログは一番古いが、動いている間は消さない
+        SshLogs.Pair live = SshLogs.allocate("master");
+        AtomicBoolean alive = new AtomicBoolean(true);
+        SshLogs.owner(live.errLog(), alive::get);
+        Path liveErr = dir.resolve(Path.of(live.errLog()).getFileName());
+        Path liveRotated = dir.resolve(liveErr.getFileName() + ".1");
+        Path liveOut = dir.resolve(Path.of(live.outLog()).getFileName());
+        for (Path p : new Path[] {liveErr, liveRotated, liveOut}) {
+            Files.writeString(p, "debug1: ...");
+            Files.setLastModifiedTime(p, FileTime.fromMillis(1_000));
+        }
+        for (int i = 0; i < 60; i++) {
+            Path p = dir.resolve("ssh-old-" + i + ".err.log");
+            Files.writeString(p, "x");
+            Files.setLastModifiedTime(p, FileTime.fromMillis(10_000 + i * 1_000L));
+        }
+
+        SshLogs.prune(dir);
+        assertTrue(Files.exists(liveErr));
+        assertTrue(Files.exists(liveRotated));
+        assertTrue(Files.exists(liveOut));
+        assertFalse(Files.exists(dir.resolve("ssh-old-0.err.log")));
+
+        alive.set(false);
+        SshLogs.prune(dir);
+        assertFalse(Files.exists(liveErr));
+    }
+}
@@ -0,0 +1,135 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskRunnerTest {
+
+    private final TaskRunner runner = new TaskRunner("test");
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdownNow();
+    }
+
+    @Test
+    void joinReturnsAfterAllForksSucceed() throws Exception {
+        Future<Integer> a, b;
+        try (TaskRunner.Scope scope = runner.scope()) {
+            a = scope.fork(() -> 1);
+            b = scope.fork(() -> {
+                Thread.sleep(50);
+                return 2;
+            });
+            scope.join();
+        }
+        assertEquals(3, a.get() + b.get());
+    }
+
+    // 失敗した時点で残りは中断されるが、中断を無視して片付けを続ける子タスクが抜けるまで join は戻らない
+    @Test
+    void joinOnFailureWaitsForSlowForks() throws Exception {
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+
+        ExecutionException e;
+        try (TaskRunner.Scope scope = runner.scope()) {
+            scope.fork(() -> {
+                started.countDown();
+                interrupted.set(sleepIgnoringInterrupt(300));
+                finished.set(true);
+                return null;
+            });
+            scope.fork(() -> {
+                started.await();
+                throw new IllegalStateException("boom");
+            });
+            e = assertThrows(ExecutionException.class, scope::join);
+            assertTrue(finished.get());
+        }
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void closeWithoutJoinWaitsForForks() {
+        AtomicInteger done = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(3);
+        try (TaskRunner.Scope scope = runner.scope()) {
+            for (int i = 0; i < 3; i++) {
+                scope.fork(() -> {
+                    started.countDown();
+                    sleepIgnoringInterrupt(200);
+                    done.incrementAndGet();
+                    return null;
+                });
+            }
+            started.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(3, done.get());
+    }
+
+    @Test
+    void interruptedJoinStopsAndWaitsForForks() throws Exception {
+        AtomicBoolean forkInterrupted = new AtomicBoolean();
+        AtomicBoolean forkDone = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Throwable> parent = new CompletableFuture<>();
+        Thread t = Thread.ofVirtual().start(() -> {
+            try (TaskRunner.Scope scope = runner.scope()) {
+                scope.fork(() -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException e) {
+                        forkInterrupted.set(true);
+                        sleepIgnoringInterrupt(100);
+                    }
+                    forkDone.set(true);
+                    return null;
+                });
+                scope.join();
+                parent.complete(null);
+            } catch (Throwable e) {
+                parent.complete(e);
+            }
+        });
+        started.await();
+        t.interrupt();
+
+        assertInstanceOf(InterruptedException.class, parent.get(10, TimeUnit.SECONDS));
+        assertTrue(forkInterrupted.get());
+        assertTrue(forkDone.get());
+    }
+
+    // 中断されても指定時間は戻らない。中断されたかどうかを返す
+    private static boolean sleepIgnoringInterrupt(long ms) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+        boolean interrupted = false;
+        while (System.nanoTime() < end) {
+            try {
+                Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime())));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+}
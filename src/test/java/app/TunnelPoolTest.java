@@ -0,0 +1,102 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// マスターの代わりに、SOCKS ポートで待ち受けるだけの FakeSsh を起動する
+class TunnelPoolTest {
+
+    private static final TunnelPool.ChainKey KEY = TunnelPool.ChainKey.of("bastion", "", "");
+
+    private final List<Process> started = new ArrayList<>();
+    private TunnelPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.shutdown();
+        for (Process p : started) p.destroyForcibly();
+    }
+
+    @Test
+    void reusesHealthyMaster() throws Exception {
+        pool = new TunnelPool("127.0.0.1", Duration.ofMinutes(5));
+
+        try (TunnelPool.Lease a = pool.acquire(KEY, this::startMaster);
+             TunnelPool.Lease b = pool.acquire(KEY, this::startMaster)) {
+            assertFalse(a.reused());
+            assertTrue(b.reused());
+            assertEquals(a.pid(), b.pid());
+        }
+        assertEquals(new TunnelPool.Stats(1, 1, 0, 1), pool.stats());
+    }
+
+    @Test
+    void leasedMasterSurvivesIdleSweeps() throws Exception {
+        // 掃除は 1 秒ごと。貸し出しの合間に空きが TTL を超えない程度の間隔で取り直し続ける
+        pool = new TunnelPool("127.0.0.1", Duration.ofSeconds(1));
+        int threads = 8;
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3_500);
+        pool.acquire(KEY, this::startMaster).close();
+
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(exec.submit(() -> {
+                go.await();
+                int leases = 0;
+                while (System.nanoTime() < until) {
+                    try (TunnelPool.Lease l = pool.acquire(KEY, this::startMaster)) {
+                        assertTrue(SshHelpers.isProcessAlive(l.pid()));
+                        leases++;
+                        Thread.sleep(20);
+                    }
+                }
+                return leases;
+            }));
+        }
+        go.countDown();
+        int total = 0;
+        for (Future<Integer> f : results) total += f.get(30, TimeUnit.SECONDS);
+        exec.shutdown();
+
+        TunnelPool.Stats s = pool.stats();
+        assertEquals(0, s.evictions(), s.toString());
+        assertEquals(1, s.misses(), s.toString());
+        assertEquals(total, s.hits(), s.toString());
+    }
+
+    @Test
+    void evictsAfterIdleTtl() throws Exception {
+        pool = new TunnelPool("127.0.0.1", Duration.ofSeconds(1));
+        pool.acquire(KEY, this::startMaster).close();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.stats().live() > 0 && System.nanoTime() < deadline) Thread.sleep(50);
+
+        assertEquals(new TunnelPool.Stats(0, 1, 1, 0), pool.stats());
+    }
+
+    private SshHelpers.SshStartResult startMaster(int socksPort) throws IOException, InterruptedException {
+        Process p = FakeSsh.command("listen", String.valueOf(socksPort), "0").start();
+        started.add(p);
+        if (!TunnelReadiness.waitPortOpen("127.0.0.1", socksPort, Duration.ofSeconds(20))) {
+            throw new IOException("fake master did not listen on " + socksPort);
+        }
+        return new SshHelpers.SshStartResult(Math.toIntExact(p.pid()), null, null, 0);
+    }
+}
@@ -0,0 +1,126 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 偽の ssh プロセス (FakeSsh) とローカルの ServerSocket で、待ち受け開始から READY を返すまでの遅れを測る
+class TunnelReadinessTest {
+
+    // 待ち受け開始から検知までの許容量 (バックオフ上限 50 ms + 余裕)
+    private static final long DETECT_SLACK_MS = 150;
+
+    private final List<Process> started = new ArrayList<>();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void killFakes() {
+        for (Process p : started) p.destroyForcibly();
+    }
+
+    @Test
+    void readyShortlyAfterListenerOpens() throws Exception {
+        List<Long> lags = new ArrayList<>();
+        for (int run = 0; run < 3; run++) {
+            int port = freePort();
+            Process p = start(FakeSsh.command("listen", String.valueOf(port), "200"));
+            long t0 = System.nanoTime();
+            CompletableFuture<Long> listening = CompletableFuture.supplyAsync(() -> firstLineAt(p));
+
+            TunnelReadiness.Result r = TunnelReadiness.await(Math.toIntExact(p.pid()), null, "127.0.0.1", port, Duration.ofSeconds(20));
+
+            assertEquals(TunnelReadiness.State.READY, r.state());
+            long listenedMs = TimeUnit.NANOSECONDS.toMillis(listening.get(5, TimeUnit.SECONDS) - t0);
+            long lag = r.elapsedMillis() - listenedMs;
+            lags.add(lag);
+            assertTrue(lag <= DETECT_SLACK_MS, "ready " + r.elapsedMillis() + " ms, listening at " + listenedMs + " ms");
+        }
+        System.out.println("[INFO] time-to-ready lag after listen (ms): " + lags);
+    }
+
+    @Test
+    void failsFastWhenForwardCannotBind() throws Exception {
+        int port = freePort();
+        Path err = Files.createFile(dir.resolve("ssh.err.log"));
+        Process p = start(FakeSsh.command("bindfail", String.valueOf(port), err.toString()));
+
+        TunnelReadiness.Result r = TunnelReadiness.await(Math.toIntExact(p.pid()), err.toString(), "127.0.0.1", port, Duration.ofSeconds(20));
+
+        assertEquals(TunnelReadiness.State.FAILED, r.state());
+        assertTrue(r.errTail().contains("cannot listen to port"), r.errTail());
+        assertTrue(p.isAlive());
+    }
+
+    @Test
+    void failsWhenSshExits() throws Exception {
+        Process p = start(FakeSsh.command("hang"));
+        int pid = Math.toIntExact(p.pid());
+        CompletableFuture.runAsync(() -> {
+            sleep(300);
+            p.destroy();
+        });
+
+        TunnelReadiness.Result r = TunnelReadiness.await(pid, null, "127.0.0.1", freePort(), Duration.ofSeconds(20));
+
+        assertEquals(TunnelReadiness.State.FAILED, r.state());
+        assertTrue(r.elapsedMillis() < 5_000, r.elapsedMillis() + " ms");
+    }
+
+    @Test
+    void timesOutWhenNothingListens() throws Exception {
+        Process p = start(FakeSsh.command("hang"));
+
+        TunnelReadiness.Result r = TunnelReadiness.await(Math.toIntExact(p.pid()), null, "127.0.0.1", freePort(), Duration.ofMillis(300));
+
+        assertEquals(TunnelReadiness.State.TIMEOUT, r.state());
+        // 残り時間はミリ秒に切り捨てて判定するので、期限のわずかに手前で返ることがある
+        assertTrue(r.elapsedMillis() >= 290 && r.elapsedMillis() < 300 + 1_000, r.elapsedMillis() + " ms");
+    }
+
+    private Process start(ProcessBuilder pb) throws Exception {
+        Process p = pb.start();
+        started.add(p);
+        return p;
+    }
+
+    private static long firstLineAt(Process p) {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line = r.readLine();
+            if (!"LISTENING".equals(line)) throw new IllegalStateException("fake ssh said " + line);
+            return System.nanoTime();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}